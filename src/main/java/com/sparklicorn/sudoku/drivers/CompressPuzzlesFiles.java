@@ -1,14 +1,21 @@
 package com.sparklicorn.sudoku.drivers;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileFilter;
+import java.io.FileOutputStream;
 import java.io.IOException;
-
-import java.util.Arrays;
+import java.io.OutputStream;
+import java.nio.file.Files;
 
 import com.sparklicorn.sudoku.game.Board;
-import com.sparklicorn.sudoku.util.FileUtil;
 
+/**
+ * Compresses every puzzles file in the working directory into a
+ * "puzzles-compressed" file, one compressed board per line.
+ * <br/>Run with the argument "decompress" to do the reverse, writing each
+ * "puzzles-compressed" file back out as a "puzzles-decompressed" file.
+ */
 public class CompressPuzzlesFiles {
 
     public static class PuzzlesFileFilter implements FileFilter {
@@ -21,30 +28,95 @@ public class CompressPuzzlesFiles {
         }
     }
 
+    public static class CompressedPuzzlesFileFilter implements FileFilter {
+        @Override
+        public boolean accept(File pathname) {
+            return !pathname.isDirectory() &&
+                !pathname.isHidden() &&
+                pathname.getName().contains("puzzles-compressed");
+        }
+    }
+
     public static void main(String[] args) {
+        boolean decompress = (args != null && args.length > 0 && args[0].equals("decompress"));
         try {
             File pwd = new File(".").getCanonicalFile();
-            Arrays.stream(
-                pwd.listFiles(new PuzzlesFileFilter())
-            ).forEach((puzzlesFile) -> {
-                String fromPath = puzzlesFile.getAbsolutePath();
-                String toPath = String.format(
-                    "%s/%s",
-                    pwd.getAbsolutePath(),
-                    puzzlesFile.getName().replaceFirst("puzzles", "puzzles-compressed")
-                );
-                System.out.printf("Compressing puzzle file \"%s\" -> \"%s\"\n", fromPath, toPath);
-                FileUtil.transformLinesInFile(
-                    fromPath,
-                    toPath,
-                    (line) -> {
-                        return new Board(line).getCompressedString();
-                    },
-                    true
+            FileFilter filter = decompress ? new CompressedPuzzlesFileFilter() : new PuzzlesFileFilter();
+            for (File puzzlesFile : pwd.listFiles(filter)) {
+                String name = puzzlesFile.getName();
+                File toFile = new File(pwd, decompress
+                    ? name.replaceFirst("puzzles-compressed", "puzzles-decompressed")
+                    : name.replaceFirst("puzzles", "puzzles-compressed"));
+                System.out.printf(
+                    "%s puzzle file \"%s\" -> \"%s\"\n",
+                    decompress ? "Decompressing" : "Compressing",
+                    puzzlesFile.getAbsolutePath(),
+                    toFile.getAbsolutePath()
                 );
-            });
+                transcode(puzzlesFile, toFile, decompress);
+            }
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
+
+    /**
+     * Rewrites each non-empty line of the given file as a board in the other
+     * format, reusing one board and one line buffer for the whole file.
+     */
+    private static void transcode(File fromFile, File toFile, boolean decompress) throws IOException {
+        byte[] in = Files.readAllBytes(fromFile.toPath());
+        byte[] newline = System.lineSeparator().getBytes();
+        byte[] line = new byte[Board.NUM_CELLS + newline.length];
+        Board board = new Board();
+
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(toFile))) {
+            int pos = 0;
+            while (pos < in.length) {
+                if (isBlankLine(in, pos)) {
+                    pos = skipLine(in, pos);
+                    continue;
+                }
+
+                int length;
+                if (decompress) {
+                    pos = Board.parseCompressedInto(board, in, pos);
+                    for (int i = 0; i < Board.NUM_CELLS; i++) {
+                        int v = board.getValueAt(i);
+                        line[i] = (byte) ((v > 0) ? ('0' + v) : '.');
+                    }
+                    length = Board.NUM_CELLS;
+                } else {
+                    pos = Board.parseInto(board, in, pos);
+                    length = board.writeCompressed(line, 0);
+                }
+                System.arraycopy(newline, 0, line, length, newline.length);
+                out.write(line, 0, length + newline.length);
+                pos = skipLine(in, pos);
+            }
+        }
+    }
+
+    private static boolean isBlankLine(byte[] bytes, int pos) {
+        for (; pos < bytes.length && bytes[pos] != '\n' && bytes[pos] != '\r'; pos++) {
+            if (!Character.isWhitespace(bytes[pos])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the position of the start of the next line.*/
+    private static int skipLine(byte[] bytes, int pos) {
+        while (pos < bytes.length && bytes[pos] != '\n' && bytes[pos] != '\r') {
+            pos++;
+        }
+        if (pos < bytes.length && bytes[pos] == '\r') {
+            pos++;
+        }
+        if (pos < bytes.length && bytes[pos] == '\n') {
+            pos++;
+        }
+        return pos;
+    }
 }
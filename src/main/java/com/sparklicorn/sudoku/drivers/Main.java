@@ -9,19 +9,32 @@ import java.io.ObjectOutputStream;
 import java.io.PrintWriter;
 import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
 import java.util.Scanner;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import com.sparklicorn.sudoku.game.Board;
+import com.sparklicorn.sudoku.game.BoardBatch;
+import com.sparklicorn.sudoku.game.BoardCodec;
+import com.sparklicorn.sudoku.game.SizedBoard;
 import com.sparklicorn.sudoku.game.generators.*;
+import com.sparklicorn.sudoku.game.solvers.BatchSolver;
+import com.sparklicorn.sudoku.game.solvers.BitboardSolver;
+import com.sparklicorn.sudoku.game.solvers.SizedSolver;
 import com.sparklicorn.sudoku.game.solvers.Solver;
+import com.sparklicorn.sudoku.game.solvers.TemplateSolver;
 import com.sparklicorn.sudoku.puzzles.GeneratedPuzzles;
 import com.sparklicorn.sudoku.drivers.gui.SudokuGuiDemo;
 
@@ -30,15 +43,46 @@ import com.sparklicorn.sudoku.drivers.gui.SudokuGuiDemo;
  *
  * "play" Open the GUI to play Sudoku. Default if commands omitted.
  *
- * "configs [integer n (1)] [boolean normalize (false)]" Generate 'n' number of
- * Sudoku configurations, optionally normalized. n - Number of configurations to
- * generate. normalize - Normalize the configurations so that the top row reads
- * '123456789'.
+ * "configs [integer n (1)] [boolean normalize (false)] [boolean transform (false)]"
+ * Generate 'n' number of Sudoku configurations, optionally normalized.
+ * n - Number of configurations to generate. normalize - Normalize the
+ * configurations so that the top row reads '123456789'. transform - Derive
+ * configurations from a pool of seeds by symmetry transforms instead of
+ * solving for each one.
  *
- * "puzzles [integer n (1)] [integer clues (27)]" Generate 'n' number of Sudoku
- * puzzles with 'clues' number of clues.
+ * "puzzles [integer n (1)] [integer clues (27)] [integer threads (cores)]
+ * [integer perConfig (1)] [boolean speculative (false)] [string restarts]"
+ * Generate 'n' number of Sudoku puzzles with 'clues' number of clues, carving
+ * 'perConfig' puzzles from each configuration. With 'speculative', puzzles are
+ * generated one at a time, each thread evaluating a different clue removal at
+ * every step. 'restarts' picks the restart policy, e.g. 'luby:32'.
+ * Uniqueness cache statistics are printed to standard error.
  *
- * "benchy" Runs puzzle solver benchmarking.
+ * "beam [integer n (20)] [integer clues (24)] [integer width (16)]
+ * [integer threads (cores)]" Carves 'n' configs with a beam search of the
+ * given width, checking each level's removals on 'threads' threads. Prints
+ * each puzzle found, then how many searches found one and the median and
+ * mean time per search.
+ *
+ * "restarts [integer n (50)] [policies...]" Carves 'n' configs to each of 27
+ * down to 22 clues with each restart policy, and prints the median and 95th
+ * percentile time per puzzle. Policies are given as for
+ * {@link RestartPolicy#parse(String, int)}, e.g. 'luby:64'.
+ *
+ * "benchy" Runs puzzle solver benchmarking, submitting the puzzles estimated
+ * to be hardest first.
+ *
+ * "makespan [files...]" Compares the wall time to solve each puzzle file when
+ * puzzles are scheduled in file order versus longest-estimated-first.
+ * Defaults to 'puzzles-24-1000.txt' and 'puzzles-27-1000.txt'.
+ *
+ * "engines [files...]" Compares the single-threaded time to solve each
+ * puzzle file with the search solver versus the template and bitboard
+ * solvers. Same defaults as "makespan".
+ *
+ * "batch [files...]" Compares the time to load and solve each puzzle file as
+ * a list of boards versus an off-heap board batch. Same defaults as
+ * "makespan".
  */
 public class Main {
 
@@ -61,7 +105,9 @@ public class Main {
                 }
                 break;
             case "configs":
-                if (args.length >= 3) {
+                if (args.length >= 4) {
+                    GenerateConfigs.main(new String[] { args[1], args[2], args[3] });
+                } else if (args.length >= 3) {
                     GenerateConfigs.main(new String[] { args[1], args[2] });
                 } else if (args.length >= 2) {
                     GenerateConfigs.main(new String[] { args[1] });
@@ -111,7 +157,8 @@ public class Main {
                 }
                 pw.close();
                 long end = bean.getCurrentThreadCpuTime();
-                System.out.printf("Wrote configs in %d ms.%n", TimeUnit.NANOSECONDS.toMillis(end - start));
+                System.out.printf("Wrote configs in %d ms (%d bytes).%n",
+                        TimeUnit.NANOSECONDS.toMillis(end - start), stringsFile.length());
 
                 start = bean.getCurrentThreadCpuTime();
                 File serialFile = new File("test-serial.txt");
@@ -123,7 +170,17 @@ public class Main {
                 o.close();
                 f.close();
                 end = bean.getCurrentThreadCpuTime();
-                System.out.printf("Serialized configs in %d ms.%n", TimeUnit.NANOSECONDS.toMillis(end - start));
+                System.out.printf("Serialized configs in %d ms (%d bytes).%n",
+                        TimeUnit.NANOSECONDS.toMillis(end - start), serialFile.length());
+
+                start = bean.getCurrentThreadCpuTime();
+                File codecFile = new File("test-codec.bin");
+                try (FileOutputStream fc = new FileOutputStream(codecFile)) {
+                    BoardCodec.writeAll(fc, Arrays.asList(configs));
+                }
+                end = bean.getCurrentThreadCpuTime();
+                System.out.printf("Encoded configs in %d ms (%d bytes).%n",
+                        TimeUnit.NANOSECONDS.toMillis(end - start), codecFile.length());
 
                 start = bean.getCurrentThreadCpuTime();
                 Scanner scanner = new Scanner(stringsFile);
@@ -151,6 +208,14 @@ public class Main {
                 end = bean.getCurrentThreadCpuTime();
                 System.out.printf("Deserialized %d configs in %d ms.%n", count,
                         TimeUnit.NANOSECONDS.toMillis(end - start));
+
+                start = bean.getCurrentThreadCpuTime();
+                try (FileInputStream fc = new FileInputStream(codecFile)) {
+                    count = BoardCodec.forEach(fc, (b) -> {});
+                }
+                end = bean.getCurrentThreadCpuTime();
+                System.out.printf("Decoded %d configs in %d ms.%n", count,
+                        TimeUnit.NANOSECONDS.toMillis(end - start));
                 break;
             case "benchy":
                 boolean verbose = false;
@@ -160,6 +225,43 @@ public class Main {
 
                 benchy(verbose);
                 break;
+            case "makespan":
+                for (String file : puzzleFiles(args)) {
+                    makespan(file);
+                }
+                break;
+            case "engines":
+                for (String file : puzzleFiles(args)) {
+                    compareEngines(file);
+                }
+                break;
+            case "batch":
+                for (String file : puzzleFiles(args)) {
+                    compareBatch(file);
+                }
+                break;
+            case "beam":
+                beam(
+                    (args.length >= 2) ? Integer.parseInt(args[1]) : 20,
+                    (args.length >= 3) ? Integer.parseInt(args[2]) : 24,
+                    (args.length >= 4) ? Integer.parseInt(args[3]) : 16,
+                    (args.length >= 5) ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors()
+                );
+                break;
+            case "restarts":
+                int numPuzzles = (args.length >= 2) ? Integer.parseInt(args[1]) : 50;
+                String[] policies = DEFAULT_RESTART_POLICIES;
+                if (args.length > 2) {
+                    policies = Arrays.copyOfRange(args, 2, args.length);
+                }
+                // Warm up the carver before timing anything.
+                for (int n = 0; n < 50; n++) {
+                    Generator.generatePuzzles(null, 26, null);
+                }
+                for (int clues = 27; clues >= 22; clues--) {
+                    compareRestartPolicies(clues, numPuzzles, policies);
+                }
+                break;
             default:
                 System.out.println("Sudoku: Command not recognized.");
         }
@@ -193,9 +295,12 @@ public class Main {
         ThreadPoolExecutor t = new ThreadPoolExecutor(numThreads, numThreads, 1L, TimeUnit.SECONDS, workQueue);
         t.prestartAllCoreThreads();
 
+        // Submit the boards estimated to be hardest first, so that no slow
+        // board starts last while the other threads sit idle.
+        Integer[] order = BatchSolver.orderByCost(boards);
         final long startRealTime = System.currentTimeMillis();
-        for (Runnable solver : timedBoardSolvers) {
-            t.submit(solver);
+        for (int index : order) {
+            t.submit(timedBoardSolvers.get(index));
         }
 
         try {
@@ -241,12 +346,319 @@ public class Main {
         );
     }
 
+    private static String[] puzzleFiles(String[] args) {
+        if (args.length > 1) {
+            String[] files = new String[args.length - 1];
+            System.arraycopy(args, 1, files, 0, files.length);
+            return files;
+        }
+        return new String[] { "puzzles-24-1000.txt", "puzzles-27-1000.txt" };
+    }
+
+    private static List<Board> loadBoards(String path) throws IOException {
+        List<Board> boards = new ArrayList<>();
+        byte[] bytes = Files.readAllBytes(Paths.get(path));
+        int pos = 0;
+        while (pos < bytes.length) {
+            if (bytes[pos] == '\n' || bytes[pos] == '\r') {
+                pos++;
+                continue;
+            }
+            Board board = new Board();
+            pos = Board.parseInto(board, bytes, pos);
+            boards.add(board);
+        }
+        return boards;
+    }
+
+    private static void makespan(String path) throws IOException {
+        final int numRuns = 5;
+        List<Board> boards = loadBoards(path);
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+        System.out.printf("%s: %d boards, %d threads.%n", path, boards.size(), pool.getParallelism());
+
+        // Warm up both orderings before timing.
+        BatchSolver.solveAll(boards, pool, false);
+        BatchSolver.solveAll(boards, pool, true);
+
+        long naive = Long.MAX_VALUE;
+        long longestFirst = Long.MAX_VALUE;
+        for (int run = 0; run < numRuns; run++) {
+            long start = System.nanoTime();
+            BatchSolver.solveAll(boards, pool, false);
+            naive = Math.min(naive, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            BatchSolver.solveAll(boards, pool, true);
+            longestFirst = Math.min(longestFirst, System.nanoTime() - start);
+        }
+        pool.shutdown();
+
+        System.out.printf(
+            "  Makespan, file order:          %s%n",
+            formatDuration(TimeUnit.NANOSECONDS.toMillis(naive))
+        );
+        System.out.printf(
+            "  Makespan, longest-first (LPT): %s (%.1f%% of file order, best of %d runs)%n",
+            formatDuration(TimeUnit.NANOSECONDS.toMillis(longestFirst)),
+            100.0 * longestFirst / naive,
+            numRuns
+        );
+
+        // Replay the measured solve times through greedy list scheduling to
+        // show the effect at thread counts this machine may not have.
+        long[] solveTimes = new long[boards.size()];
+        for (int i = 0; i < solveTimes.length; i++) {
+            Board b = boards.get(i);
+            solveTimes[i] = timeCpuExecution(() -> Solver.solve(b));
+        }
+        Integer[] order = BatchSolver.orderByCost(boards);
+        for (int numThreads : new int[] { 4, 8, 16, 32 }) {
+            long fileOrderSpan = simulateMakespan(solveTimes, null, numThreads);
+            long lptSpan = simulateMakespan(solveTimes, order, numThreads);
+            System.out.printf(
+                "  Simulated on %2d threads: file order %s, LPT %s (%.1f%%)%n",
+                numThreads,
+                formatDuration(TimeUnit.NANOSECONDS.toMillis(fileOrderSpan)),
+                formatDuration(TimeUnit.NANOSECONDS.toMillis(lptSpan)),
+                100.0 * lptSpan / fileOrderSpan
+            );
+        }
+    }
+
+    private static void compareEngines(String path) throws IOException {
+        final int numRuns = 5;
+        List<Board> boards = loadBoards(path);
+        System.out.printf("%s: %d boards.%n", path, boards.size());
+
+        for (Board b : boards) {
+            Board solution = Solver.solve(b);
+            if (!solution.equals(TemplateSolver.solve(b)) || !solution.equals(BitboardSolver.solve(b))
+                    || !solution.equals(SizedSolver.solve(new SizedBoard(b)).toBoard())) {
+                System.out.println("  Solvers disagree on " + b.getSimplifiedString());
+                return;
+            }
+        }
+
+        long search = Long.MAX_VALUE;
+        long templates = Long.MAX_VALUE;
+        long templatesUnique = Long.MAX_VALUE;
+        long bitboards = Long.MAX_VALUE;
+        long bitboardsUnique = Long.MAX_VALUE;
+        long sized = Long.MAX_VALUE;
+        List<SizedBoard> sizedBoards = new ArrayList<>();
+        for (Board b : boards) {
+            sizedBoards.add(new SizedBoard(b));
+        }
+        for (int run = 0; run < numRuns; run++) {
+            search = Math.min(search, timeCpuExecution(() -> {
+                for (Board b : boards) {
+                    Solver.solve(b);
+                }
+            }));
+            templates = Math.min(templates, timeCpuExecution(() -> {
+                for (Board b : boards) {
+                    TemplateSolver.solve(b);
+                }
+            }));
+            templatesUnique = Math.min(templatesUnique, timeCpuExecution(() -> {
+                for (Board b : boards) {
+                    TemplateSolver.solvesUniquely(b);
+                }
+            }));
+            bitboards = Math.min(bitboards, timeCpuExecution(() -> {
+                for (Board b : boards) {
+                    BitboardSolver.solve(b);
+                }
+            }));
+            bitboardsUnique = Math.min(bitboardsUnique, timeCpuExecution(() -> {
+                for (Board b : boards) {
+                    BitboardSolver.solvesUniquely(b);
+                }
+            }));
+            sized = Math.min(sized, timeCpuExecution(() -> {
+                for (SizedBoard b : sizedBoards) {
+                    SizedSolver.solve(b);
+                }
+            }));
+        }
+
+        System.out.printf("  Search solver:               %s (best of %d runs)%n",
+                formatDuration(TimeUnit.NANOSECONDS.toMillis(search)), numRuns);
+        printEngineTime("Template solver:", templates, search);
+        printEngineTime("  uniqueness checks:", templatesUnique, search);
+        printEngineTime("Bitboard solver:", bitboards, search);
+        printEngineTime("  uniqueness checks:", bitboardsUnique, search);
+        printEngineTime("Sized solver:", sized, search);
+    }
+
+    /**
+     * Compares loading and solving a puzzles file as a list of boards with
+     * doing the same through an off-heap {@link BoardBatch}.
+     */
+    private static void compareBatch(String path) throws IOException {
+        final int numRuns = 5;
+        System.out.printf("%s:%n", path);
+
+        long listLoad = Long.MAX_VALUE;
+        long listSolve = Long.MAX_VALUE;
+        long batchLoad = Long.MAX_VALUE;
+        long batchSolve = Long.MAX_VALUE;
+        for (int run = 0; run < numRuns; run++) {
+            List<List<Board>> lists = new ArrayList<>();
+            listLoad = Math.min(listLoad, timeCpuExecution(() -> {
+                try {
+                    lists.add(loadBoards(path));
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+            List<Board> boards = lists.get(0);
+            BitboardSolver solver = new BitboardSolver();
+            listSolve = Math.min(listSolve, timeCpuExecution(() -> {
+                for (int i = 0; i < boards.size(); i++) {
+                    if (solver.countSolutions(boards.get(i), 1) == 1) {
+                        boards.set(i, solver.getLastSolution());
+                    }
+                }
+            }));
+
+            List<BoardBatch> batches = new ArrayList<>();
+            batchLoad = Math.min(batchLoad, timeCpuExecution(() -> {
+                try {
+                    batches.add(BoardBatch.load(Paths.get(path)));
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+            BoardBatch batch = batches.get(0);
+            batchSolve = Math.min(batchSolve, timeCpuExecution(() -> BatchSolver.solveAll(batch, null)));
+            if (batch.validateAll(null) != batch.size()) {
+                System.out.println("  Batch has invalid solutions.");
+                return;
+            }
+        }
+
+        System.out.printf("  List load:                   %s (best of %d runs)%n",
+                formatDuration(TimeUnit.NANOSECONDS.toMillis(listLoad)), numRuns);
+        System.out.printf("  List solve:                  %s%n",
+                formatDuration(TimeUnit.NANOSECONDS.toMillis(listSolve)));
+        System.out.printf("  Batch load:                  %s%n",
+                formatDuration(TimeUnit.NANOSECONDS.toMillis(batchLoad)));
+        System.out.printf("  Batch solve:                 %s%n",
+                formatDuration(TimeUnit.NANOSECONDS.toMillis(batchSolve)));
+    }
+
+    /**
+     * Runs one beam search on each of the given number of configs, printing
+     * every puzzle found, then the fraction of searches that found one and
+     * their median and mean wall time.
+     */
+    private static void beam(int numConfigs, int numClues, int width, int numThreads) {
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
+        // Warm up before timing anything.
+        for (int n = 0; n < 20; n++) {
+            Generator.generatePuzzlesBeam(null, 30, width, null, pool);
+        }
+
+        Random random = new Random(numClues);
+        long[] times = new long[numConfigs];
+        long total = 0L;
+        int found = 0;
+        for (int n = 0; n < numConfigs; n++) {
+            Board config = Generator.generateConfig(random, false);
+            long start = System.nanoTime();
+            List<Board> boards = Generator.generatePuzzlesBeam(config, numClues, width, null, pool);
+            times[n] = System.nanoTime() - start;
+            total += times[n];
+            if (!boards.isEmpty()) {
+                found++;
+                System.out.println(boards.get(boards.size() - 1).getSimplifiedString());
+            }
+        }
+        pool.shutdown();
+
+        Arrays.sort(times);
+        System.out.printf(
+            "%d clues, width %d, %d threads: found %d/%d, median %.1f ms, mean %.1f ms%n",
+            numClues, width, numThreads, found, numConfigs, times[numConfigs / 2] / 1e6, total / 1e6 / numConfigs
+        );
+    }
+
+    private static final String[] DEFAULT_RESTART_POLICIES = {
+        "fixed:25", "fixed:100", "luby:16", "luby:32", "geometric:50:1.5", "adaptive:0.5"
+    };
+
+    /**
+     * Carves the same configs with each restart policy, and prints the median
+     * and 95th percentile time to reach the given number of clues.
+     */
+    private static void compareRestartPolicies(int numClues, int numPuzzles, String[] policies) {
+        Random random = new Random(numClues);
+        Board[] configs = new Board[numPuzzles];
+        for (int n = 0; n < numPuzzles; n++) {
+            configs[n] = Generator.generateConfig(random, false);
+        }
+        System.out.printf("%d clues, %d puzzles:%n", numClues, numPuzzles);
+
+        for (String spec : policies) {
+            long[] times = new long[numPuzzles];
+            for (int n = 0; n < numPuzzles; n++) {
+                RestartPolicy policy = RestartPolicy.parse(spec, numClues);
+                Board config = configs[n];
+                times[n] = timeCpuExecution(() -> Generator.generatePuzzles(config, numClues, null, policy));
+            }
+            Arrays.sort(times);
+            long total = 0L;
+            for (long time : times) {
+                total += time;
+            }
+            System.out.printf(
+                "  %-18s median %7.1f ms, p95 %7.1f ms, mean %7.1f ms%n",
+                spec,
+                times[numPuzzles / 2] / 1e6,
+                times[Math.min((int) Math.ceil(numPuzzles * 0.95) - 1, numPuzzles - 1)] / 1e6,
+                total / 1e6 / numPuzzles
+            );
+        }
+    }
+
+    private static void printEngineTime(String label, long time, long baseline) {
+        System.out.printf(
+            "  %-29s%s (%.1f%% of search)%n",
+            label,
+            formatDuration(TimeUnit.NANOSECONDS.toMillis(time)),
+            100.0 * time / baseline
+        );
+    }
+
+    /**
+     * Returns the makespan of running jobs with the given durations on the
+     * given number of threads, each job going to the first idle thread.
+     * @param order - the order jobs are started in, or null for index order.
+     */
+    private static long simulateMakespan(long[] durations, Integer[] order, int numThreads) {
+        PriorityQueue<Long> threadFreeAt = new PriorityQueue<>();
+        for (int t = 0; t < numThreads; t++) {
+            threadFreeAt.offer(0L);
+        }
+        long makespan = 0L;
+        for (int n = 0; n < durations.length; n++) {
+            int job = (order != null) ? order[n] : n;
+            long end = threadFreeAt.poll() + durations[job];
+            makespan = Math.max(makespan, end);
+            threadFreeAt.offer(end);
+        }
+        return makespan;
+    }
+
     private static String formatDuration(long milli) {
         long mins = milli / 1000L / 60L;
         long secs = (milli / 1000L) % 60L;
         milli %= 1000L;
 
-        String secString = String.format("%d.%d s", secs, milli);
+        String secString = String.format("%d.%03d s", secs, milli);
         if (mins > 0L) {
             return String.format("%d m   %s", mins, secString);
         }
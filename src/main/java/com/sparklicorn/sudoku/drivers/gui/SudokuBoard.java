@@ -19,6 +19,7 @@ import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.BitSet;
 
 import javax.swing.JComponent;
 import javax.swing.JPanel;
@@ -45,6 +46,8 @@ public class SudokuBoard extends JPanel implements ComponentListener {
 		new Color(1f, 0.75f, 0.76f),
 	};
 
+	private static final Color CONFLICT_COLOR = new Color(200, 0, 0);
+
 	protected float fillRatio;
 
 	protected Board board;
@@ -54,6 +57,9 @@ public class SudokuBoard extends JPanel implements ComponentListener {
 
 	protected SudokuCell[] cells;
 
+	/** Cells whose digit also appears in their row, column, or region.*/
+	protected final BitSet conflicts = new BitSet(NUM_CELLS);
+
 	protected static class SudokuCell extends JComponent implements MouseListener, KeyListener, MouseWheelListener {
 
 		protected static SudokuCell selectedCell = null;
@@ -62,10 +68,14 @@ public class SudokuBoard extends JPanel implements ComponentListener {
 		protected static int size;
 		protected static Font font;
 
+		protected final SudokuBoard owner;
+		protected final int index;
 		protected int digit;
 
-		public SudokuCell(int digit) {
-			this.digit = digit;
+		public SudokuCell(SudokuBoard owner, int index) {
+			this.owner = owner;
+			this.index = index;
+			this.digit = owner.board.getValueAt(index);
 
 			this.addMouseListener(this);
 			this.setFocusable(true);
@@ -86,6 +96,14 @@ public class SudokuBoard extends JPanel implements ComponentListener {
 				g2.drawString(Integer.toString(digit), size/4, size - size/8);
 			}
 
+			if (owner.conflicts.get(index)) {
+				int stroke = 4;
+				g2.setColor(CONFLICT_COLOR);
+				g2.setStroke(new BasicStroke(stroke));
+				g2.drawRect(stroke, stroke, size - 2 * stroke, size - 2 * stroke);
+				g2.setStroke(new BasicStroke(1));
+			}
+
 			g2.setColor(Color.BLACK);
 			if (highlightedCell == this || selectedCell == this) {
 				int stroke = 3;
@@ -151,6 +169,7 @@ public class SudokuBoard extends JPanel implements ComponentListener {
 					digit = 0;
 					System.out.println("erasing digit");
 				}
+				owner.setDigit(index, digit);
 				repaint();
 			}
 		}
@@ -162,6 +181,7 @@ public class SudokuBoard extends JPanel implements ComponentListener {
 
 		this.fillRatio = 0.8f;
 		this.board = board;
+		this.board.setConflictTracking(true);
 		this.cells = new SudokuCell[NUM_CELLS];
 
 		try {
@@ -243,10 +263,48 @@ public class SudokuBoard extends JPanel implements ComponentListener {
 
 		this.setLayout(null);
 		for (int i = 0; i < NUM_CELLS; i++) {
-			cells[i] = new SudokuCell(board.getValueAt(i));
+			cells[i] = new SudokuCell(this, i);
 			add(cells[i]);
 		}
+		board.getConflictingCells(conflicts);
+
+	}
+
+	/**
+	 * Places a digit on the board, or erases the cell if the digit is 0, and
+	 * repaints any cells whose conflict highlighting changed.
+	 * <br/>The board tracks conflicts as it changes, so a move that leaves
+	 * the board valid costs no scan at all.
+	 */
+	protected void setDigit(int index, int digit) {
+		board.setValueAt(index, digit);
+		cells[index].digit = digit;
+		cells[index].repaint();
+		refreshConflicts();
+	}
+
+	/**
+	 * Replaces every digit on the board with those of the given board,
+	 * keeping the displayed cells and conflict highlighting in step.
+	 */
+	protected void setBoard(Board values) {
+		for (int i = 0; i < NUM_CELLS; i++) {
+			int digit = values.getValueAt(i);
+			board.setValueAt(i, digit);
+			cells[i].digit = digit;
+		}
+		board.getConflictingCells(conflicts);
+		repaint();
+	}
 
+	/** Recomputes the conflicting cells and repaints those that changed.*/
+	private void refreshConflicts() {
+		BitSet changed = (BitSet) conflicts.clone();
+		board.getConflictingCells(conflicts);
+		changed.xor(conflicts);
+		for (int i = changed.nextSetBit(0); i >= 0; i = changed.nextSetBit(i + 1)) {
+			cells[i].repaint();
+		}
 	}
 
 	@Override protected void paintComponent(Graphics g) {
@@ -5,14 +5,19 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.net.ssl.HttpsURLConnection;
 import javax.swing.JButton;
 import javax.swing.JFrame;
+import javax.swing.JPanel;
+import javax.swing.Timer;
 
 import com.sparklicorn.sudoku.game.Board;
+import com.sparklicorn.sudoku.game.solvers.SolveRecorder;
 import com.sparklicorn.sudoku.game.solvers.Solver;
 import com.sparklicorn.sudoku.util.FileUtil;
 
@@ -67,12 +72,47 @@ public class SudokuGuiDemo {
 				return;
 			}
 
-			for (int i = 0; i < Board.NUM_CELLS; i++) {
-				panel.cells[i].digit = solution.getValueAt(i);
-			}
-			panel.repaint();
+			panel.setBoard(solution);
+		});
+		JButton replayBtn = new JButton("Replay");
+		replayBtn.addActionListener((event) -> {
+			Board start = new Board(panel.board);
+			SolveRecorder recorder = new SolveRecorder(1 << 16);
+			Solver.solve(start, recorder);
+
+			// Keep the board's values after each placement or undo, skipping
+			// eliminations, which don't change what is displayed, and restores,
+			// so that a switch to another queued board shows as one step.
+			List<int[]> frames = new ArrayList<>();
+			int[] n = new int[1];
+			recorder.replay(start, (step) -> {
+				int type = SolveRecorder.typeOf(recorder.getEvent(n[0]++));
+				if (type != SolveRecorder.ELIMINATE && type != SolveRecorder.RESTORE) {
+					frames.add(step.getValues(new int[Board.NUM_CELLS]));
+				}
+			});
+
+			Timer timer = new Timer(50, null);
+			int[] frame = new int[1];
+			timer.addActionListener((tick) -> {
+				if (frame[0] >= frames.size()) {
+					timer.stop();
+					return;
+				}
+				int[] values = frames.get(frame[0]++);
+				for (int i = 0; i < Board.NUM_CELLS; i++) {
+					if (panel.cells[i].digit != values[i]) {
+						panel.setDigit(i, values[i]);
+					}
+				}
+			});
+			timer.start();
 		});
-		f.getContentPane().add(btn, BorderLayout.SOUTH);
+
+		JPanel buttons = new JPanel();
+		buttons.add(btn);
+		buttons.add(replayBtn);
+		f.getContentPane().add(buttons, BorderLayout.SOUTH);
 
 		f.pack();
 		f.setVisible(true);
@@ -1,9 +1,14 @@
 package com.sparklicorn.sudoku.game;
 
+import java.io.ObjectStreamException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
 
 /**
  * The standard 9x9 Sudoku board.
@@ -73,6 +78,20 @@ public class Board implements ISudokuBoard, Serializable {
 		}
 	}
 
+	/** Number of cells sharing a row, column, or region with any given cell.*/
+	public static final int NUM_PEERS = 20;
+
+	/**
+	 * For each cell, the indices of the cells that share a row, column, or
+	 * region with it, excluding the cell itself.
+	 */
+	public static final int[][] PEER_INDICES = new int[NUM_CELLS][];
+	static {
+		for (int i = 0; i < NUM_CELLS; i++) {
+			PEER_INDICES[i] = getPeerIndices(i);
+		}
+	}
+
 	public static int getRowForIndex(int i) {
 		return i / 9;
 	}
@@ -122,6 +141,67 @@ public class Board implements ISudokuBoard, Serializable {
 		return DECODER2[bits] > 0;
 	}
 
+	/*
+	 * Zobrist keys: a random 128-bit key (split into two longs) for every
+	 * candidate bit of every cell. A board's fingerprint is the XOR of the
+	 * keys of all candidate bits set on it. The key of a whole cell mask is
+	 * looked up in two tables, one for its low 5 bits and one for its high 4
+	 * bits, so changing a cell costs the same few lookups however many of
+	 * its bits change. The seed is fixed so that fingerprints are stable
+	 * across runs.
+	 */
+	private static final int ZOBRIST_LOW_BITS = 5;
+	private static final int ZOBRIST_LOW_SIZE = 1 << ZOBRIST_LOW_BITS;
+	private static final int ZOBRIST_HIGH_SIZE = 1 << (NUM_DIGITS - ZOBRIST_LOW_BITS);
+	private static final long[] ZOBRIST_LOW_LO = new long[NUM_CELLS * ZOBRIST_LOW_SIZE];
+	private static final long[] ZOBRIST_LOW_HI = new long[NUM_CELLS * ZOBRIST_LOW_SIZE];
+	private static final long[] ZOBRIST_HIGH_LO = new long[NUM_CELLS * ZOBRIST_HIGH_SIZE];
+	private static final long[] ZOBRIST_HIGH_HI = new long[NUM_CELLS * ZOBRIST_HIGH_SIZE];
+	private static final long EMPTY_FINGERPRINT_LO;
+	private static final long EMPTY_FINGERPRINT_HI;
+	static {
+		SplittableRandom random = new SplittableRandom(0x5eed5d0c0L);
+		long[] bitLo = new long[NUM_DIGITS];
+		long[] bitHi = new long[NUM_DIGITS];
+		for (int i = 0; i < NUM_CELLS; i++) {
+			for (int d = 0; d < NUM_DIGITS; d++) {
+				bitLo[d] = random.nextLong();
+				bitHi[d] = random.nextLong();
+			}
+			for (int m = 1; m < ZOBRIST_LOW_SIZE; m++) {
+				int d = Integer.numberOfTrailingZeros(m);
+				int k = i * ZOBRIST_LOW_SIZE;
+				ZOBRIST_LOW_LO[k + m] = ZOBRIST_LOW_LO[k + (m & (m - 1))] ^ bitLo[d];
+				ZOBRIST_LOW_HI[k + m] = ZOBRIST_LOW_HI[k + (m & (m - 1))] ^ bitHi[d];
+			}
+			for (int m = 1; m < ZOBRIST_HIGH_SIZE; m++) {
+				int d = ZOBRIST_LOW_BITS + Integer.numberOfTrailingZeros(m);
+				int k = i * ZOBRIST_HIGH_SIZE;
+				ZOBRIST_HIGH_LO[k + m] = ZOBRIST_HIGH_LO[k + (m & (m - 1))] ^ bitLo[d];
+				ZOBRIST_HIGH_HI[k + m] = ZOBRIST_HIGH_HI[k + (m & (m - 1))] ^ bitHi[d];
+			}
+		}
+
+		long emptyLo = 0L;
+		long emptyHi = 0L;
+		for (int i = 0; i < NUM_CELLS; i++) {
+			emptyLo ^= zobristLo(i, ALL);
+			emptyHi ^= zobristHi(i, ALL);
+		}
+		EMPTY_FINGERPRINT_LO = emptyLo;
+		EMPTY_FINGERPRINT_HI = emptyHi;
+	}
+
+	private static long zobristLo(int index, int mask) {
+		return ZOBRIST_LOW_LO[index * ZOBRIST_LOW_SIZE + (mask & (ZOBRIST_LOW_SIZE - 1))]
+			^ ZOBRIST_HIGH_LO[index * ZOBRIST_HIGH_SIZE + (mask >>> ZOBRIST_LOW_BITS)];
+	}
+
+	private static long zobristHi(int index, int mask) {
+		return ZOBRIST_LOW_HI[index * ZOBRIST_LOW_SIZE + (mask & (ZOBRIST_LOW_SIZE - 1))]
+			^ ZOBRIST_HIGH_HI[index * ZOBRIST_HIGH_SIZE + (mask >>> ZOBRIST_LOW_BITS)];
+	}
+
 	/**
 	 * Represents the values of the Sudoku board.
 	 */
@@ -129,46 +209,204 @@ public class Board implements ISudokuBoard, Serializable {
 
 	protected int numClues;
 
+	/**
+	 * 128-bit Zobrist fingerprint of the board's masks. Once computed, it is
+	 * kept up to date by every cell change; bulk writes mark it stale so
+	 * that boards that are never hashed never pay for it.
+	 */
+	private transient long fingerprintLo;
+	private transient long fingerprintHi;
+	private transient boolean fingerprintValid;
+
+	/**
+	 * While conflict tracking is on, the number of cells holding each digit
+	 * in each unit, at <code>unit * 9 + digit - 1</code>, with rows, then
+	 * columns, then regions as units 0 to 26. Null while tracking is off.
+	 */
+	private transient byte[] unitDigitCounts;
+
+	/** The number of placements beyond the first of each digit in each unit.*/
+	private transient int numConflicts;
+	private transient boolean conflictsValid;
+
 	/** Creates a Board that is empty.*/
 	public Board() {
 		board = new int[NUM_CELLS];
 		Arrays.fill(board, ALL);
 		numClues = 0;
+		fingerprintLo = EMPTY_FINGERPRINT_LO;
+		fingerprintHi = EMPTY_FINGERPRINT_HI;
+		fingerprintValid = true;
 	}
 
 	/**
 	 * Creates a Board from a string of values.
 	 * Each block of 9 characters will be associated with a row on the board.
-	 * The string length must exactly match the number of board spaces.
 	 * Characters that are not 1 through 9 in the given string will be
-	 * considered empty spaces.
+	 * considered empty spaces, and each '-' stands for a whole row of 9 empty
+	 * spaces. Values past the 81st are ignored, and a string with fewer
+	 * values leaves the remaining spaces empty.
 	 * @param values - String of values that will be used to populate the board.
 	 */
 	public Board(String values) {
 		if (values == null)
 			throw new NullPointerException("Given Board string is null.");
 
-		//Empty row shorthand.
-		values = values.replaceAll("-", "000000000");
+		board = new int[NUM_CELLS];
+		parse(this, values, 0, false);
+	}
 
-		if (values.length() > NUM_CELLS) {
-			values = values.substring(0, NUM_CELLS);
+	/**
+	 * Creates a Board from the characters of the given sequence, starting at
+	 * the given offset and ending at the first line terminator or the end of
+	 * the sequence. See {@link #parseInto(Board, CharSequence, int)}.
+	 * @param values - characters that will be used to populate the board.
+	 * @param offset - position of the first character to read.
+	 */
+	public Board(CharSequence values, int offset) {
+		board = new int[NUM_CELLS];
+		parse(this, values, offset, true);
+	}
+
+	/**
+	 * Creates a Board from ASCII bytes, starting at the given offset and
+	 * ending at the first line terminator or the end of the array. See
+	 * {@link #parseInto(Board, byte[], int)}.
+	 * @param values - bytes that will be used to populate the board.
+	 * @param offset - position of the first byte to read.
+	 */
+	public Board(byte[] values, int offset) {
+		board = new int[NUM_CELLS];
+		parseInto(this, values, offset);
+	}
+
+	/**
+	 * Overwrites the given board with values read from the given characters,
+	 * allocating nothing.
+	 * <br/>Characters are read from <code>offset</code> until a line
+	 * terminator ('\n' or '\r') or the end of the sequence. They are
+	 * interpreted as by {@link #Board(String)}: '1' through '9' are values,
+	 * '-' is a row of 9 empty spaces, and anything else is an empty space.
+	 * Characters past the 81st value are skipped, and missing values leave
+	 * the remaining spaces empty.
+	 * @param board - the board to overwrite.
+	 * @param values - the characters to read.
+	 * @param offset - position of the first character to read.
+	 * @return The position of the line terminator that ended the board, or
+	 * the length of the sequence if there was none.
+	 */
+	public static int parseInto(Board board, CharSequence values, int offset) {
+		return parse(board, values, offset, true);
+	}
+
+	private static int parse(Board board, CharSequence values, int offset, boolean stopAtLineEnd) {
+		int[] masks = board.board;
+		int cell = 0;
+		int clues = 0;
+		int pos = offset;
+		for (int end = values.length(); pos < end; pos++) {
+			char ch = values.charAt(pos);
+			if (stopAtLineEnd && (ch == '\n' || ch == '\r')) {
+				break;
+			}
+			if (cell < NUM_CELLS) {
+				cell = parseChar(masks, cell, ch);
+				if (ch >= '1' && ch <= '9') {
+					clues++;
+				}
+			}
 		}
+		finishParse(board, cell, clues);
+		return pos;
+	}
 
-		while (values.length() < NUM_CELLS) {
-			values += "0";
+	/**
+	 * Overwrites the given board with values read from ASCII bytes,
+	 * allocating nothing. Bytes are interpreted as by
+	 * {@link #parseInto(Board, CharSequence, int)}.
+	 * @param board - the board to overwrite.
+	 * @param values - the bytes to read.
+	 * @param offset - position of the first byte to read.
+	 * @return The position of the line terminator that ended the board, or
+	 * the length of the array if there was none.
+	 */
+	public static int parseInto(Board board, byte[] values, int offset) {
+		int[] masks = board.board;
+		int cell = 0;
+		int clues = 0;
+		int pos = offset;
+		for (; pos < values.length; pos++) {
+			byte ch = values[pos];
+			if (ch == '\n' || ch == '\r') {
+				break;
+			}
+			if (cell < NUM_CELLS) {
+				cell = parseChar(masks, cell, ch);
+				if (ch >= '1' && ch <= '9') {
+					clues++;
+				}
+			}
 		}
+		finishParse(board, cell, clues);
+		return pos;
+	}
 
-		//Non-conforming characters to ZERO.
-		values = values.replaceAll("[^1-9]", "0");
+	/**
+	 * Overwrites the given board with values read from ASCII bytes in the
+	 * given buffer, allocating nothing. Bytes are read with absolute gets up
+	 * to the buffer's limit, so its position is not changed, and are
+	 * interpreted as by {@link #parseInto(Board, CharSequence, int)}.
+	 * @param board - the board to overwrite.
+	 * @param values - the buffer to read.
+	 * @param offset - position of the first byte to read.
+	 * @return The position of the line terminator that ended the board, or
+	 * the buffer's limit if there was none.
+	 */
+	public static int parseInto(Board board, ByteBuffer values, int offset) {
+		int[] masks = board.board;
+		int cell = 0;
+		int clues = 0;
+		int pos = offset;
+		for (int end = values.limit(); pos < end; pos++) {
+			byte ch = values.get(pos);
+			if (ch == '\n' || ch == '\r') {
+				break;
+			}
+			if (cell < NUM_CELLS) {
+				cell = parseChar(masks, cell, ch);
+				if (ch >= '1' && ch <= '9') {
+					clues++;
+				}
+			}
+		}
+		finishParse(board, cell, clues);
+		return pos;
+	}
 
-		board = new int[NUM_CELLS];
-		for (int i = 0; i < NUM_CELLS; i++) {
-			int v = values.charAt(i) - '0';
-			board[i] = (v > 0) ? (1 << (v - 1)) : ALL;
+	/**
+	 * Writes the mask(s) for one input character starting at the given cell.
+	 * @return The next cell to write.
+	 */
+	private static int parseChar(int[] masks, int cell, int ch) {
+		if (ch >= '1' && ch <= '9') {
+			masks[cell++] = 1 << (ch - '1');
+		} else if (ch == '-') {
+			//Empty row shorthand.
+			for (int end = Math.min(cell + NUM_DIGITS, NUM_CELLS); cell < end; cell++) {
+				masks[cell] = ALL;
+			}
+		} else {
+			masks[cell++] = ALL;
 		}
+		return cell;
+	}
 
-		numClues = countClues();
+	private static void finishParse(Board board, int cell, int clues) {
+		for (int[] masks = board.board; cell < NUM_CELLS; cell++) {
+			masks[cell] = ALL;
+		}
+		board.numClues = clues;
+		board.invalidateCaches();
 	}
 
 	/**
@@ -205,6 +443,14 @@ public class Board implements ISudokuBoard, Serializable {
 		board = new int[NUM_CELLS];
 		System.arraycopy(other.board, 0, board, 0, NUM_CELLS);
 		numClues = other.numClues;
+		fingerprintLo = other.fingerprintLo;
+		fingerprintHi = other.fingerprintHi;
+		fingerprintValid = other.fingerprintValid;
+		if (other.unitDigitCounts != null) {
+			unitDigitCounts = other.unitDigitCounts.clone();
+			numConflicts = other.numConflicts;
+			conflictsValid = other.conflictsValid;
+		}
 	}
 
 	/** Clears all values on the board.*/
@@ -212,6 +458,211 @@ public class Board implements ISudokuBoard, Serializable {
 		board = new int[NUM_CELLS];
 		Arrays.fill(board, ALL);
 		numClues = 0;
+		fingerprintLo = EMPTY_FINGERPRINT_LO;
+		fingerprintHi = EMPTY_FINGERPRINT_HI;
+		fingerprintValid = true;
+		if (unitDigitCounts != null) {
+			Arrays.fill(unitDigitCounts, (byte) 0);
+			numConflicts = 0;
+			conflictsValid = true;
+		}
+	}
+
+	/**
+	 * Marks the fingerprint and conflict counts as stale. Must be called
+	 * after writing to the backing array directly.
+	 */
+	void invalidateCaches() {
+		fingerprintValid = false;
+		conflictsValid = false;
+	}
+
+	private void computeFingerprint() {
+		long lo = 0L;
+		long hi = 0L;
+		for (int i = 0; i < NUM_CELLS; i++) {
+			lo ^= zobristLo(i, board[i]);
+			hi ^= zobristHi(i, board[i]);
+		}
+		fingerprintLo = lo;
+		fingerprintHi = hi;
+		fingerprintValid = true;
+	}
+
+	/** Updates the fingerprint, if computed, for a cell's mask changing between the given values.*/
+	private void updateFingerprint(int index, int oldMask, int newMask) {
+		if (fingerprintValid) {
+			fingerprintLo ^= zobristLo(index, oldMask) ^ zobristLo(index, newMask);
+			fingerprintHi ^= zobristHi(index, oldMask) ^ zobristHi(index, newMask);
+		}
+	}
+
+	/**
+	 * Returns the low 64 bits of this board's 128-bit Zobrist fingerprint.
+	 * <br/>The fingerprint is a hash of every cell's candidate mask that is
+	 * updated in constant time as cells change. Boards with equal masks
+	 * always have equal fingerprints, and the chance of unequal boards
+	 * sharing all 128 bits is negligible, so the fingerprint can stand in for
+	 * the board in dedup sets and transposition tables.
+	 * <br/>The fingerprint is computed on first use, and after that
+	 * maintained incrementally as cells change.
+	 */
+	public long getFingerprintLow() {
+		if (!fingerprintValid) {
+			computeFingerprint();
+		}
+		return fingerprintLo;
+	}
+
+	/**
+	 * Returns the high 64 bits of this board's 128-bit Zobrist fingerprint.
+	 * <br/>See {@link #getFingerprintLow()}.
+	 */
+	public long getFingerprintHigh() {
+		if (!fingerprintValid) {
+			computeFingerprint();
+		}
+		return fingerprintHi;
+	}
+
+	/** For each cell, its row, column, and region as unit numbers 0 to 26.*/
+	private static final int[] CELL_UNITS = new int[NUM_CELLS * 3];
+	static {
+		for (int i = 0; i < NUM_CELLS; i++) {
+			CELL_UNITS[i * 3] = getRowForIndex(i);
+			CELL_UNITS[i * 3 + 1] = NUM_DIGITS + getColForIndex(i);
+			CELL_UNITS[i * 3 + 2] = 2 * NUM_DIGITS + getRegionForIndex(i);
+		}
+	}
+
+	/**
+	 * Turns conflict tracking on or off.
+	 * <br/>While tracking is on, the board keeps a count of each digit in
+	 * each row, column, and region, updated in constant time by
+	 * {@link #setValueAt(int, int)} and {@link #setMaskAt(int, int)}. This
+	 * makes {@link #isValid()}, {@link #isSolved()}, and
+	 * {@link #getNumConflicts()} constant time, which suits boards edited one
+	 * move at a time, such as a player's board. Bulk writes such as
+	 * {@link #setMasks(int[])} recount on the next query.
+	 * <br/>Tracking is off by default, and is not kept through serialization.
+	 * @param enabled - whether to track conflicts.
+	 */
+	public void setConflictTracking(boolean enabled) {
+		if (enabled && unitDigitCounts == null) {
+			unitDigitCounts = new byte[3 * NUM_DIGITS * NUM_DIGITS];
+			conflictsValid = false;
+		} else if (!enabled) {
+			unitDigitCounts = null;
+		}
+	}
+
+	/** Returns whether conflict tracking is on; see {@link #setConflictTracking(boolean)}.*/
+	public boolean isTrackingConflicts() {
+		return unitDigitCounts != null;
+	}
+
+	private void countConflicts() {
+		Arrays.fill(unitDigitCounts, (byte) 0);
+		int conflicts = 0;
+		for (int i = 0; i < NUM_CELLS; i++) {
+			int digit = decode(board[i]);
+			if (digit > 0) {
+				for (int k = i * 3; k < i * 3 + 3; k++) {
+					if (++unitDigitCounts[CELL_UNITS[k] * NUM_DIGITS + digit - 1] > 1) {
+						conflicts++;
+					}
+				}
+			}
+		}
+		numConflicts = conflicts;
+		conflictsValid = true;
+	}
+
+	/** Updates the conflict counts, if tracked, for a cell's mask changing between the given values.*/
+	private void updateConflicts(int index, int oldMask, int newMask) {
+		if (unitDigitCounts == null || !conflictsValid) {
+			return;
+		}
+		int oldDigit = decode(oldMask);
+		int newDigit = decode(newMask);
+		if (oldDigit == newDigit) {
+			return;
+		}
+		for (int k = index * 3; k < index * 3 + 3; k++) {
+			int unit = CELL_UNITS[k] * NUM_DIGITS;
+			if (oldDigit > 0 && --unitDigitCounts[unit + oldDigit - 1] > 0) {
+				numConflicts--;
+			}
+			if (newDigit > 0 && ++unitDigitCounts[unit + newDigit - 1] > 1) {
+				numConflicts++;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of conflicting placements: for every row, column,
+	 * and region, the number of times a digit appears beyond its first.
+	 * A board is valid exactly when this is 0.
+	 * <br/>Constant time while conflict tracking is on; otherwise the board
+	 * is scanned.
+	 */
+	public int getNumConflicts() {
+		if (unitDigitCounts == null) {
+			setConflictTracking(true);
+			int conflicts = getNumConflicts();
+			setConflictTracking(false);
+			return conflicts;
+		}
+		if (!conflictsValid) {
+			countConflicts();
+		}
+		return numConflicts;
+	}
+
+	/**
+	 * Finds the cells whose digit also appears elsewhere in their row,
+	 * column, or region.
+	 * <br/>While conflict tracking is on, a valid board is answered in
+	 * constant time, and otherwise only the units holding a duplicate are
+	 * visited.
+	 * @param cells - cleared, then the indices of the conflicting cells are
+	 * set in it.
+	 * @return The given set, for convenience.
+	 */
+	public BitSet getConflictingCells(BitSet cells) {
+		cells.clear();
+		boolean tracking = isTrackingConflicts();
+		if (!tracking) {
+			setConflictTracking(true);
+		}
+		if (getNumConflicts() > 0) {
+			for (int u = 0; u < 3 * NUM_DIGITS; u++) {
+				for (int d = 0; d < NUM_DIGITS; d++) {
+					if (unitDigitCounts[u * NUM_DIGITS + d] > 1) {
+						int mask = 1 << d;
+						for (int i : unitIndices(u)) {
+							if (board[i] == mask) {
+								cells.set(i);
+							}
+						}
+					}
+				}
+			}
+		}
+		if (!tracking) {
+			setConflictTracking(false);
+		}
+		return cells;
+	}
+
+	private static int[] unitIndices(int unit) {
+		if (unit < NUM_DIGITS) {
+			return ROW_INDICES[unit];
+		}
+		if (unit < 2 * NUM_DIGITS) {
+			return COL_INDICES[unit - NUM_DIGITS];
+		}
+		return REGION_INDICES[unit - 2 * NUM_DIGITS];
 	}
 
 	public int getNumClues() {
@@ -225,8 +676,8 @@ public class Board implements ISudokuBoard, Serializable {
 
 	public int countClues() {
 		int result = 0;
-		for (int v : this) {
-			if (decode(v) > 0) {
+		for (int mask : board) {
+			if (isSingleDigit(mask)) {
 				result++;
 			}
 		}
@@ -247,6 +698,7 @@ public class Board implements ISudokuBoard, Serializable {
 	 * @return The board populated array, or if the array was too small,
 	 * a newly allocated array with the populated values.
 	 */
+	@Override
 	public int[] getMasks(int[] board) {
 		if (board.length < NUM_CELLS) {
 			board = new int[NUM_CELLS];
@@ -267,8 +719,11 @@ public class Board implements ISudokuBoard, Serializable {
 		}
 
 		int prevValue = decode(board[index]);
+		int newMask = (value > 0) ? (1 << (value - 1)) : 0;
+		updateFingerprint(index, board[index], newMask);
+		updateConflicts(index, board[index], newMask);
 		if (value > 0) {
-			board[index] = 1 << (value - 1);
+			board[index] = newMask;
 			if (prevValue == 0) {
 				numClues++;
 			}
@@ -313,9 +768,48 @@ public class Board implements ISudokuBoard, Serializable {
 			numClues--;
 		}
 
+		updateFingerprint(index, board[index], value);
+		updateConflicts(index, board[index], value);
 		board[index] = value;
 	}
 
+	/**
+	 * Sets the mask values of every position on the board at once.
+	 * <br/>See {@link Board} for information about how the bitmasks are used.
+	 * @param masks - The bitmasks to set, indexed by board position.
+	 */
+	@Override
+	public void setMasks(int[] masks) {
+		if (masks.length < NUM_CELLS) {
+			throw new IllegalArgumentException("Number of masks was not appropriate.");
+		}
+
+		int clues = 0;
+		for (int i = 0; i < NUM_CELLS; i++) {
+			int mask = masks[i];
+			if (mask < 0 || mask > ALL) {
+				throw new IllegalArgumentException("Value is out of bounds.");
+			}
+			if (isSingleDigit(mask)) {
+				clues++;
+			}
+		}
+
+		System.arraycopy(masks, 0, board, 0, NUM_CELLS);
+		numClues = clues;
+		invalidateCaches();
+	}
+
+	@Override
+	public int candidateMask(int index) {
+		return board[index];
+	}
+
+	@Override
+	public IntStream cells() {
+		return Arrays.stream(board).map(Board::decode);
+	}
+
 	/**
 	 * <em>Two boards are equal if they contain the same configuration of values.</em>
 	 * <br/><br/>
@@ -326,7 +820,12 @@ public class Board implements ISudokuBoard, Serializable {
 		if (this == obj)
 			return true;
 		if (obj instanceof Board) {
-			return Arrays.equals(board, ((Board) obj).board);
+			Board other = (Board) obj;
+			if (fingerprintValid && other.fingerprintValid
+				&& (fingerprintLo != other.fingerprintLo || fingerprintHi != other.fingerprintHi)) {
+				return false;
+			}
+			return Arrays.equals(board, other.board);
 		}
 		return false;
 	}
@@ -346,22 +845,204 @@ public class Board implements ISudokuBoard, Serializable {
 	}
 
 	public static final String alphabet = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+	/** The longest run of empty spaces a single compressed character stands for.*/
+	private static final int MAX_COMPRESSED_RUN = alphabet.length() + 1;
+
+	/** Number of empty spaces each character stands for in a compressed string, or 0.*/
+	private static final int[] COMPRESSED_RUNS = new int[128];
+	static {
+		for (int i = 0; i < alphabet.length(); i++) {
+			COMPRESSED_RUNS[alphabet.charAt(i)] = i + 2;
+		}
+		COMPRESSED_RUNS['.'] = 1;
+		COMPRESSED_RUNS['-'] = NUM_DIGITS;
+	}
+
+	/**
+	 * Returns a string representing the board in compressed form.
+	 * <br/>Values are written as digits, and each run of empty spaces is
+	 * written as one character: '.' for a single space, or the letter at
+	 * index <code>n - 2</code> of {@link #alphabet} for a run of
+	 * <code>n</code> spaces, with runs longer than 53 split into 'Z's
+	 * followed by the remainder. A board with no values is "-".
+	 * <br/>See {@link #fromCompressedString(CharSequence)}.
+	 */
 	public String getCompressedString() {
-		if (getNumEmptySpaces() == NUM_CELLS) {
-			return "-";
+		return appendCompressedString(new StringBuilder(NUM_CELLS)).toString();
+	}
+
+	/**
+	 * Appends the compressed form of this board to the given builder; see
+	 * {@link #getCompressedString()}.
+	 * @param strb - the builder to append to.
+	 * @return The given builder, for convenience.
+	 */
+	public StringBuilder appendCompressedString(StringBuilder strb) {
+		int start = strb.length();
+		boolean hasValue = false;
+		int run = 0;
+		for (int i = 0; i <= NUM_CELLS; i++) {
+			int v = (i < NUM_CELLS) ? decode(board[i]) : 0;
+			if (i < NUM_CELLS && v == 0) {
+				run++;
+				continue;
+			}
+			for (; run >= MAX_COMPRESSED_RUN; run -= MAX_COMPRESSED_RUN) {
+				strb.append(alphabet.charAt(MAX_COMPRESSED_RUN - 2));
+			}
+			if (run > 1) {
+				strb.append(alphabet.charAt(run - 2));
+			} else if (run == 1) {
+				strb.append('.');
+			}
+			run = 0;
+			if (v > 0) {
+				strb.append((char) ('0' + v));
+				hasValue = true;
+			}
 		}
 
-		String str = getSimplifiedString();
-		for (int numEmpty = alphabet.length() + 1; numEmpty > 1; numEmpty--) {
-			str = str.replaceAll(
-				"\\.".repeat(numEmpty),
-				Character.toString(alphabet.charAt(numEmpty - 2))
-			);
+		if (!hasValue) {
+			strb.setLength(start);
+			strb.append('-');
 		}
-		return str;
+		return strb;
 	}
 
-	// TODO - Build Board from compressed string
+	/**
+	 * Writes the compressed form of this board as ASCII bytes; see
+	 * {@link #getCompressedString()}.
+	 * <br/>At most 81 bytes are written.
+	 * @param dest - the array to write to.
+	 * @param offset - position of the first byte to write.
+	 * @return The position just past the last byte written.
+	 */
+	public int writeCompressed(byte[] dest, int offset) {
+		int start = offset;
+		boolean hasValue = false;
+		int run = 0;
+		for (int i = 0; i <= NUM_CELLS; i++) {
+			int v = (i < NUM_CELLS) ? decode(board[i]) : 0;
+			if (i < NUM_CELLS && v == 0) {
+				run++;
+				continue;
+			}
+			for (; run >= MAX_COMPRESSED_RUN; run -= MAX_COMPRESSED_RUN) {
+				dest[offset++] = (byte) alphabet.charAt(MAX_COMPRESSED_RUN - 2);
+			}
+			if (run > 1) {
+				dest[offset++] = (byte) alphabet.charAt(run - 2);
+			} else if (run == 1) {
+				dest[offset++] = '.';
+			}
+			run = 0;
+			if (v > 0) {
+				dest[offset++] = (byte) ('0' + v);
+				hasValue = true;
+			}
+		}
+
+		if (!hasValue) {
+			offset = start;
+			dest[offset++] = '-';
+		}
+		return offset;
+	}
+
+	/**
+	 * Creates a Board from a string produced by {@link #getCompressedString()}.
+	 * @param compressed - the compressed board.
+	 * @return A new Board with the values encoded in the string.
+	 */
+	public static Board fromCompressedString(CharSequence compressed) {
+		Board board = new Board();
+		parseCompressedInto(board, compressed, 0);
+		return board;
+	}
+
+	/**
+	 * Overwrites the given board with a compressed board read from the given
+	 * characters, allocating nothing.
+	 * <br/>Characters are read from <code>offset</code> until a line
+	 * terminator or the end of the sequence. Digits are values, '.' and the
+	 * letters of {@link #alphabet} are runs of empty spaces as described in
+	 * {@link #getCompressedString()}, '-' is a row of 9 empty spaces, and
+	 * anything else is a single empty space. Missing spaces are left empty.
+	 * @param board - the board to overwrite.
+	 * @param compressed - the characters to read.
+	 * @param offset - position of the first character to read.
+	 * @return The position of the line terminator that ended the board, or
+	 * the length of the sequence if there was none.
+	 */
+	public static int parseCompressedInto(Board board, CharSequence compressed, int offset) {
+		int[] masks = board.board;
+		int cell = 0;
+		int clues = 0;
+		int pos = offset;
+		for (int end = compressed.length(); pos < end; pos++) {
+			char ch = compressed.charAt(pos);
+			if (ch == '\n' || ch == '\r') {
+				break;
+			}
+			if (cell < NUM_CELLS) {
+				cell = parseCompressedChar(masks, cell, ch);
+				if (ch >= '1' && ch <= '9') {
+					clues++;
+				}
+			}
+		}
+		finishParse(board, cell, clues);
+		return pos;
+	}
+
+	/**
+	 * Overwrites the given board with a compressed board read from ASCII
+	 * bytes, allocating nothing. Bytes are interpreted as by
+	 * {@link #parseCompressedInto(Board, CharSequence, int)}.
+	 * @param board - the board to overwrite.
+	 * @param compressed - the bytes to read.
+	 * @param offset - position of the first byte to read.
+	 * @return The position of the line terminator that ended the board, or
+	 * the length of the array if there was none.
+	 */
+	public static int parseCompressedInto(Board board, byte[] compressed, int offset) {
+		int[] masks = board.board;
+		int cell = 0;
+		int clues = 0;
+		int pos = offset;
+		for (; pos < compressed.length; pos++) {
+			byte ch = compressed[pos];
+			if (ch == '\n' || ch == '\r') {
+				break;
+			}
+			if (cell < NUM_CELLS) {
+				cell = parseCompressedChar(masks, cell, ch);
+				if (ch >= '1' && ch <= '9') {
+					clues++;
+				}
+			}
+		}
+		finishParse(board, cell, clues);
+		return pos;
+	}
+
+	/**
+	 * Writes the mask(s) for one compressed character starting at the given
+	 * cell.
+	 * @return The next cell to write.
+	 */
+	private static int parseCompressedChar(int[] masks, int cell, int ch) {
+		if (ch >= '1' && ch <= '9') {
+			masks[cell++] = 1 << (ch - '1');
+			return cell;
+		}
+		int run = (ch >= 0 && ch < COMPRESSED_RUNS.length) ? COMPRESSED_RUNS[ch] : 0;
+		for (int end = Math.min(cell + Math.max(run, 1), NUM_CELLS); cell < end; cell++) {
+			masks[cell] = ALL;
+		}
+		return cell;
+	}
 
 	@Override
 	public String toString() {
@@ -403,7 +1084,16 @@ public class Board implements ISudokuBoard, Serializable {
 
 	@Override
 	public int hashCode() {
-		return Arrays.hashCode(board);
+		long lo = getFingerprintLow();
+		return (int) (lo ^ (lo >>> 32));
+	}
+
+	/**
+	 * Serializes this board in the compact form of {@link BoardCodec}.
+	 * <br/>Streams written with the default form are still readable.
+	 */
+	private Object writeReplace() throws ObjectStreamException {
+		return new SerializedBoard(this);
 	}
 
 	@Override
@@ -445,6 +1135,9 @@ public class Board implements ISudokuBoard, Serializable {
 	 * @return True if the board is valid; otherwise false.
 	 */
 	public boolean isValid() {
+		if (unitDigitCounts != null) {
+			return getNumConflicts() == 0;
+		}
 
 		//Check for positions with no candidates.
 		/*for (int i = 0; i < NUM_CELLS; i++) {
@@ -496,6 +1189,24 @@ public class Board implements ISudokuBoard, Serializable {
 		return result;
 	}
 
+	public static int[] getPeerIndices(int index) {
+		int[] result = new int[NUM_PEERS];
+		int n = 0;
+		int row = getRowForIndex(index);
+		int col = getColForIndex(index);
+		int region = getRegionForIndex(index);
+		for (int i = 0; i < NUM_CELLS; i++) {
+			if (i != index && (
+				getRowForIndex(i) == row ||
+				getColForIndex(i) == col ||
+				getRegionForIndex(i) == region
+			)) {
+				result[n++] = i;
+			}
+		}
+		return result;
+	}
+
 	/**
 	 * Determines whether the given row on the given board is valid.
 	 * <br/>A row is considered valid if it contains no duplicate digits
@@ -0,0 +1,470 @@
+package com.sparklicorn.sudoku.game;
+
+import static com.sparklicorn.sudoku.game.Board.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.IntStream;
+
+/**
+ * A fixed-capacity batch of 9x9 boards stored off the Java heap.
+ * <br/><br/>
+ * Holding millions of {@link Board} objects costs an object header and a
+ * separate <code>int[81]</code> per board, all of which the garbage
+ * collector must trace. A batch instead keeps its boards in direct
+ * buffers, one buffer per field:
+ * <ul>
+ * <li>masks: 81 cell masks per board, 2 bytes each, boards stored back to
+ * back, so walking the batch reads memory in order.</li>
+ * <li>clues: the number of single-digit cells of each board, 1 byte
+ * each.</li>
+ * </ul>
+ * Boards are read and written through {@link View}s, reusable flyweights
+ * that implement {@link ISudokuBoard} over one entry, or copied in and out
+ * of a {@link Board} with {@link #set(int, Board)} and
+ * {@link #copyTo(int, Board)}.
+ * <br/><br/>
+ * A batch holds at most {@link #MAX_CAPACITY} boards. Accesses to different
+ * entries may be made from different threads; the batch itself does no
+ * locking.
+ */
+public final class BoardBatch implements Iterable<BoardBatch.View> {
+
+	private static final int MASK_BYTES = 2;
+	private static final int BOARD_BYTES = NUM_CELLS * MASK_BYTES;
+
+	/** The largest number of boards a batch can hold.*/
+	public static final int MAX_CAPACITY = Integer.MAX_VALUE / BOARD_BYTES;
+
+	private final int capacity;
+	private final ByteBuffer masks;
+	private final ByteBuffer clues;
+	private int size;
+
+	/**
+	 * Creates an empty batch.
+	 * @param capacity - the number of boards the batch can hold.
+	 */
+	public BoardBatch(int capacity) {
+		if (capacity < 0 || capacity > MAX_CAPACITY) {
+			throw new IllegalArgumentException("Capacity must be between 0 and " + MAX_CAPACITY);
+		}
+		this.capacity = capacity;
+		this.masks = ByteBuffer.allocateDirect(capacity * BOARD_BYTES).order(ByteOrder.nativeOrder());
+		this.clues = ByteBuffer.allocateDirect(capacity);
+		this.size = 0;
+	}
+
+	/**
+	 * Creates a batch holding copies of the given boards.
+	 * @param boards - the boards to copy.
+	 */
+	public static BoardBatch of(Collection<? extends Board> boards) {
+		BoardBatch batch = new BoardBatch(boards.size());
+		for (Board board : boards) {
+			batch.add(board);
+		}
+		return batch;
+	}
+
+	/**
+	 * Loads a puzzles file, one board per line in the form accepted by
+	 * {@link Board#parseInto(Board, ByteBuffer, int)}. Blank lines are
+	 * skipped.
+	 * <br/>The file is memory mapped and parsed through a single scratch
+	 * board, so no Board or String is created per line.
+	 * @param path - the file to load.
+	 * @return A batch sized to the number of boards in the file.
+	 */
+	public static BoardBatch load(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			int count = 0;
+			for (int pos = 0, end = bytes.limit(); pos < end; pos = nextLine(bytes, pos)) {
+				if (!isBlankLine(bytes, pos)) {
+					count++;
+				}
+			}
+
+			BoardBatch batch = new BoardBatch(count);
+			Board scratch = new Board();
+			for (int pos = 0, end = bytes.limit(); pos < end; pos = nextLine(bytes, pos)) {
+				if (!isBlankLine(bytes, pos)) {
+					Board.parseInto(scratch, bytes, pos);
+					batch.add(scratch);
+				}
+			}
+			return batch;
+		}
+	}
+
+	private static boolean isBlankLine(ByteBuffer bytes, int pos) {
+		for (int end = bytes.limit(); pos < end; pos++) {
+			byte ch = bytes.get(pos);
+			if (ch == '\n' || ch == '\r') {
+				break;
+			}
+			if (!Character.isWhitespace(ch)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Returns the position of the start of the next line.*/
+	private static int nextLine(ByteBuffer bytes, int pos) {
+		int end = bytes.limit();
+		while (pos < end && bytes.get(pos) != '\n' && bytes.get(pos) != '\r') {
+			pos++;
+		}
+		if (pos < end && bytes.get(pos) == '\r') {
+			pos++;
+		}
+		if (pos < end && bytes.get(pos) == '\n') {
+			pos++;
+		}
+		return pos;
+	}
+
+	/** Returns the number of boards in the batch.*/
+	public int size() {
+		return size;
+	}
+
+	/** Returns the number of boards the batch can hold.*/
+	public int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * Appends a copy of the given board.
+	 * @param board - the board to copy.
+	 * @return The index of the new entry.
+	 * @throws IllegalStateException If the batch is full.
+	 */
+	public int add(Board board) {
+		if (size == capacity) {
+			throw new IllegalStateException("Batch is full: " + capacity + " boards.");
+		}
+		int index = size++;
+		set(index, board);
+		return index;
+	}
+
+	/**
+	 * Overwrites an entry with a copy of the given board.
+	 * @param index - the entry to overwrite.
+	 * @param board - the board to copy.
+	 */
+	public void set(int index, Board board) {
+		int offset = offset(index);
+		int[] src = board.board;
+		for (int i = 0; i < NUM_CELLS; i++, offset += MASK_BYTES) {
+			masks.putShort(offset, (short) src[i]);
+		}
+		clues.put(index, (byte) board.numClues);
+	}
+
+	/**
+	 * Overwrites the given board with a copy of an entry.
+	 * @param index - the entry to copy.
+	 * @param board - the board to overwrite.
+	 * @return The given board, for convenience.
+	 */
+	public Board copyTo(int index, Board board) {
+		int offset = offset(index);
+		int[] dest = board.board;
+		for (int i = 0; i < NUM_CELLS; i++, offset += MASK_BYTES) {
+			dest[i] = masks.getShort(offset);
+		}
+		board.numClues = getNumClues(index);
+		board.invalidateCaches();
+		return board;
+	}
+
+	/** Returns a new Board holding a copy of the given entry.*/
+	public Board toBoard(int index) {
+		return copyTo(index, new Board());
+	}
+
+	/**
+	 * Returns the candidate mask of a cell of an entry.
+	 * @param index - the entry.
+	 * @param cell - the position on the board [0, 80].
+	 */
+	public int getMaskAt(int index, int cell) {
+		return masks.getShort(offset(index) + cell * MASK_BYTES);
+	}
+
+	/**
+	 * Returns the digit of a cell of an entry, or 0 if it is not a single digit.
+	 * @param index - the entry.
+	 * @param cell - the position on the board [0, 80].
+	 */
+	public int getValueAt(int index, int cell) {
+		return decode(getMaskAt(index, cell));
+	}
+
+	/** Returns the number of single-digit cells of the given entry.*/
+	public int getNumClues(int index) {
+		return clues.get(index);
+	}
+
+	private int offset(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+		}
+		return index * BOARD_BYTES;
+	}
+
+	private void setMaskAt(int index, int cell, int mask) {
+		int offset = offset(index) + cell * MASK_BYTES;
+		boolean wasClue = isSingleDigit(masks.getShort(offset));
+		boolean isClue = isSingleDigit(mask);
+		masks.putShort(offset, (short) mask);
+		if (wasClue != isClue) {
+			clues.put(index, (byte) (clues.get(index) + (isClue ? 1 : -1)));
+		}
+	}
+
+	/**
+	 * Determines whether the given entry has no row, column, or region
+	 * holding the same digit twice; see {@link Board#isValid()}.
+	 */
+	public boolean isValid(int index) {
+		int base = offset(index);
+		int[] units = ConstraintModel.CLASSIC.getUnits();
+		for (int u = 0; u < units.length; u += NUM_DIGITS) {
+			int seen = 0;
+			for (int j = u, end = u + NUM_DIGITS; j < end; j++) {
+				int mask = masks.getShort(base + units[j] * MASK_BYTES);
+				if (isSingleDigit(mask)) {
+					if ((seen & mask) != 0) {
+						return false;
+					}
+					seen |= mask;
+				}
+			}
+		}
+		return true;
+	}
+
+	/** Returns whether the given entry is full and valid.*/
+	public boolean isSolved(int index) {
+		return getNumClues(index) == NUM_CELLS && isValid(index);
+	}
+
+	/**
+	 * Checks every entry in order with {@link #isValid(int)}.
+	 * @param invalid - if not null, the indices of the invalid entries are
+	 * set in it.
+	 * @return The number of valid entries.
+	 */
+	public int validateAll(BitSet invalid) {
+		int valid = 0;
+		for (int index = 0; index < size; index++) {
+			if (isValid(index)) {
+				valid++;
+			} else if (invalid != null) {
+				invalid.set(index);
+			}
+		}
+		return valid;
+	}
+
+	/** Returns a new view positioned at the given entry.*/
+	public View view(int index) {
+		View view = new View();
+		view.moveTo(index);
+		return view;
+	}
+
+	/**
+	 * Iterates over the entries in order. The same view is returned by every
+	 * call to <code>next()</code>, moved to the next entry.
+	 */
+	@Override
+	public Iterator<View> iterator() {
+		View view = new View();
+		return new Iterator<View>() {
+			private int next = 0;
+
+			@Override
+			public boolean hasNext() {
+				return next < size;
+			}
+
+			@Override
+			public View next() {
+				if (next >= size) {
+					throw new NoSuchElementException();
+				}
+				view.moveTo(next++);
+				return view;
+			}
+		};
+	}
+
+	/**
+	 * A reusable {@link ISudokuBoard} over one entry of the batch. Reads and
+	 * writes go straight to the batch's buffers.
+	 */
+	public final class View implements ISudokuBoard {
+
+		private int index;
+
+		private View() {
+			this.index = 0;
+		}
+
+		/**
+		 * Moves this view to another entry.
+		 * @param index - the entry to view.
+		 * @return This view, for convenience.
+		 */
+		public View moveTo(int index) {
+			offset(index);
+			this.index = index;
+			return this;
+		}
+
+		/** Returns the index of the entry this view is on.*/
+		public int getIndex() {
+			return index;
+		}
+
+		/** Returns the number of single-digit cells.*/
+		public int getNumClues() {
+			return BoardBatch.this.getNumClues(index);
+		}
+
+		/** Returns whether no row, column, or region holds the same digit twice.*/
+		public boolean isValid() {
+			return BoardBatch.this.isValid(index);
+		}
+
+		/** Returns whether the board is full and valid.*/
+		public boolean isSolved() {
+			return BoardBatch.this.isSolved(index);
+		}
+
+		/**
+		 * Returns the candidate mask of the given cell.
+		 * @param cell - the position on the board [0, 80].
+		 */
+		public int getMaskAt(int cell) {
+			return BoardBatch.this.getMaskAt(index, cell);
+		}
+
+		/**
+		 * Sets the candidate mask of the given cell.
+		 * @param cell - the position on the board [0, 80].
+		 * @param mask - the candidate mask, within {@link Board#ALL}.
+		 */
+		public void setMaskAt(int cell, int mask) {
+			if (mask < 0 || mask > ALL) {
+				throw new IllegalArgumentException("Mask is out of bounds.");
+			}
+			BoardBatch.this.setMaskAt(index, cell, mask);
+		}
+
+		@Override
+		public int[] getValues(int[] board) {
+			if (board == null || board.length < NUM_CELLS) {
+				board = new int[NUM_CELLS];
+			}
+			for (int i = 0; i < NUM_CELLS; i++) {
+				board[i] = getValueAt(i);
+			}
+			return board;
+		}
+
+		@Override
+		public int getValueAt(int cell) {
+			return BoardBatch.this.getValueAt(index, cell);
+		}
+
+		@Override
+		public void setValueAt(int cell, int value) {
+			if (value < 0 || value > NUM_DIGITS) {
+				throw new IllegalArgumentException("Value is out of bounds.");
+			}
+			BoardBatch.this.setMaskAt(index, cell, (value > 0) ? (1 << (value - 1)) : 0);
+		}
+
+		@Override
+		public List<Integer> getCandidates(int cell, List<Integer> list) {
+			forEachCandidate(cell, list::add);
+			return list;
+		}
+
+		@Override
+		public IntStream cells() {
+			int at = index;
+			return IntStream.range(0, NUM_CELLS).map((cell) -> BoardBatch.this.getValueAt(at, cell));
+		}
+
+		@Override
+		public int candidateMask(int cell) {
+			return getMaskAt(cell);
+		}
+
+		@Override
+		public int[] getMasks(int[] dest) {
+			if (dest == null || dest.length < NUM_CELLS) {
+				dest = new int[NUM_CELLS];
+			}
+			int offset = offset(index);
+			for (int i = 0; i < NUM_CELLS; i++, offset += MASK_BYTES) {
+				dest[i] = masks.getShort(offset);
+			}
+			return dest;
+		}
+
+		@Override
+		public void setMasks(int[] src) {
+			int count = 0;
+			for (int i = 0; i < NUM_CELLS; i++) {
+				int mask = src[i];
+				if (mask < 0 || mask > ALL) {
+					throw new IllegalArgumentException("Mask is out of bounds at " + i);
+				}
+				if (isSingleDigit(mask)) {
+					count++;
+				}
+			}
+			int offset = offset(index);
+			for (int i = 0; i < NUM_CELLS; i++, offset += MASK_BYTES) {
+				masks.putShort(offset, (short) src[i]);
+			}
+			clues.put(index, (byte) count);
+		}
+
+		@Override
+		public Iterator<Integer> iterator() {
+			return cells().iterator();
+		}
+
+		/** Returns the digits of the entry in the form of {@link Board#getSimplifiedString()}.*/
+		@Override
+		public String toString() {
+			StringBuilder strb = new StringBuilder(NUM_CELLS);
+			for (int i = 0; i < NUM_CELLS; i++) {
+				int v = getValueAt(i);
+				strb.append((v > 0) ? (char) ('0' + v) : '.');
+			}
+			return strb.toString();
+		}
+	}
+}
@@ -0,0 +1,232 @@
+package com.sparklicorn.sudoku.game;
+
+import static com.sparklicorn.sudoku.game.Board.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads and writes boards in a compact binary form.
+ * <br/><br/>
+ * Each board starts with a one-byte tag:
+ * <ul>
+ * <li>{@link #CLUES}: an 11-byte bitmap of the cells holding a value, then
+ * those values as 4-bit digits, two per byte. A 24-clue puzzle takes 24
+ * bytes.</li>
+ * <li>{@link #FULL}: all 81 values as 4-bit digits, 42 bytes in total.</li>
+ * <li>{@link #MASKS}: the raw 9-bit mask of every cell as a short, used only
+ * when some cell has candidates narrowed below all 9 digits.</li>
+ * </ul>
+ * This is also the form {@link Board} uses for Java serialization.
+ * <br/><br/>
+ * A stream of boards written by {@link #writeAll(OutputStream, Collection)}
+ * is a 4-byte magic number, a 4-byte board count, then the boards.
+ */
+public final class BoardCodec {
+
+	/** Tag for a board written as a clue bitmap and packed digits.*/
+	public static final int CLUES = 0;
+	/** Tag for a full board written as packed digits.*/
+	public static final int FULL = 1;
+	/** Tag for a board written as raw masks.*/
+	public static final int MASKS = 2;
+
+	private static final int BITMAP_BYTES = (NUM_CELLS + 7) / 8;
+	private static final int DIGIT_BYTES = (NUM_CELLS + 1) / 2;
+
+	/** The largest number of bytes a board may take, except in raw mask form.*/
+	public static final int MAX_PACKED_SIZE = 1 + BITMAP_BYTES + DIGIT_BYTES;
+
+	private static final int STREAM_MAGIC = 0x53444b42; // "SDKB"
+
+	private BoardCodec() {}
+
+	/**
+	 * Writes one board.
+	 * @param out - the output to write to.
+	 * @param board - the board to write.
+	 */
+	public static void write(DataOutput out, Board board) throws IOException {
+		int[] masks = board.board;
+		int clues = 0;
+		for (int i = 0; i < NUM_CELLS; i++) {
+			int mask = masks[i];
+			if (isSingleDigit(mask)) {
+				clues++;
+			} else if (mask != ALL) {
+				writeMasks(out, masks);
+				return;
+			}
+		}
+
+		byte[] buf = new byte[MAX_PACKED_SIZE];
+		int n = 0;
+		if (clues == NUM_CELLS) {
+			buf[n++] = FULL;
+		} else {
+			buf[n++] = CLUES;
+			for (int i = 0; i < NUM_CELLS; i++) {
+				if (isSingleDigit(masks[i])) {
+					buf[n + (i >>> 3)] |= 1 << (i & 7);
+				}
+			}
+			n += BITMAP_BYTES;
+		}
+
+		int digit = 0;
+		for (int i = 0; i < NUM_CELLS; i++) {
+			int v = decode(masks[i]);
+			if (v > 0) {
+				buf[n + (digit >>> 1)] |= v << ((digit & 1) << 2);
+				digit++;
+			}
+		}
+		n += (digit + 1) >>> 1;
+		out.write(buf, 0, n);
+	}
+
+	private static void writeMasks(DataOutput out, int[] masks) throws IOException {
+		out.writeByte(MASKS);
+		for (int i = 0; i < NUM_CELLS; i++) {
+			out.writeShort(masks[i]);
+		}
+	}
+
+	/**
+	 * Reads one board written by {@link #write(DataOutput, Board)} into the
+	 * given board.
+	 * @param in - the input to read from.
+	 * @param board - the board to overwrite.
+	 * @return The given board, for convenience.
+	 */
+	public static Board readInto(DataInput in, Board board) throws IOException {
+		int[] masks = board.board;
+		int tag = in.readUnsignedByte();
+		int clues = 0;
+		switch (tag) {
+			case MASKS:
+				for (int i = 0; i < NUM_CELLS; i++) {
+					int mask = in.readUnsignedShort();
+					if (mask > ALL) {
+						throw new IOException("Mask out of bounds: " + mask);
+					}
+					masks[i] = mask;
+					if (isSingleDigit(mask)) {
+						clues++;
+					}
+				}
+				break;
+
+			case FULL:
+			case CLUES:
+				byte[] buf = new byte[BITMAP_BYTES + DIGIT_BYTES];
+				int bitmap = 0;
+				if (tag == CLUES) {
+					in.readFully(buf, 0, BITMAP_BYTES);
+					bitmap = BITMAP_BYTES;
+					for (int b = 0; b < BITMAP_BYTES; b++) {
+						clues += Integer.bitCount(buf[b] & 0xff);
+					}
+				} else {
+					clues = NUM_CELLS;
+				}
+				in.readFully(buf, bitmap, (clues + 1) >>> 1);
+
+				int digit = 0;
+				for (int i = 0; i < NUM_CELLS; i++) {
+					if (tag == FULL || (buf[i >>> 3] & (1 << (i & 7))) != 0) {
+						int v = (buf[bitmap + (digit >>> 1)] >>> ((digit & 1) << 2)) & 0xf;
+						if (v < 1 || v > NUM_DIGITS) {
+							throw new IOException("Digit out of bounds: " + v);
+						}
+						masks[i] = 1 << (v - 1);
+						digit++;
+					} else {
+						masks[i] = ALL;
+					}
+				}
+				break;
+
+			default:
+				throw new IOException("Unknown board tag: " + tag);
+		}
+
+		board.numClues = clues;
+		board.invalidateCaches();
+		return board;
+	}
+
+	/**
+	 * Reads one board written by {@link #write(DataOutput, Board)}.
+	 * @param in - the input to read from.
+	 * @return A new Board.
+	 */
+	public static Board read(DataInput in) throws IOException {
+		return readInto(in, new Board());
+	}
+
+	/**
+	 * Writes a stream of boards. The stream is flushed but not closed.
+	 * @param out - the stream to write to.
+	 * @param boards - the boards to write.
+	 */
+	public static void writeAll(OutputStream out, Collection<Board> boards) throws IOException {
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+		data.writeInt(STREAM_MAGIC);
+		data.writeInt(boards.size());
+		for (Board board : boards) {
+			write(data, board);
+		}
+		data.flush();
+	}
+
+	/**
+	 * Reads a stream of boards written by
+	 * {@link #writeAll(OutputStream, Collection)}, passing each to the given
+	 * action. The same Board instance is reused for every call, so the
+	 * action must copy it if it needs to keep it.
+	 * @param in - the stream to read from. It is not closed.
+	 * @param action - called with each board read.
+	 * @return The number of boards read.
+	 */
+	public static int forEach(InputStream in, Consumer<Board> action) throws IOException {
+		DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+		if (data.readInt() != STREAM_MAGIC) {
+			throw new IOException("Not a board stream.");
+		}
+		int count = data.readInt();
+		Board board = new Board();
+		for (int n = 0; n < count; n++) {
+			try {
+				action.accept(readInto(data, board));
+			} catch (EOFException e) {
+				throw new IOException("Board stream ended after " + n + " of " + count + " boards.", e);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Reads a stream of boards written by
+	 * {@link #writeAll(OutputStream, Collection)}.
+	 * @param in - the stream to read from. It is not closed.
+	 * @return The boards, in the order written.
+	 */
+	public static List<Board> readAll(InputStream in) throws IOException {
+		List<Board> boards = new ArrayList<>();
+		forEach(in, (board) -> boards.add(new Board(board)));
+		return boards;
+	}
+}
@@ -0,0 +1,273 @@
+package com.sparklicorn.sudoku.game;
+
+/**
+ * The geometry of an N x N Sudoku board, where N = base<sup>2</sup>:
+ * 4x4 for base 2, 9x9 for base 3, 16x16 for base 4, and 25x25 for base 5.
+ * <br/><br/>
+ * Candidate masks for every supported size fit in an <code>int</code>, with
+ * bit <code>d - 1</code> standing for digit <code>d</code>.
+ * <br/><br/>
+ * All lookup tables are flat arrays built once per size:
+ * <ul>
+ * <li>Unit <code>u</code> occupies <code>getUnits()[u * N]</code> through
+ * <code>getUnits()[u * N + N - 1]</code>. Rows come first, then columns,
+ * then regions.</li>
+ * <li>The peers of cell <code>i</code> occupy
+ * <code>getPeers()[i * getNumPeers()]</code> up to
+ * <code>getPeers()[(i + 1) * getNumPeers()]</code>.</li>
+ * <li>The units of cell <code>i</code> are its row, column, and region:
+ * <code>getCellUnits()[i * 3]</code> through
+ * <code>getCellUnits()[i * 3 + 2]</code>.</li>
+ * <li>Each region crosses <code>base</code> rows and <code>base</code>
+ * columns. Crossing <code>k</code> of region <code>r</code> has a block of
+ * <code>getIntersectionBlockSize()</code> cells starting at
+ * <code>getIntersections()[(r * 2 * base + k) * getIntersectionBlockSize()]</code>:
+ * first the <code>base</code> cells shared by the region and the line, then
+ * the rest of the region, then the rest of the line.</li>
+ * </ul>
+ * Shapes are immutable and shared; get them with {@link #of(int)}.
+ */
+public final class BoardShape {
+
+	/** The smallest supported base.*/
+	public static final int MIN_BASE = 2;
+
+	/** The largest supported base. Larger boards would need more than 32 candidate bits.*/
+	public static final int MAX_BASE = 5;
+
+	private static final BoardShape[] SHAPES = new BoardShape[MAX_BASE + 1];
+	static {
+		for (int base = MIN_BASE; base <= MAX_BASE; base++) {
+			SHAPES[base] = new BoardShape(base);
+		}
+	}
+
+	/**
+	 * Returns the shape of the board with the given base.
+	 * @param base - the width of a region, from {@link #MIN_BASE} to
+	 * {@link #MAX_BASE}.
+	 */
+	public static BoardShape of(int base) {
+		if (base < MIN_BASE || base > MAX_BASE) {
+			throw new IllegalArgumentException(
+				"Base must be between " + MIN_BASE + " and " + MAX_BASE + ", was " + base
+			);
+		}
+		return SHAPES[base];
+	}
+
+	/**
+	 * Returns the shape of the board with the given number of digits.
+	 * @param size - the number of digits, and the width of the board.
+	 */
+	public static BoardShape ofSize(int size) {
+		int base = (int) Math.round(Math.sqrt(size));
+		if (base * base != size) {
+			throw new IllegalArgumentException("Size must be a square, was " + size);
+		}
+		return of(base);
+	}
+
+	/** The 9x9 shape.*/
+	public static final BoardShape CLASSIC = of(3);
+
+	private final int base;
+	private final int size;
+	private final int numCells;
+	private final int all;
+	private final int numPeers;
+	private final int[] units;
+	private final int[] peers;
+	private final int[] cellUnits;
+	private final int[] intersections;
+
+	private BoardShape(int base) {
+		this.base = base;
+		this.size = base * base;
+		this.numCells = size * size;
+		this.all = (1 << size) - 1;
+		this.numPeers = 2 * (size - 1) + (base - 1) * (base - 1);
+
+		units = new int[3 * size * size];
+		cellUnits = new int[numCells * 3];
+		for (int i = 0; i < numCells; i++) {
+			int row = i / size;
+			int col = i % size;
+			int region = (row / base) * base + col / base;
+			int inRegion = (row % base) * base + col % base;
+			units[row * size + col] = i;
+			units[(size + col) * size + row] = i;
+			units[(2 * size + region) * size + inRegion] = i;
+			cellUnits[i * 3] = row;
+			cellUnits[i * 3 + 1] = size + col;
+			cellUnits[i * 3 + 2] = 2 * size + region;
+		}
+
+		peers = new int[numCells * numPeers];
+		boolean[] seen = new boolean[numCells];
+		for (int i = 0; i < numCells; i++) {
+			int n = i * numPeers;
+			seen[i] = true;
+			for (int k = 0; k < 3; k++) {
+				int u = cellUnits[i * 3 + k];
+				for (int j = u * size, end = j + size; j < end; j++) {
+					int peer = units[j];
+					if (!seen[peer]) {
+						seen[peer] = true;
+						peers[n++] = peer;
+					}
+				}
+			}
+			for (int p = i * numPeers; p < n; p++) {
+				seen[peers[p]] = false;
+			}
+			seen[i] = false;
+		}
+
+		int blockSize = 2 * size - base;
+		intersections = new int[size * 2 * base * blockSize];
+		int n = 0;
+		for (int region = 0; region < size; region++) {
+			int top = (region / base) * base;
+			int left = (region % base) * base;
+			for (int k = 0; k < 2 * base; k++) {
+				boolean isRow = k < base;
+				int line = isRow ? top + k : left + k - base;
+				int shared = n;
+				int regionRest = n + base;
+				int lineRest = regionRest + size - base;
+				for (int j = 0; j < size; j++) {
+					int cell = units[(2 * size + region) * size + j];
+					int cellLine = isRow ? cell / size : cell % size;
+					intersections[(cellLine == line) ? shared++ : regionRest++] = cell;
+				}
+				for (int j = 0; j < size; j++) {
+					int cell = units[((isRow ? 0 : size) + line) * size + j];
+					int cellRegion = ((cell / size) / base) * base + (cell % size) / base;
+					if (cellRegion != region) {
+						intersections[lineRest++] = cell;
+					}
+				}
+				n += blockSize;
+			}
+		}
+	}
+
+	/** Returns the width of a region.*/
+	public int getBase() {
+		return base;
+	}
+
+	/** Returns the number of digits, which is also the width of the board.*/
+	public int getSize() {
+		return size;
+	}
+
+	/** Returns the number of cells on the board.*/
+	public int getNumCells() {
+		return numCells;
+	}
+
+	/** Returns the mask with every candidate digit set.*/
+	public int getAll() {
+		return all;
+	}
+
+	/** Returns the number of units: rows, then columns, then regions.*/
+	public int getNumUnits() {
+		return 3 * size;
+	}
+
+	/** Returns the number of peers of every cell.*/
+	public int getNumPeers() {
+		return numPeers;
+	}
+
+	/**
+	 * Returns the flat unit table; see the class description.
+	 * <br/>The array is shared and must not be modified.
+	 */
+	public int[] getUnits() {
+		return units;
+	}
+
+	/**
+	 * Returns the flat peer table; see the class description.
+	 * <br/>The array is shared and must not be modified.
+	 */
+	public int[] getPeers() {
+		return peers;
+	}
+
+	/**
+	 * Returns the flat table of units per cell; see the class description.
+	 * <br/>The array is shared and must not be modified.
+	 */
+	public int[] getCellUnits() {
+		return cellUnits;
+	}
+
+	/**
+	 * Returns the flat table of region and line crossings; see the class
+	 * description.
+	 * <br/>The array is shared and must not be modified.
+	 */
+	public int[] getIntersections() {
+		return intersections;
+	}
+
+	/** Returns the number of cells in each block of {@link #getIntersections()}.*/
+	public int getIntersectionBlockSize() {
+		return 2 * size - base;
+	}
+
+	/**
+	 * Returns the digit of the given mask, or 0 if the mask does not hold
+	 * exactly one candidate.
+	 */
+	public static int decode(int mask) {
+		return (mask != 0 && (mask & (mask - 1)) == 0) ? Integer.numberOfTrailingZeros(mask) + 1 : 0;
+	}
+
+	/** Returns whether the given mask holds exactly one candidate.*/
+	public static boolean isSingleDigit(int mask) {
+		return mask != 0 && (mask & (mask - 1)) == 0;
+	}
+
+	/**
+	 * Returns the character for the given digit: '.' for 0, '1' to '9' for 1
+	 * to 9, then 'A' onward for 10 and up.
+	 */
+	public static char toChar(int digit) {
+		if (digit == 0) {
+			return '.';
+		}
+		return (digit <= 9) ? (char) ('0' + digit) : (char) ('A' + digit - 10);
+	}
+
+	/**
+	 * Returns the digit for the given character, the reverse of
+	 * {@link #toChar(int)}. Letters may be either case. Returns 0 for '.' and
+	 * '0', and -1 for characters that are not digits of this shape.
+	 */
+	public int parseChar(char c) {
+		int digit;
+		if (c == '.' || c == '0') {
+			return 0;
+		} else if (c >= '1' && c <= '9') {
+			digit = c - '0';
+		} else if (c >= 'A' && c <= 'Z') {
+			digit = c - 'A' + 10;
+		} else if (c >= 'a' && c <= 'z') {
+			digit = c - 'a' + 10;
+		} else {
+			return -1;
+		}
+		return (digit <= size) ? digit : -1;
+	}
+
+	@Override
+	public String toString() {
+		return "BoardShape[" + size + "x" + size + "]";
+	}
+}
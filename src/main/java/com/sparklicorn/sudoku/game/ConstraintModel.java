@@ -0,0 +1,250 @@
+package com.sparklicorn.sudoku.game;
+
+import static com.sparklicorn.sudoku.game.Board.*;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * The set of rules a Sudoku board must satisfy, compiled into flat lookup
+ * tables so that solvers can walk any variant the same way they walk the
+ * classic rules.
+ * <br/><br/>
+ * Every model includes the classic rows, columns, and regions. Variants add
+ * further constraints on top:
+ * <ul>
+ * <li>Units, which are groups of 9 cells that must each hold every digit
+ * once, such as the two main diagonals.</li>
+ * <li>Exclusions, which are pairs of cells that may not hold the same digit,
+ * such as cells a chess king's or knight's move apart.</li>
+ * </ul>
+ * Both are folded into a single peer table: for each cell, the cells that
+ * may not share its digit. Peers of cell <code>i</code> are found at
+ * <code>getPeers()[getPeerStart()[i]]</code> up to (not including)
+ * <code>getPeerStart()[i + 1]</code>, and unit <code>u</code> occupies
+ * <code>getUnits()[u * 9]</code> through <code>getUnits()[u * 9 + 8]</code>.
+ */
+public final class ConstraintModel {
+
+	/** Optional rules that can be added to the classic Sudoku rules.*/
+	public enum Variant {
+		/** Both main diagonals must hold every digit once (Sudoku X).*/
+		DIAGONAL,
+		/** Four extra 3x3 windows, offset one cell from the corners, must hold every digit once.*/
+		WINDOKU,
+		/** Cells a chess king's move apart may not hold the same digit.*/
+		ANTI_KING,
+		/** Cells a chess knight's move apart may not hold the same digit.*/
+		ANTI_KNIGHT
+	}
+
+	/** The classic rules: rows, columns, and 3x3 regions.*/
+	public static final ConstraintModel CLASSIC = new ConstraintModel(EnumSet.noneOf(Variant.class));
+
+	/**
+	 * Compiles the classic rules plus the given variants.
+	 * <br/>Compiling walks the whole board, so models should be created
+	 * once and shared; they are immutable and thread-safe.
+	 * @param variants - the variant rules to add.
+	 * @return The compiled model.
+	 */
+	public static ConstraintModel of(Variant... variants) {
+		EnumSet<Variant> set = EnumSet.noneOf(Variant.class);
+		for (Variant v : variants) {
+			set.add(v);
+		}
+		return set.isEmpty() ? CLASSIC : new ConstraintModel(set);
+	}
+
+	private final EnumSet<Variant> variants;
+	private final int[] units;
+	private final int[] peers;
+	private final int[] peerStart;
+	private final int maxPeers;
+
+	private ConstraintModel(EnumSet<Variant> variants) {
+		this.variants = variants;
+
+		List<int[]> unitList = new ArrayList<>();
+		for (int i = 0; i < NUM_DIGITS; i++) {
+			unitList.add(ROW_INDICES[i]);
+		}
+		for (int i = 0; i < NUM_DIGITS; i++) {
+			unitList.add(COL_INDICES[i]);
+		}
+		for (int i = 0; i < NUM_DIGITS; i++) {
+			unitList.add(REGION_INDICES[i]);
+		}
+		if (variants.contains(Variant.DIAGONAL)) {
+			int[] main = new int[NUM_DIGITS];
+			int[] anti = new int[NUM_DIGITS];
+			for (int i = 0; i < NUM_DIGITS; i++) {
+				main[i] = i * NUM_DIGITS + i;
+				anti[i] = i * NUM_DIGITS + (NUM_DIGITS - 1 - i);
+			}
+			unitList.add(main);
+			unitList.add(anti);
+		}
+		if (variants.contains(Variant.WINDOKU)) {
+			for (int top : new int[] { 1, 5 }) {
+				for (int left : new int[] { 1, 5 }) {
+					int[] window = new int[NUM_DIGITS];
+					for (int i = 0; i < NUM_DIGITS; i++) {
+						window[i] = (top + i / 3) * NUM_DIGITS + (left + i % 3);
+					}
+					unitList.add(window);
+				}
+			}
+		}
+
+		units = new int[unitList.size() * NUM_DIGITS];
+		boolean[][] adjacent = new boolean[NUM_CELLS][NUM_CELLS];
+		for (int u = 0; u < unitList.size(); u++) {
+			int[] unit = unitList.get(u);
+			System.arraycopy(unit, 0, units, u * NUM_DIGITS, NUM_DIGITS);
+			for (int a : unit) {
+				for (int b : unit) {
+					adjacent[a][b] = true;
+				}
+			}
+		}
+
+		if (variants.contains(Variant.ANTI_KING)) {
+			addExclusions(adjacent, new int[][] {
+				{ -1, -1 }, { -1, 1 }, { 1, -1 }, { 1, 1 }
+			});
+		}
+		if (variants.contains(Variant.ANTI_KNIGHT)) {
+			addExclusions(adjacent, new int[][] {
+				{ -2, -1 }, { -2, 1 }, { -1, -2 }, { -1, 2 },
+				{ 1, -2 }, { 1, 2 }, { 2, -1 }, { 2, 1 }
+			});
+		}
+
+		peerStart = new int[NUM_CELLS + 1];
+		int total = 0;
+		int max = 0;
+		for (int i = 0; i < NUM_CELLS; i++) {
+			adjacent[i][i] = false;
+			int count = 0;
+			for (int j = 0; j < NUM_CELLS; j++) {
+				if (adjacent[i][j]) {
+					count++;
+				}
+			}
+			peerStart[i] = total;
+			total += count;
+			max = Math.max(max, count);
+		}
+		peerStart[NUM_CELLS] = total;
+		maxPeers = max;
+
+		peers = new int[total];
+		int n = 0;
+		for (int i = 0; i < NUM_CELLS; i++) {
+			for (int j = 0; j < NUM_CELLS; j++) {
+				if (adjacent[i][j]) {
+					peers[n++] = j;
+				}
+			}
+		}
+	}
+
+	private static void addExclusions(boolean[][] adjacent, int[][] offsets) {
+		for (int i = 0; i < NUM_CELLS; i++) {
+			int r = getRowForIndex(i);
+			int c = getColForIndex(i);
+			for (int[] offset : offsets) {
+				int r2 = r + offset[0];
+				int c2 = c + offset[1];
+				if (r2 >= 0 && r2 < NUM_DIGITS && c2 >= 0 && c2 < NUM_DIGITS) {
+					int j = r2 * NUM_DIGITS + c2;
+					adjacent[i][j] = true;
+					adjacent[j][i] = true;
+				}
+			}
+		}
+	}
+
+	/** Returns whether this model includes the given variant.*/
+	public boolean hasVariant(Variant variant) {
+		return variants.contains(variant);
+	}
+
+	/** Returns whether this model is exactly the classic rules.*/
+	public boolean isClassic() {
+		return variants.isEmpty();
+	}
+
+	/** Returns the number of units; see {@link #getUnits()}.*/
+	public int getNumUnits() {
+		return units.length / NUM_DIGITS;
+	}
+
+	/**
+	 * Returns the flat unit table. Unit <code>u</code> occupies indices
+	 * <code>u * 9</code> through <code>u * 9 + 8</code>.
+	 * <br/>The array is shared and must not be modified.
+	 */
+	public int[] getUnits() {
+		return units;
+	}
+
+	/**
+	 * Returns the flat peer table; see {@link #getPeerStart()}.
+	 * <br/>The array is shared and must not be modified.
+	 */
+	public int[] getPeers() {
+		return peers;
+	}
+
+	/**
+	 * Returns the offsets into the peer table. The peers of cell
+	 * <code>i</code> are at indices <code>getPeerStart()[i]</code> up to
+	 * (not including) <code>getPeerStart()[i + 1]</code>.
+	 * <br/>The array is shared and must not be modified.
+	 */
+	public int[] getPeerStart() {
+		return peerStart;
+	}
+
+	/** Returns the largest number of peers of any cell.*/
+	public int getMaxPeers() {
+		return maxPeers;
+	}
+
+	/**
+	 * Determines whether the given board satisfies this model's rules,
+	 * meaning no cell shares its digit with any of its peers.
+	 * <br/>The board does not need to be complete to be valid.
+	 * @return True if the board is valid; otherwise false.
+	 */
+	public boolean isValid(Board board) {
+		for (int i = 0; i < NUM_CELLS; i++) {
+			int mask = board.getMaskAt(i);
+			if (!isSingleDigit(mask)) {
+				continue;
+			}
+			for (int p = peerStart[i], end = peerStart[i + 1]; p < end; p++) {
+				if (board.getMaskAt(peers[p]) == mask) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Determines whether the given board is full and satisfies this model's
+	 * rules.
+	 */
+	public boolean isSolved(Board board) {
+		return board.isFull() && isValid(board);
+	}
+
+	@Override
+	public String toString() {
+		return "ConstraintModel" + variants;
+	}
+}
@@ -1,6 +1,8 @@
 package com.sparklicorn.sudoku.game;
 
 import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 /**
  * Defines basic functionality of a Sudoku board.
@@ -50,4 +52,49 @@ public interface ISudokuBoard extends Iterable<Integer> {
 	 */
 	public List<Integer> getCandidates(int index, List<Integer> list);
 
+	/**
+	 * Returns the values of the Sudoku board as a stream, from the topleft
+	 * corner to the bottomright, with 0 for empty spaces.
+	 * <br/>Unlike {@link #iterator()}, this does not box the values.
+	 */
+	public IntStream cells();
+
+	/**
+	 * Gets the candidate digits of the space at the given index as a
+	 * bitmask, where bit <code>d - 1</code> is set if digit <code>d</code>
+	 * is a candidate. A space holding a value has only that value's bit set.
+	 * @param index - the position of the space on the board.
+	 */
+	public int candidateMask(int index);
+
+	/**
+	 * Performs the given action for each candidate digit of the space at the
+	 * given index, in increasing order.
+	 * <br/>Unlike {@link #getCandidates(int, List)}, this does not box the
+	 * digits.
+	 * @param index - the position of the space on the board.
+	 * @param action - called with each candidate digit.
+	 */
+	public default void forEachCandidate(int index, IntConsumer action) {
+		for (int mask = candidateMask(index); mask != 0; mask &= mask - 1) {
+			action.accept(Integer.numberOfTrailingZeros(mask) + 1);
+		}
+	}
+
+	/**
+	 * Populates the given array with the candidate bitmasks of every space
+	 * on the board; see {@link #candidateMask(int)}.
+	 * @param masks - the array to fill.
+	 * @return The populated array, or if the array was too small, a newly
+	 * allocated array with the populated masks.
+	 */
+	public int[] getMasks(int[] masks);
+
+	/**
+	 * Replaces the candidate bitmasks of every space on the board; see
+	 * {@link #candidateMask(int)}.
+	 * @param masks - the masks to set, one per space on the board.
+	 */
+	public void setMasks(int[] masks);
+
 }
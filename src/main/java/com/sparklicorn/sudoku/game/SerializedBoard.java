@@ -0,0 +1,41 @@
+package com.sparklicorn.sudoku.game;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.ObjectStreamException;
+
+/**
+ * The serialized form of a {@link Board}, written with {@link BoardCodec}
+ * instead of the default field-by-field form.
+ */
+final class SerializedBoard implements Externalizable {
+
+	private static final long serialVersionUID = 4109263581960134212L;
+
+	private Board board;
+
+	/** Used by deserialization.*/
+	public SerializedBoard() {
+		this.board = null;
+	}
+
+	SerializedBoard(Board board) {
+		this.board = board;
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		BoardCodec.write(out, board);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException {
+		board = BoardCodec.read(in);
+	}
+
+	private Object readResolve() throws ObjectStreamException {
+		return board;
+	}
+}
@@ -0,0 +1,322 @@
+package com.sparklicorn.sudoku.game;
+
+import static com.sparklicorn.sudoku.game.BoardShape.decode;
+import static com.sparklicorn.sudoku.game.BoardShape.isSingleDigit;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * A Sudoku board of any size supported by {@link BoardShape}, such as 16x16
+ * or 25x25.
+ * <br/><br/>
+ * Like {@link Board}, each cell holds a bitmask of candidate digits, with
+ * bit <code>d - 1</code> standing for digit <code>d</code>; a cell with a
+ * single bit set holds that digit. Masks are decoded with
+ * {@link Integer#numberOfTrailingZeros(int)} rather than a lookup table, so
+ * no table grows with the number of digits.
+ * <br/><br/>
+ * {@link Board} remains the type to use for 9x9 boards, since its fixed
+ * size lets it use constant tables throughout. Convert between the two with
+ * {@link #SizedBoard(Board)} and {@link #toBoard()}.
+ * <br/><br/>
+ * In strings, digits above 9 are written as letters starting from 'A', and
+ * empty cells as '.'; see {@link BoardShape#toChar(int)}.
+ */
+public class SizedBoard implements ISudokuBoard {
+
+	private final BoardShape shape;
+	private final int[] masks;
+	private int numClues;
+
+	/**
+	 * Creates an empty board of the given shape, where every cell has all
+	 * candidates.
+	 * @param shape - the size of the board.
+	 */
+	public SizedBoard(BoardShape shape) {
+		this.shape = shape;
+		this.masks = new int[shape.getNumCells()];
+		Arrays.fill(masks, shape.getAll());
+		this.numClues = 0;
+	}
+
+	/**
+	 * Creates a board of the given shape from a string of digits, one
+	 * character per cell from the topleft corner to the bottomright.
+	 * <br/>Any character that is not a digit of the shape is read as an
+	 * empty cell, and cells past the end of the string are empty.
+	 * @param shape - the size of the board.
+	 * @param values - the digits of the board.
+	 */
+	public SizedBoard(BoardShape shape, CharSequence values) {
+		this(shape);
+		int n = Math.min(values.length(), masks.length);
+		for (int i = 0; i < n; i++) {
+			int digit = shape.parseChar(values.charAt(i));
+			if (digit > 0) {
+				masks[i] = 1 << (digit - 1);
+				numClues++;
+			}
+		}
+	}
+
+	/**
+	 * Creates a board from a string of digits, taking the shape from the
+	 * length of the string, which must be the number of cells of a supported
+	 * shape.
+	 * @param values - the digits of the board.
+	 */
+	public SizedBoard(CharSequence values) {
+		this(shapeOfLength(values.length()), values);
+	}
+
+	private static BoardShape shapeOfLength(int length) {
+		int size = (int) Math.round(Math.sqrt(length));
+		if (size * size != length) {
+			throw new IllegalArgumentException("Length must be a square, was " + length);
+		}
+		return BoardShape.ofSize(size);
+	}
+
+	/**
+	 * Creates a 9x9 board with the same masks as the given one.
+	 * @param board - the board to copy.
+	 */
+	public SizedBoard(Board board) {
+		this.shape = BoardShape.CLASSIC;
+		this.masks = board.getMasks(new int[Board.NUM_CELLS]);
+		this.numClues = board.getNumClues();
+	}
+
+	/**
+	 * Creates a deep copy of the given board.
+	 * @param other - the board to copy.
+	 */
+	public SizedBoard(SizedBoard other) {
+		this.shape = other.shape;
+		this.masks = other.masks.clone();
+		this.numClues = other.numClues;
+	}
+
+	/**
+	 * Returns a 9x9 Board with the same masks as this one.
+	 * @throws IllegalStateException If this board is not 9x9.
+	 */
+	public Board toBoard() {
+		if (shape != BoardShape.CLASSIC) {
+			throw new IllegalStateException("Only 9x9 boards convert to Board, this is " + shape);
+		}
+		Board board = new Board();
+		board.setMasks(masks);
+		return board;
+	}
+
+	/** Returns the shape of this board.*/
+	public BoardShape getShape() {
+		return shape;
+	}
+
+	/** Returns the number of cells on this board.*/
+	public int getNumCells() {
+		return masks.length;
+	}
+
+	/** Returns the number of cells holding a single digit.*/
+	public int getNumClues() {
+		return numClues;
+	}
+
+	@Override
+	public int[] getValues(int[] board) {
+		if (board == null || board.length < masks.length) {
+			board = new int[masks.length];
+		}
+		for (int i = 0; i < masks.length; i++) {
+			board[i] = decode(masks[i]);
+		}
+		return board;
+	}
+
+	@Override
+	public int getValueAt(int index) {
+		return decode(masks[index]);
+	}
+
+	@Override
+	public void setValueAt(int index, int value) {
+		if (value < 0 || value > shape.getSize()) {
+			throw new IllegalArgumentException("Value is out of bounds.");
+		}
+		setMaskAt(index, (value > 0) ? (1 << (value - 1)) : 0);
+	}
+
+	/**
+	 * Returns the candidate mask of the cell at the given index.
+	 * @param index - the position on the board.
+	 */
+	public int getMaskAt(int index) {
+		return masks[index];
+	}
+
+	/**
+	 * Sets the candidate mask of the cell at the given index.
+	 * @param index - the position on the board.
+	 * @param mask - the candidate mask, within {@link BoardShape#getAll()}.
+	 */
+	public void setMaskAt(int index, int mask) {
+		if ((mask & ~shape.getAll()) != 0) {
+			throw new IllegalArgumentException("Mask is out of bounds.");
+		}
+		if (isSingleDigit(masks[index])) {
+			numClues--;
+		}
+		if (isSingleDigit(mask)) {
+			numClues++;
+		}
+		masks[index] = mask;
+	}
+
+	@Override
+	public List<Integer> getCandidates(int index, List<Integer> list) {
+		forEachCandidate(index, list::add);
+		return list;
+	}
+
+	@Override
+	public IntStream cells() {
+		return Arrays.stream(masks).map(BoardShape::decode);
+	}
+
+	@Override
+	public int candidateMask(int index) {
+		return masks[index];
+	}
+
+	@Override
+	public int[] getMasks(int[] dest) {
+		if (dest == null || dest.length < masks.length) {
+			dest = new int[masks.length];
+		}
+		System.arraycopy(masks, 0, dest, 0, masks.length);
+		return dest;
+	}
+
+	@Override
+	public void setMasks(int[] src) {
+		int all = shape.getAll();
+		int clues = 0;
+		for (int i = 0; i < masks.length; i++) {
+			int mask = src[i];
+			if ((mask & ~all) != 0) {
+				throw new IllegalArgumentException("Mask is out of bounds at " + i);
+			}
+			if (isSingleDigit(mask)) {
+				clues++;
+			}
+		}
+		System.arraycopy(src, 0, masks, 0, masks.length);
+		numClues = clues;
+	}
+
+	@Override
+	public Iterator<Integer> iterator() {
+		return cells().iterator();
+	}
+
+	/** Returns whether every cell holds a single digit.*/
+	public boolean isFull() {
+		return numClues == masks.length;
+	}
+
+	/**
+	 * Determines whether no row, column, or region holds the same digit
+	 * twice. The board does not need to be complete to be valid.
+	 */
+	public boolean isValid() {
+		int[] units = shape.getUnits();
+		int size = shape.getSize();
+		for (int u = 0, n = shape.getNumUnits(); u < n; u++) {
+			int seen = 0;
+			for (int j = u * size, end = j + size; j < end; j++) {
+				int mask = masks[units[j]];
+				if (isSingleDigit(mask)) {
+					if ((seen & mask) != 0) {
+						return false;
+					}
+					seen |= mask;
+				}
+			}
+		}
+		return true;
+	}
+
+	/** Returns whether the board is full and valid.*/
+	public boolean isSolved() {
+		return isFull() && isValid();
+	}
+
+	/**
+	 * Returns the digits of the board as a string, one character per cell;
+	 * see {@link BoardShape#toChar(int)}.
+	 */
+	public String getSimplifiedString() {
+		StringBuilder strb = new StringBuilder(masks.length);
+		for (int mask : masks) {
+			strb.append(BoardShape.toChar(decode(mask)));
+		}
+		return strb.toString();
+	}
+
+	/**
+	 * <em>Two sized boards are equal if they have the same shape and masks.</em>
+	 * <br/><br/>
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof SizedBoard)) {
+			return false;
+		}
+		SizedBoard other = (SizedBoard) obj;
+		return shape == other.shape && Arrays.equals(masks, other.masks);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(masks);
+	}
+
+	@Override
+	public String toString() {
+		int size = shape.getSize();
+		int base = shape.getBase();
+		StringBuilder strb = new StringBuilder();
+		for (int i = 0; i < masks.length; i++) {
+			int col = i % size;
+			if (col > 0) {
+				strb.append((col % base == 0) ? " | " : " ");
+			}
+			strb.append(BoardShape.toChar(decode(masks[i])));
+			if (col == size - 1) {
+				strb.append('\n');
+				int row = i / size;
+				if (row % base == base - 1 && row < size - 1) {
+					for (int c = 0; c < size; c++) {
+						if (c > 0) {
+							strb.append((c % base == 0) ? "-+-" : "-");
+						}
+						strb.append('-');
+					}
+					strb.append('\n');
+				}
+			}
+		}
+		return strb.toString();
+	}
+}
@@ -0,0 +1,227 @@
+package com.sparklicorn.sudoku.game.generators;
+
+import java.util.Collection;
+import java.util.Random;
+
+import com.sparklicorn.sudoku.game.Board;
+
+/**
+ * Derives new Sudoku configurations from a pool of seed configurations by
+ * applying random transforms that keep a grid valid:
+ * <ul>
+ * <li>relabeling the digits,</li>
+ * <li>permuting the rows within each band, and the bands,</li>
+ * <li>permuting the columns within each stack, and the stacks,</li>
+ * <li>and transposing the grid.</li>
+ * </ul>
+ * Each call draws one transform uniformly from the 9! * 1296 * 1296 * 2
+ * combinations and applies it to a random seed, which costs a few table
+ * lookups per cell rather than a search. The row and column permutations
+ * come from a precomputed table of the 1296 that keep bands together.
+ * <br/><br/>
+ * Every configuration derived this way is equivalent to one of the seeds,
+ * so the pool bounds how many distinct classes of grids come out. Call
+ * {@link #refreshSeeds(int)}, or set a refresh interval with
+ * {@link #setRefreshInterval(long)}, to swap seeds for fresh ones from
+ * {@link Generator#generateConfig()}.
+ * <br/><br/>
+ * Instances hold reusable scratch space and are not thread-safe.
+ */
+public class ConfigTransformer {
+
+    /** Number of row permutations that keep each band's rows together.*/
+    static final int NUM_LINE_PERMS = 6 * 6 * 6 * 6;
+
+    /**
+     * Flat table of the band-preserving permutations of 9 lines.
+     * Permutation <code>p</code> occupies <code>LINE_PERMS[p * 9]</code>
+     * through <code>LINE_PERMS[p * 9 + 8]</code>, each entry being the source
+     * line of that destination line.
+     */
+    private static final byte[] LINE_PERMS = new byte[NUM_LINE_PERMS * 9];
+
+    static {
+        int[][] perms3 = {
+            {0, 1, 2}, {0, 2, 1}, {1, 0, 2}, {1, 2, 0}, {2, 0, 1}, {2, 1, 0}
+        };
+        int n = 0;
+        for (int[] bands : perms3) {
+            for (int[] p0 : perms3) {
+                for (int[] p1 : perms3) {
+                    for (int[] p2 : perms3) {
+                        int[][] within = {p0, p1, p2};
+                        for (int band = 0; band < 3; band++) {
+                            for (int line = 0; line < 3; line++) {
+                                LINE_PERMS[n++] = (byte) (bands[band] * 3 + within[band][line]);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private final Random rand;
+
+    /** Seed digits, 0 to 8, 81 per seed.*/
+    private byte[][] seeds;
+
+    /** Scratch digit relabeling, from digit 0 to 8 to its new candidate bit.*/
+    private final int[] relabel = new int[Board.NUM_DIGITS];
+
+    /** Scratch cell mapping, from each destination cell to its source cell.*/
+    private final int[] sourceCells = new int[Board.NUM_CELLS];
+
+    /** Scratch masks for {@link #nextInto(Board)}.*/
+    private final int[] scratch = new int[Board.NUM_CELLS];
+
+    private long refreshInterval;
+    private long count;
+
+    /**
+     * Creates a transformer with the given number of seeds generated by the
+     * solver.
+     * @param numSeeds - the size of the seed pool.
+     */
+    public ConfigTransformer(int numSeeds) {
+        this(numSeeds, new Random());
+    }
+
+    /**
+     * Creates a transformer with the given number of seeds generated by the
+     * solver, drawing transforms from the given source of randomness.
+     * @param numSeeds - the size of the seed pool.
+     * @param rand - the source of randomness.
+     */
+    public ConfigTransformer(int numSeeds, Random rand) {
+        if (numSeeds < 1) {
+            throw new IllegalArgumentException("Need at least one seed, was " + numSeeds);
+        }
+        this.rand = rand;
+        this.seeds = new byte[numSeeds][];
+        refreshSeeds(numSeeds);
+    }
+
+    /**
+     * Creates a transformer from the given seed configurations.
+     * @param seeds - solved boards to derive new configurations from.
+     * @param rand - the source of randomness.
+     * @throws IllegalArgumentException If there are no seeds, or a seed is
+     * not a solved board.
+     */
+    public ConfigTransformer(Collection<Board> seeds, Random rand) {
+        if (seeds.isEmpty()) {
+            throw new IllegalArgumentException("Need at least one seed.");
+        }
+        this.rand = rand;
+        this.seeds = new byte[seeds.size()][];
+        int i = 0;
+        for (Board seed : seeds) {
+            this.seeds[i++] = toDigits(seed);
+        }
+    }
+
+    private static byte[] toDigits(Board config) {
+        if (!config.isSolved()) {
+            throw new IllegalArgumentException("Seed is not a solved board: " + config.getSimplifiedString());
+        }
+        byte[] digits = new byte[Board.NUM_CELLS];
+        for (int i = 0; i < Board.NUM_CELLS; i++) {
+            digits[i] = (byte) (config.getValueAt(i) - 1);
+        }
+        return digits;
+    }
+
+    /** Returns the number of seeds in the pool.*/
+    public int getNumSeeds() {
+        return seeds.length;
+    }
+
+    /**
+     * Replaces the given number of randomly chosen seeds with new ones from
+     * {@link Generator#generateConfig()}.
+     * @param numSeeds - the number of seeds to replace. Values larger than the
+     * pool replace the whole pool.
+     */
+    public void refreshSeeds(int numSeeds) {
+        if (numSeeds >= seeds.length) {
+            for (int i = 0; i < seeds.length; i++) {
+                seeds[i] = toDigits(Generator.generateConfig());
+            }
+        } else {
+            for (int n = 0; n < numSeeds; n++) {
+                seeds[rand.nextInt(seeds.length)] = toDigits(Generator.generateConfig());
+            }
+        }
+    }
+
+    /**
+     * Sets how often a seed is replaced by a fresh one from the solver.
+     * @param interval - the number of configurations to derive between
+     * replacements, or 0 to never replace seeds automatically.
+     */
+    public void setRefreshInterval(long interval) {
+        if (interval < 0L) {
+            throw new IllegalArgumentException("Interval must not be negative, was " + interval);
+        }
+        this.refreshInterval = interval;
+    }
+
+    /** Returns a new configuration derived from a random seed.*/
+    public Board next() {
+        Board board = new Board();
+        nextInto(board);
+        return board;
+    }
+
+    /**
+     * Overwrites the given board with a new configuration derived from a
+     * random seed.
+     * @param board - the board to overwrite.
+     * @return The given board, for convenience.
+     */
+    public Board nextInto(Board board) {
+        board.setMasks(nextInto(scratch));
+        return board;
+    }
+
+    /**
+     * Writes the candidate masks of a new configuration derived from a
+     * random seed into the given array.
+     * @param masks - the array to write 81 masks to.
+     * @return The given array, for convenience.
+     */
+    public int[] nextInto(int[] masks) {
+        if (refreshInterval > 0L && ++count % refreshInterval == 0L) {
+            refreshSeeds(1);
+        }
+
+        byte[] seed = seeds[rand.nextInt(seeds.length)];
+
+        for (int d = 0; d < Board.NUM_DIGITS; d++) {
+            relabel[d] = 1 << d;
+        }
+        for (int d = Board.NUM_DIGITS - 1; d > 0; d--) {
+            int j = rand.nextInt(d + 1);
+            int temp = relabel[d];
+            relabel[d] = relabel[j];
+            relabel[j] = temp;
+        }
+
+        int rows = rand.nextInt(NUM_LINE_PERMS) * 9;
+        int cols = rand.nextInt(NUM_LINE_PERMS) * 9;
+        boolean transpose = rand.nextBoolean();
+        for (int r = 0; r < 9; r++) {
+            int srcRow = LINE_PERMS[rows + r];
+            for (int c = 0; c < 9; c++) {
+                int srcCol = LINE_PERMS[cols + c];
+                sourceCells[r * 9 + c] = transpose ? (srcCol * 9 + srcRow) : (srcRow * 9 + srcCol);
+            }
+        }
+
+        for (int i = 0; i < Board.NUM_CELLS; i++) {
+            masks[i] = relabel[seed[sourceCells[i]]];
+        }
+        return masks;
+    }
+}
@@ -9,20 +9,35 @@ public class GenerateConfigs {
     public static void main(String[] args) {
         final int numConfigs = (args != null && args.length > 0) ? Math.max(Integer.parseInt(args[0]), 1) : 1; //Number of configs to generate.
         final boolean normalize = (args != null && args.length > 1) ? Boolean.parseBoolean(args[1]) : false;
+        final boolean transform = (args != null && args.length > 2) ? Boolean.parseBoolean(args[2]) : false;
 
-        HashSet<Board> set = new HashSet<>();
-        while (set.size() < numConfigs) {
-            Generator.generateConfigs().stream().forEach((board) -> {
-                if (set.size() < numConfigs) {
-                    if (normalize) {
-                        board = SudokuUtility.normalize(board);
-                    }
-
-                    if (set.add(board)) {
-                        System.out.println(board.getSimplifiedString());
-                    }
+        // Packed, so that large runs keep 64 bytes per config rather than a whole Board.
+        HashSet<PackedBoard> set = new HashSet<>();
+
+        if (transform) {
+            // Derive configs from a small pool of solver seeds, replacing a seed now and then.
+            ConfigTransformer transformer = new ConfigTransformer(16);
+            transformer.setRefreshInterval(10000L);
+            Board board = new Board();
+            while (set.size() < numConfigs) {
+                transformer.nextInto(board);
+                Board out = normalize ? SudokuUtility.normalize(board) : board;
+                if (set.add(new PackedBoard(out))) {
+                    System.out.println(out.getSimplifiedString());
                 }
-            });
+            }
+            return;
+        }
+
+        while (set.size() < numConfigs) {
+            Board board = Generator.generateConfig();
+            if (normalize) {
+                board = SudokuUtility.normalize(board);
+            }
+
+            if (set.add(new PackedBoard(board))) {
+                System.out.println(board.getSimplifiedString());
+            }
         }
     }
 }
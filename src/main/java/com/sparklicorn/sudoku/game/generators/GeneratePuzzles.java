@@ -1,9 +1,10 @@
 package com.sparklicorn.sudoku.game.generators;
 
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import com.sparklicorn.sudoku.game.Board;
@@ -14,21 +15,46 @@ public class GeneratePuzzles {
         public final static int DEFAULT_NUM_PUZZLES = 1;
         public final static int DEFAULT_NUM_CLUES = 32;
         public final static int DEFAULT_NUM_THREADS = Runtime.getRuntime().availableProcessors();
+        public final static int DEFAULT_PUZZLES_PER_CONFIG = 1;
+        public final static boolean DEFAULT_SPECULATIVE = false;
+        /** Null for {@link RestartPolicy#defaultFor(int)}.*/
+        public final static String DEFAULT_RESTART_POLICY = null;
 
         public final int numClues;
         public final int numPuzzles;
         public final int numThreads;
+        public final int puzzlesPerConfig;
+        public final boolean speculative;
+        public final String restartPolicy;
 
-        GenerationOptions(int numClues, int numPuzzles, int numThreads) {
+        GenerationOptions(
+            int numClues,
+            int numPuzzles,
+            int numThreads,
+            int puzzlesPerConfig,
+            boolean speculative,
+            String restartPolicy
+        ) {
             this.numClues = numClues;
             this.numPuzzles = numPuzzles;
             this.numThreads = numThreads;
+            this.puzzlesPerConfig = puzzlesPerConfig;
+            this.speculative = speculative;
+            this.restartPolicy = restartPolicy;
+        }
+
+        /** Returns a new restart policy for one search, or null for the default.*/
+        RestartPolicy newRestartPolicy() {
+            return (restartPolicy != null) ? RestartPolicy.parse(restartPolicy, numClues) : null;
         }
 
         static GenerationOptions parseFromArgs(String[] args) {
             int numPuzzles = DEFAULT_NUM_PUZZLES;
             int numClues = DEFAULT_NUM_CLUES;
             int numThreads = DEFAULT_NUM_THREADS;
+            int puzzlesPerConfig = DEFAULT_PUZZLES_PER_CONFIG;
+            boolean speculative = DEFAULT_SPECULATIVE;
+            String restartPolicy = DEFAULT_RESTART_POLICY;
             if (args != null) {
                 if (args.length >= 1) {
                     numPuzzles = Integer.parseInt(args[0]);
@@ -36,14 +62,28 @@ public class GeneratePuzzles {
                 if (args.length >= 2) {
                     numClues = Integer.parseInt(args[1]);
                 }
-                if (args.length >= 2) {
+                if (args.length >= 3) {
                     numThreads = Integer.parseInt(args[2]);
                 }
+                if (args.length >= 4) {
+                    puzzlesPerConfig = Math.max(Integer.parseInt(args[3]), 1);
+                }
+                if (args.length >= 5) {
+                    speculative = Boolean.parseBoolean(args[4]);
+                }
+                if (args.length >= 6) {
+                    restartPolicy = args[5];
+                    // Fail before generating anything if it is malformed.
+                    RestartPolicy.parse(restartPolicy, numClues);
+                }
             }
             return new GenerationOptions(
                 numClues,
                 numPuzzles,
-                numThreads
+                numThreads,
+                puzzlesPerConfig,
+                speculative,
+                restartPolicy
             );
         }
     }
@@ -51,32 +91,92 @@ public class GeneratePuzzles {
     public static void main(String[] args) {
         GenerationOptions options = GenerationOptions.parseFromArgs(args);
 
-        if (options.numThreads == 1) {
+        // Shared by every search, so that restarts and searches carving the
+        // same config skip puzzles already checked.
+        UniquenessCache cache = new UniquenessCache();
+
+        if (options.speculative) {
+            // One puzzle at a time, with every thread evaluating removals for it.
+            ForkJoinPool pool = new ForkJoinPool(options.numThreads);
+            Board config = null;
             for (int n = 0; n < options.numPuzzles; n++) {
-                System.out.println(
-                    Generator.generatePuzzle(options.numClues).getSimplifiedString()
+                if (n % options.puzzlesPerConfig == 0) {
+                    config = Generator.generateConfig();
+                }
+                List<Board> boards = Generator.generatePuzzlesSpeculative(
+                    config, options.numClues, cache, pool, options.numThreads, options.newRestartPolicy()
                 );
+                printLast(boards, options.numClues);
+            }
+            pool.shutdown();
+            System.err.println(cache);
+            return;
+        }
+
+        if (options.numThreads == 1) {
+            Board config = null;
+            for (int n = 0; n < options.numPuzzles; n++) {
+                if (n % options.puzzlesPerConfig == 0) {
+                    config = Generator.generateConfig();
+                }
+                List<Board> boards = Generator.generatePuzzles(config, options.numClues, cache, options.newRestartPolicy());
+                printLast(boards, options.numClues);
             }
+            System.err.println(cache);
             return;
         }
 
         AtomicInteger latch = new AtomicInteger(options.numPuzzles);
-        BlockingQueue<Runnable> workQueue = new ArrayBlockingQueue<>(options.numPuzzles);
-        ThreadPoolExecutor pool = new ThreadPoolExecutor(options.numThreads, options.numThreads, 1L, TimeUnit.SECONDS, workQueue);
-        pool.prestartAllCoreThreads();
-
-        for (int threadIndex = 0; threadIndex < options.numThreads; threadIndex++) {
-            pool.submit(() -> {
-                while(latch.get() > 0) {
-                    printPuzzle(Generator.generatePuzzle(options.numClues), latch);
+        ExecutorService pool = Executors.newFixedThreadPool(options.numThreads);
+
+        CompletableFuture<?>[] puzzles = new CompletableFuture<?>[options.numPuzzles];
+        CompletableFuture<Board> config = null;
+        for (int n = 0; n < options.numPuzzles; n++) {
+            RestartPolicy policy = options.newRestartPolicy();
+            CompletableFuture<Board> puzzle;
+            if (options.puzzlesPerConfig == 1) {
+                // Each worker generates its own config.
+                puzzle = Generator.generatePuzzleAsync(null, options.numClues, pool, cache, policy);
+            } else {
+                if (n % options.puzzlesPerConfig == 0) {
+                    // Generated on a worker, so the main thread only submits.
+                    config = CompletableFuture.supplyAsync(Generator::generateConfig, pool);
                 }
-            });
+                puzzle = config.thenCompose(
+                    (c) -> Generator.generatePuzzleAsync(c, options.numClues, pool, cache, policy)
+                );
+            }
+            puzzles[n] = puzzle.thenAccept((p) -> printPuzzle(p, latch));
         }
 
+        CompletableFuture.allOf(puzzles).join();
         pool.shutdown();
+        System.err.println(cache);
+    }
+
+    /**
+     * Prints the puzzle at the end of a carved path, or notes on stderr that
+     * the search gave up, in which case the puzzle is skipped.
+     */
+    private static void printLast(List<Board> boards, int numClues) {
+        if (boards.isEmpty()) {
+            System.err.println("Gave up on a " + numClues + " clue puzzle; skipped.");
+        } else {
+            System.out.println(boards.get(boards.size() - 1).getSimplifiedString());
+        }
     }
 
+    /**
+     * Prints a puzzle from an async search and counts it against the latch.
+     * @param puzzle - the puzzle, or null if the search gave up; then it is
+     * skipped and not counted.
+     * @param latch - the number of puzzles still to print.
+     */
     public static synchronized void printPuzzle(Board puzzle, AtomicInteger latch) {
+        if (puzzle == null) {
+            System.err.println("Gave up on a puzzle; skipped.");
+            return;
+        }
         if (latch.get() > 0) {
             System.out.println(puzzle.getSimplifiedString());
             latch.decrementAndGet();
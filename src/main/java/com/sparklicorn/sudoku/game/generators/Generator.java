@@ -2,76 +2,280 @@ package com.sparklicorn.sudoku.game.generators;
 
 import java.util.Stack;
 import java.util.Set;
+import java.util.HashSet;
+import java.util.Random;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Queue;
-import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
 
 import com.sparklicorn.sudoku.game.*;
 import com.sparklicorn.sudoku.game.solvers.*;
+import com.sparklicorn.sudoku.util.AsyncUtil;
 
 public class Generator {
 
-    private static class Node {
-        Board b;
-        private Node[] nexts;
-        Node prev;
-        boolean visited;
+    /**
+     * A puzzle in the search, stored as the set of the shared config's cells
+     * that are still clues: an 81-bit mask split over two longs. Neighbors,
+     * the puzzles with one more clue removed, are made lazily by clue index,
+     * and the neighbors already tried are tracked in a second mask, so a step
+     * of the search allocates only the node it moves to.
+     * <br/><br/>
+     * Removals that would take the last clue of one of the config's
+     * unavoidable sets are marked as tried before any neighbor is picked,
+     * so they never reach the solver.
+     */
+    static class Node {
+        final Board config;
+        final long configId;
+
+        /** The config's unavoidable sets, or null to check every removal with the solver.*/
+        final UnavoidableSets sets;
+        private boolean pruned;
+
+        /** Clue mask, with cells 0 to 63 in low and 64 to 80 in high.*/
+        final long low;
+        final long high;
+        final int numClues;
+        final Node prev;
+
+        /** Neighbors already tried, by the index of the clue they remove.*/
+        private long triedLow;
+        private long triedHigh;
+
+        /** Index of the clue removed from prev to form this node, or -1 for the root.*/
+        final int removed;
+
+        /** Whether the uniqueness of this node has been evaluated, and the result.*/
+        boolean evaluated;
+        boolean unique;
+
+        /** Creates the root node, in which every cell of the config is a clue.*/
+        Node(Board config, long configId, UnavoidableSets sets) {
+            this.config = config;
+            this.configId = configId;
+            this.sets = sets;
+            this.low = -1L;
+            this.high = (1L << (Board.NUM_CELLS - 64)) - 1L;
+            this.numClues = Board.NUM_CELLS;
+            this.prev = null;
+            this.removed = -1;
+        }
 
-        Node(Board b, Node prev) {
-            this.b = b;
+        /** Creates the node formed by removing the given clue from prev.*/
+        Node(Node prev, int removed) {
+            this.config = prev.config;
+            this.configId = prev.configId;
+            this.sets = prev.sets;
+            this.low = (removed < 64) ? prev.low & ~(1L << removed) : prev.low;
+            this.high = (removed < 64) ? prev.high : prev.high & ~(1L << (removed - 64));
+            this.numClues = prev.numClues - 1;
             this.prev = prev;
-            visited = false;
+            this.removed = removed;
         }
 
-        void visit() {
-            visited = true;
+        boolean isClue(int index) {
+            return (index < 64) ? (low & (1L << index)) != 0L : (high & (1L << (index - 64))) != 0L;
         }
 
-        void kill() { //release memory
-            b = null;
-            nexts = null;
+        /**
+         * Overwrites the given board with this node's puzzle.
+         * @param masks - scratch space for 81 masks.
+         * @return The given board, for convenience.
+         */
+        Board fillBoard(Board board, int[] masks) {
+            for (int i = 0; i < Board.NUM_CELLS; i++) {
+                masks[i] = isClue(i) ? config.getMaskAt(i) : Board.ALL;
+            }
+            board.setMasks(masks);
+            return board;
         }
 
-        private void findNexts() {
-            if (nexts == null) {
-                nexts = new Node[b.getNumClues()];
-                int index = 0;
-                for (int i = 0; i < Board.NUM_CELLS; i++) {
-                    if (b.getValueAt(i) > 0) {
-                        Board bCopy = new Board(b);
-                        bCopy.setValueAt(i, 0);
-                        nexts[index++] = new Node(bCopy, this);
-                    }
+        /** Returns a new board with this node's puzzle.*/
+        Board toBoard() {
+            return fillBoard(new Board(), new int[Board.NUM_CELLS]);
+        }
+
+        /**
+         * Marks every removal that would empty an unavoidable set as tried.
+         * Runs once per node, before its neighbors are first picked.
+         */
+        private void prune() {
+            if (pruned || sets == null)
+                return;
+
+            for (long bits = low; bits != 0L; bits &= bits - 1L) {
+                int index = Long.numberOfTrailingZeros(bits);
+                if (sets.breaks(low, high, index)) {
+                    triedLow |= 1L << index;
+                }
+            }
+            for (long bits = high; bits != 0L; bits &= bits - 1L) {
+                int index = Long.numberOfTrailingZeros(bits);
+                if (sets.breaks(low, high, 64 + index)) {
+                    triedHigh |= 1L << index;
                 }
             }
+            pruned = true;
         }
 
+        /** Returns new nodes for every neighbor of this one that has not been tried.*/
         Node[] getNeighbors() {
-            if (nexts == null)
-                findNexts();
+            prune();
+            long openLow = low & ~triedLow;
+            long openHigh = high & ~triedHigh;
+            Node[] nexts = new Node[Long.bitCount(openLow) + Long.bitCount(openHigh)];
+            int n = 0;
+            for (long bits = openLow; bits != 0L; bits &= bits - 1L) {
+                nexts[n++] = new Node(this, Long.numberOfTrailingZeros(bits));
+            }
+            for (long bits = openHigh; bits != 0L; bits &= bits - 1L) {
+                nexts[n++] = new Node(this, 64 + Long.numberOfTrailingZeros(bits));
+            }
             return nexts;
         }
 
+        /**
+         * Returns a new node for a random neighbor that has not been tried
+         * yet, and marks it as tried.
+         * @return The neighbor, or null if every neighbor has been tried.
+         */
         Node getNextUnvisited() {
-            if (nexts == null)
-                findNexts();
-            ArrayList<Node> bag = new ArrayList<>();
-            for (Node n : nexts) {
-                if (n != null && !n.visited) {
-                    bag.add(n);
+            prune();
+            long openLow = low & ~triedLow;
+            long openHigh = high & ~triedHigh;
+            int countLow = Long.bitCount(openLow);
+            int count = countLow + Long.bitCount(openHigh);
+            if (count == 0)
+                return null;
+
+            int n = ThreadLocalRandom.current().nextInt(count);
+            int index;
+            if (n < countLow) {
+                index = nthBit(openLow, n);
+                triedLow |= 1L << index;
+            } else {
+                index = nthBit(openHigh, n - countLow);
+                triedHigh |= 1L << index;
+                index += 64;
+            }
+            return new Node(this, index);
+        }
+
+        /**
+         * Writes the clue indices of up to <code>indices.length</code>
+         * distinct untried neighbors to the given array, in random order,
+         * without marking them as tried.
+         * @return The number of indices written.
+         */
+        int sampleUntried(int[] indices) {
+            prune();
+            long openLow = low & ~triedLow;
+            long openHigh = high & ~triedHigh;
+            ThreadLocalRandom rand = ThreadLocalRandom.current();
+            int count = 0;
+            while (count < indices.length) {
+                int countLow = Long.bitCount(openLow);
+                int total = countLow + Long.bitCount(openHigh);
+                if (total == 0)
+                    break;
+
+                int n = rand.nextInt(total);
+                if (n < countLow) {
+                    int index = nthBit(openLow, n);
+                    openLow &= ~(1L << index);
+                    indices[count++] = index;
+                } else {
+                    int index = nthBit(openHigh, n - countLow);
+                    openHigh &= ~(1L << index);
+                    indices[count++] = index + 64;
                 }
             }
-            if (bag.isEmpty())
-                return null;
-            return bag.get(ThreadLocalRandom.current().nextInt(bag.size()));
+            return count;
+        }
+
+        /**
+         * Forgets which neighbors have been tried. The DFS does this to the
+         * root on every restart; otherwise each restart would use up one of
+         * its removals, and the search would end empty once all were gone.
+         */
+        void resetTried() {
+            triedLow = 0L;
+            triedHigh = 0L;
+            pruned = false;
+        }
+
+        /** Marks the neighbor that removes the given clue as tried.*/
+        void markTried(int index) {
+            if (index < 64) {
+                triedLow |= 1L << index;
+            } else {
+                triedHigh |= 1L << (index - 64);
+            }
+        }
+
+        /** Returns the position of the nth set bit (from 0) of the given mask.*/
+        private static int nthBit(long bits, int n) {
+            for (; n > 0; n--) {
+                bits &= bits - 1L;
+            }
+            return Long.numberOfTrailingZeros(bits);
+        }
+
+        /**
+         * Determines whether this node's board solves uniquely to the config.
+         * Nodes are only created from parents that already solve uniquely,
+         * so it is enough to check that the removed clue is still determined.
+         * The result is cached, as the DFS revisits nodes after backtracking,
+         * and in the shared cache if given, as restarts and other searches on
+         * the same config can reach the same puzzle by other paths.
+         * <br/>If the evaluator's session is cancelled mid-search, the node is
+         * left unevaluated and false is returned.
+         * @param evaluator - the solver and scratch space to use.
+         * @param cache - a cache shared between searches, or null.
+         */
+        boolean solvesUniquely(Evaluator evaluator, UniquenessCache cache) {
+            SolverSession session = evaluator.session;
+            Board scratch = evaluator.scratch;
+            int[] masks = evaluator.masks;
+            if (!evaluated && cache != null) {
+                int cached = cache.get(configId, low, high);
+                if (cached != UniquenessCache.UNKNOWN) {
+                    unique = (cached == UniquenessCache.UNIQUE);
+                    evaluated = true;
+                }
+            }
+            if (!evaluated) {
+                if (removed < 0) {
+                    unique = Solver.solvesUniquely(fillBoard(scratch, masks), config);
+                } else {
+                    session.reset(fillBoard(scratch, masks));
+                    evaluator.loaded = this;
+                    unique = session.isDetermined(removed, config);
+                    if (session.wasCancelled()) {
+                        // Left unevaluated, so the answer is neither kept nor cached.
+                        return false;
+                    }
+                }
+                evaluated = true;
+                if (cache != null) {
+                    cache.put(configId, low, high, unique);
+                }
+            }
+            return unique;
         }
 
         @Override
         public int hashCode() {
-            return b.hashCode();
+            return Long.hashCode(low) * 31 + Long.hashCode(high);
         }
 
         @Override
@@ -80,13 +284,113 @@ public class Generator {
                 return true;
             if (other instanceof Node) {
                 Node _other = (Node) other;
-                return b.equals(_other.b);
+                return low == _other.low && high == _other.high && config.equals(_other.config);
             }
             return false;
         }
 
     }
 
+    /** A solver session and scratch space for evaluating nodes on one thread.*/
+    private static class Evaluator {
+        final SolverSession session = new SolverSession();
+        final Board scratch = new Board();
+        final int[] masks = new int[Board.NUM_CELLS];
+        /** The node whose propagated puzzle the session last held at depth 0.*/
+        Node loaded;
+    }
+
+    /**
+     * Evaluates several removals from a node at once on a fork/join pool,
+     * moving on with the first that keeps the puzzle unique. Removals that
+     * have not started by then are skipped, and ones already running stop at
+     * their next search step; both stay untried.
+     * <br/><br/>
+     * An instance belongs to one search, but evaluates on the pool's
+     * threads, each with its own {@link Evaluator}.
+     */
+    private static class Speculator {
+        private static final ThreadLocal<Evaluator> EVALUATORS = ThreadLocal.withInitial(Evaluator::new);
+
+        private final ForkJoinPool pool;
+        private final UniquenessCache cache;
+        private final int[] indices;
+
+        /** Number of removals found not to be unique by the last call.*/
+        int failures;
+
+        /** Whether the last call found no untried removals.*/
+        boolean exhausted;
+
+        Speculator(ForkJoinPool pool, int width, UniquenessCache cache) {
+            if (width < 1) {
+                throw new IllegalArgumentException("Width must be positive, was " + width);
+            }
+            this.pool = pool;
+            this.cache = cache;
+            this.indices = new int[width];
+        }
+
+        /**
+         * Evaluates up to <code>width</code> untried neighbors of the given
+         * node at once. The first unique one, and every one found not to be
+         * unique, is marked as tried; the rest stay untried.
+         * @return The first neighbor found to solve uniquely, already
+         * evaluated, or null if none did.
+         */
+        Node speculate(Node parent) {
+            failures = 0;
+            int count = parent.sampleUntried(indices);
+            exhausted = (count == 0);
+            if (exhausted)
+                return null;
+
+            AtomicBoolean done = new AtomicBoolean();
+            CompletableFuture<Node> first = new CompletableFuture<>();
+            List<CompletableFuture<Boolean>> tasks = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Node child = new Node(parent, indices[i]);
+                tasks.add(CompletableFuture.supplyAsync(() -> {
+                    if (done.get())
+                        return null;
+                    Evaluator evaluator = EVALUATORS.get();
+                    // Losing searches stop at their next step once a winner is found.
+                    evaluator.session.setCancelled(done::get);
+                    boolean unique;
+                    try {
+                        unique = child.solvesUniquely(evaluator, cache);
+                    } finally {
+                        evaluator.session.setCancelled(null);
+                    }
+                    if (!child.evaluated)
+                        return null;
+                    if (unique && done.compareAndSet(false, true)) {
+                        first.complete(child);
+                    }
+                    return unique;
+                }, pool));
+            }
+            CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0]))
+                .whenComplete((v, t) -> first.complete(null));
+
+            Node winner = first.join();
+            done.set(true);
+            for (int i = 0; i < count; i++) {
+                Boolean unique = tasks.get(i).getNow(null);
+                if (unique == null) {
+                    tasks.get(i).cancel(false);
+                } else if (!unique) {
+                    parent.markTried(indices[i]);
+                    failures++;
+                }
+            }
+            if (winner != null) {
+                parent.markTried(winner.removed);
+            }
+            return winner;
+        }
+    }
+
     public static List<Board> generatePuzzles(int numClues) {
         return generatePuzzles(numClues, Integer.MAX_VALUE);
     }
@@ -96,159 +400,394 @@ public class Generator {
         return boards.get(boards.size() - 1);
     }
 
-    //Uses stochastic BFS
-    public static List<Board> generatePuzzles2(int numClues, double prob) {
-        Queue<Node> q = new ArrayDeque<>();
-        Queue<Node> u = new ArrayDeque<>();
+    /**
+     * Generates a puzzle with the given number of clues on the given executor.
+     * Cancelling the returned future stops the search at its next step.
+     * @param numClues - the target number of clues.
+     * @param executor - the executor to run the generator on.
+     * @return A future completed with the generated puzzle.
+     */
+    public static CompletableFuture<Board> generatePuzzleAsync(int numClues, Executor executor) {
+        return generatePuzzleAsync(null, numClues, executor, null);
+    }
 
-        Board config = generateConfig();
+    /**
+     * Generates a puzzle with the given number of clues from the given config
+     * on the given executor, sharing uniqueness results through the given
+     * cache. Searches that carve the same config share the most entries.
+     * Cancelling the returned future stops the search at its next step.
+     * @param config - the solved board to carve, or null to generate one.
+     * @param numClues - the target number of clues.
+     * @param executor - the executor to run the generator on.
+     * @param cache - the cache to share uniqueness results through, or null.
+     * @return A future completed with the generated puzzle.
+     */
+    public static CompletableFuture<Board> generatePuzzleAsync(
+        Board config,
+        int numClues,
+        Executor executor,
+        UniquenessCache cache
+    ) {
+        return generatePuzzleAsync(config, numClues, executor, cache, null);
+    }
 
-        Node root = new Node(config, null);
-        q.offer(root);
+    /**
+     * Like {@link #generatePuzzleAsync(Board, int, Executor, UniquenessCache)},
+     * restarting from the config when the given policy says to.
+     * @param policy - decides when to restart, or null for
+     * {@link RestartPolicy#defaultFor(int)}. Policies keep state, so each
+     * search needs its own.
+     */
+    public static CompletableFuture<Board> generatePuzzleAsync(
+        Board config,
+        int numClues,
+        Executor executor,
+        UniquenessCache cache,
+        RestartPolicy policy
+    ) {
+        if (config != null) {
+            // The fingerprint is computed lazily, so compute it before the board is shared.
+            config.getFingerprintLow();
+        }
+        return AsyncUtil.supplyCancellable((cancelled) -> {
+            List<Board> boards = generatePuzzles(config, numClues, Integer.MAX_VALUE, cancelled, cache, null, policy);
+            return boards.isEmpty() ? null : boards.get(boards.size() - 1);
+        }, executor);
+    }
 
-        int pollCounter = 0;
-        final int dot_increments = 10000;
+    /** Number of untried removals sampled from each node of a beam level.*/
+    static final int BEAM_FANOUT = 8;
+
+    /**
+     * Uses beam search to carve a puzzle from the given config, keeping only
+     * the <code>beamWidth</code> most promising puzzles at each clue count.
+     * <br/><br/>
+     * Each level samples up to {@link #BEAM_FANOUT} removals from every
+     * puzzle in the beam. Removals that reach the same clue mask from
+     * different parents are merged. The survivors are checked for uniqueness
+     * on the given pool and scored by the number of cells still ambiguous
+     * after propagation. The puzzles that propagation gets furthest with
+     * have the most slack left for further removals, so the lowest scores
+     * form the next level, with ties broken at random.
+     * <br/><br/>
+     * The beam and candidate tables are allocated once, so memory is fixed
+     * by the beam width, plus one node per clue removed for each survivor's
+     * path.
+     * @param config - the solved board to carve, or null to generate one.
+     * @param numClues - the target number of clues.
+     * @param beamWidth - the number of puzzles kept at each level.
+     * @param cache - the cache to share uniqueness results through, or null.
+     * @param pool - the pool to check removals on, or null to check them on
+     * this thread.
+     * @return The boards from the config to the puzzle, one clue removed at
+     * a time, or an empty list if every puzzle in the beam ran out of
+     * removals first. Searches are randomized, so callers may retry.
+     */
+    public static List<Board> generatePuzzlesBeam(
+        Board config,
+        int numClues,
+        int beamWidth,
+        UniquenessCache cache,
+        ForkJoinPool pool
+    ) {
+        if (beamWidth < 1) {
+            throw new IllegalArgumentException("Beam width must be positive, was " + beamWidth);
+        }
+        if (config == null) {
+            config = generateConfig();
+        }
 
-        Node n = null;
-        boolean found = false;
+        int maxCandidates = beamWidth * BEAM_FANOUT;
+        Node[] beam = new Node[beamWidth];
+        Node[] candidates = new Node[maxCandidates];
+        int[] scores = new int[maxCandidates];
+        Integer[] order = new Integer[maxCandidates];
+        int[] indices = new int[BEAM_FANOUT];
+        // Open addressing over (low, high) clue masks, high words tagged as occupied.
+        long[] seen = new long[Integer.highestOneBit(maxCandidates) * 4 * 2];
+        int seenMask = seen.length / 2 - 1;
+        ThreadLocalRandom rand = ThreadLocalRandom.current();
 
-        while (!found && !q.isEmpty() || !u.isEmpty()) {
-            if (q.isEmpty()) {
-                Queue<Node> temp = q;
-                q = u;
-                u = temp;
+        Node root = new Node(config, config.getFingerprintLow(), UnavoidableSets.find(config));
+        Evaluator evaluator = new Evaluator();
+        if (!root.solvesUniquely(evaluator, cache)) {
+            return new ArrayList<>();
+        }
+        beam[0] = root;
+        int beamSize = 1;
+
+        while (beam[0].numClues > numClues) {
+            Arrays.fill(seen, 0L);
+            int count = 0;
+            for (int b = 0; b < beamSize; b++) {
+                Node parent = beam[b];
+                int sampled = parent.sampleUntried(indices);
+                for (int k = 0; k < sampled; k++) {
+                    Node child = new Node(parent, indices[k]);
+                    if (markSeen(seen, seenMask, child.low, child.high)) {
+                        candidates[count++] = child;
+                    }
+                }
             }
 
-            n = q.poll();
-            n.visit();
+            scoreCandidates(candidates, scores, count, cache, pool);
 
-            if (++pollCounter % dot_increments == 0) {
-                //System.out.print('.');
-                if (pollCounter > 0 && pollCounter % (80 * dot_increments) == 0) {
-                    //System.out.println();
+            int survivors = 0;
+            for (int c = 0; c < count; c++) {
+                if (scores[c] >= 0) {
+                    // Random low bits break ties between equal scores.
+                    scores[c] = (scores[c] << 16) | rand.nextInt(1 << 16);
+                    order[survivors++] = c;
                 }
             }
+            if (survivors == 0) {
+                return new ArrayList<>();
+            }
+            Arrays.sort(order, 0, survivors, (a, b) -> Integer.compare(scores[a], scores[b]));
 
-            if (Solver.solvesUniquely(n.b, config)) {
-                if (n.b.getNumClues() <= numClues) {
-                    //System.out.println("Target found!");
-                    found = true; //break out of loop
-
-                } else {
-                    if (ThreadLocalRandom.current().nextDouble() < prob) {
-                        for (Node next : n.getNeighbors()) {
-                            if (!next.visited) {
-                                q.offer(next);
-                            }
-                        }
-                    } else {
-                        for (Node next : n.getNeighbors()) {
-                            if (!next.visited) {
-                                u.offer(next);
-                            }
-                        }
-                    }
-                }
-            } else {
-                n.kill(); //releases some memory
+            beamSize = Math.min(survivors, beamWidth);
+            for (int b = 0; b < beamSize; b++) {
+                beam[b] = candidates[order[b]];
             }
+            Arrays.fill(candidates, 0, count, null);
+        }
 
+        List<Board> result = new ArrayList<>();
+        for (Node n = beam[0]; n != null; n = n.prev) {
+            result.add(n.toBoard());
         }
+        Collections.reverse(result);
+        return result;
+    }
 
-        //System.out.println();
-        //System.out.println("Polls: " + pollCounter);
+    /**
+     * Adds the given clue mask to the table.
+     * @return True if it was not already there.
+     */
+    private static boolean markSeen(long[] seen, int mask, long low, long high) {
+        long key = high | Long.MIN_VALUE;
+        long h = (low ^ (high * 0x9e3779b97f4a7c15L)) * 0xbf58476d1ce4e5b9L;
+        for (int slot = (int) (h >>> 32) & mask; ; slot = (slot + 1) & mask) {
+            if (seen[2 * slot + 1] == 0L) {
+                seen[2 * slot] = low;
+                seen[2 * slot + 1] = key;
+                return true;
+            }
+            if (seen[2 * slot + 1] == key && seen[2 * slot] == low) {
+                return false;
+            }
+        }
+    }
 
-        //if search criteria found, then n should point to
-        //node holding target board.
+    /**
+     * Sets the score of each candidate to the number of cells left ambiguous
+     * after propagating its clues, or -1 if it does not solve uniquely.
+     */
+    private static void scoreCandidates(
+        Node[] candidates,
+        int[] scores,
+        int count,
+        UniquenessCache cache,
+        ForkJoinPool pool
+    ) {
+        if (pool == null) {
+            scoreRange(candidates, scores, 0, count, cache);
+            return;
+        }
 
-        List<Board> result = new ArrayList<>();
+        int numTasks = Math.min(pool.getParallelism(), count);
+        CompletableFuture<?>[] tasks = new CompletableFuture<?>[numTasks];
+        for (int t = 0; t < numTasks; t++) {
+            int from = (int) ((long) count * t / numTasks);
+            int to = (int) ((long) count * (t + 1) / numTasks);
+            tasks[t] = CompletableFuture.runAsync(() -> scoreRange(candidates, scores, from, to, cache), pool);
+        }
+        CompletableFuture.allOf(tasks).join();
+    }
 
-        if (found) {
-            Stack<Board> stack = new Stack<>();
-            while (n != null) {
-                stack.push(n.b);
-                n = n.prev;
+    private static void scoreRange(Node[] candidates, int[] scores, int from, int to, UniquenessCache cache) {
+        Evaluator evaluator = Speculator.EVALUATORS.get();
+        SolverSession session = evaluator.session;
+        for (int c = from; c < to; c++) {
+            Node node = candidates[c];
+            if (!node.solvesUniquely(evaluator, cache)) {
+                scores[c] = -1;
+                continue;
             }
-
-            while (!stack.isEmpty()) {
-                result.add(stack.pop());
+            if (evaluator.loaded != node) {
+                session.reset(node.fillBoard(evaluator.scratch, evaluator.masks));
+                evaluator.loaded = node;
+            }
+            int ambiguous = 0;
+            for (int i = 0; i < Board.NUM_CELLS; i++) {
+                int mask = session.getMaskAt(i);
+                if ((mask & (mask - 1)) != 0) {
+                    ambiguous++;
+                }
             }
+            scores[c] = ambiguous;
         }
-
-        return result;
     }
 
     //Uses DFS to locate valid sudoku puzzle.
     public static List<Board> generatePuzzles(int numClues, int maxPops) {
+        return generatePuzzles(null, numClues, maxPops, () -> false, null, null, null);
+    }
+
+    /**
+     * Uses DFS to carve a puzzle from the given config, sharing uniqueness
+     * results through the given cache.
+     * @param config - the solved board to carve, or null to generate one.
+     * @param numClues - the target number of clues.
+     * @param cache - the cache to share uniqueness results through, or null.
+     * @return The boards from the config to the puzzle, one clue removed at
+     * a time, or an empty list if the search gave up.
+     */
+    public static List<Board> generatePuzzles(Board config, int numClues, UniquenessCache cache) {
+        return generatePuzzles(config, numClues, cache, null);
+    }
+
+    /**
+     * Uses DFS to carve a puzzle from the given config, sharing uniqueness
+     * results through the given cache and restarting from the config when
+     * the given policy says to.
+     * @param config - the solved board to carve, or null to generate one.
+     * @param numClues - the target number of clues.
+     * @param cache - the cache to share uniqueness results through, or null.
+     * @param policy - decides when to restart, or null for
+     * {@link RestartPolicy#defaultFor(int)}. Policies keep state, so each
+     * search needs its own.
+     * @return The boards from the config to the puzzle, one clue removed at
+     * a time, or an empty list if the search gave up.
+     */
+    public static List<Board> generatePuzzles(
+        Board config,
+        int numClues,
+        UniquenessCache cache,
+        RestartPolicy policy
+    ) {
+        return generatePuzzles(config, numClues, Integer.MAX_VALUE, () -> false, cache, null, policy);
+    }
+
+    /**
+     * Uses DFS to carve a puzzle from the given config like
+     * {@link #generatePuzzles(Board, int, UniquenessCache)}, but at each step
+     * evaluates several removals at once on the given pool and moves on with
+     * the first that keeps the puzzle unique. At low clue counts most
+     * removals fail, so this shortens the chain of serial solver calls on
+     * machines with cores to spare.
+     * @param config - the solved board to carve, or null to generate one.
+     * @param numClues - the target number of clues.
+     * @param cache - the cache to share uniqueness results through, or null.
+     * @param pool - the pool to evaluate removals on.
+     * @param width - the number of removals to evaluate at once, usually the
+     * pool's parallelism.
+     * @param policy - decides when to restart, or null for
+     * {@link RestartPolicy#defaultFor(int)}.
+     * @return The boards from the config to the puzzle, one clue removed at
+     * a time, or an empty list if the search gave up.
+     */
+    public static List<Board> generatePuzzlesSpeculative(
+        Board config,
+        int numClues,
+        UniquenessCache cache,
+        ForkJoinPool pool,
+        int width,
+        RestartPolicy policy
+    ) {
+        Speculator speculator = new Speculator(pool, width, cache);
+        return generatePuzzles(config, numClues, Integer.MAX_VALUE, () -> false, cache, speculator, policy);
+    }
+
+    /**
+     * @param maxPops - the number of pops, over all restarts, after which
+     * the search gives up.
+     * @param speculator - evaluates several removals at once, or null to
+     * evaluate them one at a time on this thread.
+     * @param policy - decides when to restart, or null for the default.
+     */
+    private static List<Board> generatePuzzles(
+        Board config,
+        int numClues,
+        int maxPops,
+        BooleanSupplier cancelled,
+        UniquenessCache cache,
+        Speculator speculator,
+        RestartPolicy policy
+    ) {
         Stack<Node> stack = new Stack<>();
-        //HashSet<Node> visited = new HashSet<>();
-        Board config = generateConfig();
-        Node root = new Node(config, null);
+        if (config == null) {
+            config = generateConfig();
+        }
+        Evaluator evaluator = new Evaluator();
+        Node root = new Node(config, config.getFingerprintLow(), UnavoidableSets.find(config));
         stack.push(root);
-        //visited.add(root);
 
-        int tp = 0;
+        if (policy == null) {
+            policy = RestartPolicy.defaultFor(numClues);
+        }
+        int limit = policy.nextLimit();
         int pops = 0;
 
-        // System.out.println("Starting with " + config.getSimplifiedString());
-
         while (!stack.isEmpty() && pops < maxPops) {
+            if (cancelled.getAsBoolean()) {
+                return new ArrayList<>();
+            }
+
             Node n = stack.peek();
-            n.visit();
-            //visited.add(n);
 
-            // System.out.println("Peek > (" + n.b.getNumClues() + ") " + n.b.getSimplifiedString());
+            boolean fresh = !n.evaluated;
+            boolean unique = n.solvesUniquely(evaluator, cache);
+            if (fresh && n.prev != null) {
+                policy.record(n.numClues, unique);
+            }
 
             //if more than one solution...
-            if (!Solver.solvesUniquely(n.b, config)) {
-                // System.out.println("Doesn't solve uniquely.");
+            if (!unique) {
                 stack.pop();
-                n.kill();
-                tp++;
-                if (++pops == 100) {
-                    // System.out.printf("Too many pops (%d)... trying again.%n", tp);
-                    if (tp > 0 && tp % 8000 == 0)
-                        System.out.println();
-                    stack.clear();
-                    stack.push(root);
-                    pops = 0;
-                }
-                continue;
-            } else if (n.b.getNumClues() <= numClues) { //if target found
-                // System.out.println("Target found!");
+                pops++;
+            } else if (n.numClues <= numClues) { //if target found
                 break;
-            }
-
-            //target number of clues not reached, but current node puzzle has only single solution
-
-            Node next = n.getNextUnvisited();
-
-            if (next != null) {
-                stack.push(next);
-                //visited.add(next);
             } else {
-                // System.out.println("Out of neighbors.");
-                stack.pop();
+                //target number of clues not reached, but current node puzzle has only single solution
+
+                Node next;
+                if (speculator != null) {
+                    next = speculator.speculate(n);
+                    // Failed removals count as if each had been pushed and popped.
+                    pops += speculator.failures;
+                    for (int f = 0; f < speculator.failures; f++) {
+                        policy.record(n.numClues - 1, false);
+                    }
+                    if (next != null) {
+                        policy.record(next.numClues, true);
+                    }
+                } else {
+                    next = n.getNextUnvisited();
+                }
 
-                tp++;
-                if (++pops == 100) {
-                    // System.out.printf("Too many pops (%d)... trying again.%n", tp);
-                    if (tp > 0 && tp % 8000 == 0)
-                        System.out.println();
-                    stack.clear();
-                    stack.push(root);
-                    pops = 0;
+                if (next != null) {
+                    stack.push(next);
+                } else if (speculator == null || speculator.exhausted) {
+                    stack.pop();
+                    pops++;
                 }
             }
-        }
 
-        // System.out.println();
-        // System.out.println("Pops: " + tp);
+            if (pops >= limit) {
+                stack.clear();
+                root.resetTried();
+                stack.push(root);
+                maxPops -= pops;
+                pops = 0;
+                limit = policy.nextLimit();
+            }
+        }
 
         List<Board> result = new ArrayList<>();
-        if (!stack.isEmpty()) {
+        if (!stack.isEmpty() && stack.peek().numClues <= numClues) {
             for (Node n : stack)
-                result.add(n.b);
+                result.add(n.toBoard());
         }
 
         return result;
@@ -271,60 +810,40 @@ public class Generator {
 		return list;
     }
 
-    private static void shuffle(int[] array, int numSwaps) {
-        ThreadLocalRandom rand = ThreadLocalRandom.current();
-        for (int n = 0; n < numSwaps; n++) {
-            int i = rand.nextInt(array.length), j = rand.nextInt(array.length);
-            int temp = array[i];
-            array[i] = array[j];
-            array[j] = temp;
+    /**
+     * Generates the given number of configurations, each by one randomized
+     * search from an empty board. Duplicates are possible but, with about
+     * 6.7 * 10^21 grids to draw from, vanishingly rare.
+     * @param count - the number of configurations to generate.
+     * @return A set of at most <code>count</code> solved boards.
+     */
+    public static Set<Board> generateConfigs(int count) {
+        Set<Board> configs = new HashSet<>();
+        BitboardSolver solver = new BitboardSolver();
+        Board empty = new Board();
+        for (int n = 0; n < count; n++) {
+            configs.add(solver.randomSolution(empty, ThreadLocalRandom.current(), false));
         }
+        return configs;
     }
 
-	private static void fillSections(Board board, int mask) {
-        int[] list = new int[] {1, 2, 3, 4, 5, 6, 7, 8, 9};
-		for (int m = 0; m < 9; m++) {
-			if ((mask & (1 << (8 - m))) > 0) {
-				shuffle(list, 18);
-				int gr = m/3;
-			    int gc = m%3;
-			    for (int i = 0; i < 9; i++) {
-			    	int bi = gr*27 + gc*3 + (i/3)*9 + (i%3);
-			    	board.setValueAt(bi, list[i]);
-			    }
-			}
-		}
-    }
-
-    public static Set<Board> generateConfigs() {
-		//Start with a blank board and generate some of the regions.
-		Set<Board> configs = null;
-
-		while (configs == null || configs.isEmpty()) {
-            Board b = new Board();
-
-            do {
-                b.clear();
-                Generator.fillSections(b, 0b101010001);
-            } while (!b.isValid());
-
-            //System.out.println("Trying partial config: ");
-            //System.out.println(b);
-            //System.out.println("Trying partial config: " + b.getSimplifiedString());
-
-			//Attempt to solve the partially-filled board.
-			configs = Solver.getAllSolutions(b);
-
-            //System.out.println("Found " + set.size() + " solutions.");
-		}
-
-        //System.out.println("Generated config -> " + b.getSimplifiedString());
-		return configs;
+    /**
+     * Generates a configuration by completing an empty board with a
+     * randomized search that stops at the first solution.
+     */
+    public static Board generateConfig() {
+        return generateConfig(ThreadLocalRandom.current(), false);
     }
 
-    public static Board generateConfig() {
-        Set<Board> configSet = generateConfigs();
-        int size = configSet.size();
-        return configSet.toArray(new Board[size])[ThreadLocalRandom.current().nextInt(size)];
+    /**
+     * Generates a configuration by completing an empty board with a
+     * randomized search that stops at the first solution.
+     * @param random - the source of randomness.
+     * @param uniform - whether to weight guesses by estimated subtree size,
+     * which samples grids closer to uniformly at some cost in speed.
+     * See {@link BitboardSolver#randomSolution(Board, java.util.Random, boolean)}.
+     */
+    public static Board generateConfig(Random random, boolean uniform) {
+        return new BitboardSolver().randomSolution(new Board(), random, uniform);
     }
 }
@@ -0,0 +1,239 @@
+package com.sparklicorn.sudoku.game.generators;
+
+import com.sparklicorn.sudoku.game.Board;
+
+/**
+ * Decides when the DFS carver gives up on its current path and starts over
+ * from the full config.
+ * <br/><br/>
+ * The carver counts a pop for every removal that breaks uniqueness and for
+ * every node it backs out of. When the count reaches the policy's limit, it
+ * restarts and asks for a new limit. Policies keep state across restarts,
+ * so each search needs its own instance; see {@link #parse(String, int)}.
+ * <br/><br/>
+ * Available policies:
+ * <ul>
+ * <li>{@link #fixed(int)}: the same limit every time. The carver used to
+ * always restart after 100 pops.</li>
+ * <li>{@link #luby(int)}: the unit times the Luby sequence 1, 1, 2, 1, 1,
+ * 2, 4, 1, ... Mostly short runs, with a long one now and then, which is
+ * within a log factor of the best fixed limit without knowing it.</li>
+ * <li>{@link #geometric(int, double)}: a limit that grows by a constant
+ * factor after each restart.</li>
+ * <li>{@link #adaptive(int, double)}: a limit derived from the success rate
+ * of removals observed at each clue count, scaled to the expected number
+ * of failed removals between the full config and the target.</li>
+ * </ul>
+ */
+public abstract class RestartPolicy {
+
+    /**
+     * Returns the number of pops to allow before the next restart. Called
+     * when the search starts and after every restart.
+     */
+    public abstract int nextLimit();
+
+    /**
+     * Records whether a removal that left the given number of clues kept
+     * the puzzle unique. Policies that do not learn ignore this.
+     * @param numClues - the number of clues left after the removal.
+     * @param unique - whether the puzzle still solves uniquely.
+     */
+    public void record(int numClues, boolean unique) {
+    }
+
+    /**
+     * Returns a policy that always allows the given number of pops.
+     * @param pops - the limit.
+     */
+    public static RestartPolicy fixed(int pops) {
+        requirePositive(pops);
+        return new RestartPolicy() {
+            @Override
+            public int nextLimit() {
+                return pops;
+            }
+
+            @Override
+            public String toString() {
+                return "fixed:" + pops;
+            }
+        };
+    }
+
+    /**
+     * Returns a policy that allows the given unit times the next term of the
+     * Luby sequence.
+     * @param unit - the length of the shortest run.
+     */
+    public static RestartPolicy luby(int unit) {
+        requirePositive(unit);
+        return new RestartPolicy() {
+            private int run = 0;
+
+            @Override
+            public int nextLimit() {
+                return (int) Math.min((long) unit * lubyTerm(++run), Integer.MAX_VALUE);
+            }
+
+            @Override
+            public String toString() {
+                return "luby:" + unit;
+            }
+        };
+    }
+
+    /**
+     * Returns the ith term of the Luby sequence, from 1.
+     */
+    static long lubyTerm(int i) {
+        // Find the k for which i = 2^k - 1 ends a block, or recurse into the
+        // copy of the earlier sequence that i falls in.
+        while (true) {
+            int k = 1;
+            while ((1L << k) - 1 < i) {
+                k++;
+            }
+            if ((1L << k) - 1 == i) {
+                return 1L << (k - 1);
+            }
+            i -= (1 << (k - 1)) - 1;
+        }
+    }
+
+    /**
+     * Returns a policy whose limit starts at the given number of pops and is
+     * multiplied by the given factor after each restart.
+     * @param initial - the first limit.
+     * @param factor - the growth per restart, at least 1.
+     */
+    public static RestartPolicy geometric(int initial, double factor) {
+        requirePositive(initial);
+        if (!(factor >= 1.0)) {
+            throw new IllegalArgumentException("Factor must be at least 1, was " + factor);
+        }
+        return new RestartPolicy() {
+            private double limit = initial;
+
+            @Override
+            public int nextLimit() {
+                int result = (int) Math.min(limit, Integer.MAX_VALUE);
+                limit *= factor;
+                return result;
+            }
+
+            @Override
+            public String toString() {
+                return "geometric:" + initial + ":" + factor;
+            }
+        };
+    }
+
+    /**
+     * Returns a policy that sets each limit from the removals seen so far.
+     * <br/>With <code>p(c)</code> the observed rate at which removals leaving
+     * <code>c</code> clues keep the puzzle unique, a path from the config to
+     * the target is expected to meet <code>(1 - p(c)) / p(c)</code> failed
+     * removals at each clue count above the target. The limit is that sum
+     * times the given factor, so it stays small while removals succeed and
+     * grows as the depths near the target turn out to be hard.
+     * @param numClues - the target number of clues.
+     * @param factor - the multiple of the expected failures to allow.
+     */
+    public static RestartPolicy adaptive(int numClues, double factor) {
+        if (!(factor > 0.0)) {
+            throw new IllegalArgumentException("Factor must be positive, was " + factor);
+        }
+        return new Adaptive(numClues, factor);
+    }
+
+    private static class Adaptive extends RestartPolicy {
+        /** Limits are kept in this range while there is little data.*/
+        private static final int MIN_LIMIT = 16;
+        private static final int MAX_LIMIT = 1 << 20;
+
+        private final int numClues;
+        private final double factor;
+        /** Indexed by clue count. A removal leaves at most 80 clues.*/
+        private final int[] successes = new int[Board.NUM_CELLS];
+        private final int[] trials = new int[Board.NUM_CELLS];
+
+        Adaptive(int numClues, double factor) {
+            this.numClues = numClues;
+            this.factor = factor;
+        }
+
+        @Override
+        public void record(int clues, boolean unique) {
+            trials[clues]++;
+            if (unique) {
+                successes[clues]++;
+            }
+        }
+
+        @Override
+        public int nextLimit() {
+            double expected = 0.0;
+            for (int c = Math.max(numClues, 0); c < Board.NUM_CELLS; c++) {
+                // Smoothed, so that unseen depths count as a coin flip.
+                double p = (successes[c] + 1.0) / (trials[c] + 2.0);
+                expected += (1.0 - p) / p;
+            }
+            return (int) Math.max(MIN_LIMIT, Math.min(MAX_LIMIT, factor * expected));
+        }
+
+        @Override
+        public String toString() {
+            return "adaptive:" + factor;
+        }
+    }
+
+    private static void requirePositive(int value) {
+        if (value < 1) {
+            throw new IllegalArgumentException("Limit must be positive, was " + value);
+        }
+    }
+
+    /**
+     * Returns the policy the generator uses when none is given.
+     * <br/>Measured with the "restarts" command over 150 configs per target,
+     * a fixed limit of 100 had the best or near best median time from 27
+     * down to 23 clues, while Luby, geometric and adaptive limits did no
+     * better. At 22 clues, where the worst paths dominate, a limit of 25 had
+     * the best median, 95th percentile and mean: 16, 78 and 23 ms against
+     * 26, 83 and 31 ms for 100.
+     * @param numClues - the target number of clues.
+     */
+    public static RestartPolicy defaultFor(int numClues) {
+        return fixed((numClues <= 22) ? 25 : 100);
+    }
+
+    /**
+     * Creates a policy from a description: <code>fixed:pops</code>,
+     * <code>luby:unit</code>, <code>geometric:initial:factor</code>, or
+     * <code>adaptive:factor</code>.
+     * @param spec - the description.
+     * @param numClues - the target number of clues, for adaptive policies.
+     * @throws IllegalArgumentException If the description is not recognized.
+     */
+    public static RestartPolicy parse(String spec, int numClues) {
+        String[] parts = spec.split(":");
+        try {
+            switch (parts[0]) {
+                case "fixed":
+                    return fixed(Integer.parseInt(parts[1]));
+                case "luby":
+                    return luby(Integer.parseInt(parts[1]));
+                case "geometric":
+                    return geometric(Integer.parseInt(parts[1]), Double.parseDouble(parts[2]));
+                case "adaptive":
+                    return adaptive(numClues, Double.parseDouble(parts[1]));
+                default:
+                    break;
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            throw new IllegalArgumentException("Bad restart policy: " + spec, e);
+        }
+        throw new IllegalArgumentException("Unknown restart policy: " + spec);
+    }
+}
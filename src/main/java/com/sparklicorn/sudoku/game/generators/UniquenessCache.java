@@ -0,0 +1,208 @@
+package com.sparklicorn.sudoku.game.generators;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size, thread-safe cache of whether puzzles carved from a config
+ * solve uniquely, keyed by the config's id and the 81-bit mask of the cells
+ * that are still clues.
+ * <br/><br/>
+ * Entries live in flat <code>long</code> arrays split into stripes, each
+ * guarded by its own lock, so threads carving puzzles at once rarely wait
+ * on each other. Each key hashes to a bucket of {@link #WAYS} slots in one
+ * stripe; when the bucket is full, the oldest slot in it is overwritten.
+ * Memory use is therefore fixed when the cache is created: 3 longs per
+ * slot, whatever the number of lookups.
+ * <br/><br/>
+ * A miss only costs a solver call, so evicting entries is always safe.
+ */
+public class UniquenessCache {
+
+    /** Result of {@link #get(long, long, long)} when the key is not cached.*/
+    public static final int UNKNOWN = -1;
+    /** Result of {@link #get(long, long, long)} for a puzzle with more than one solution.*/
+    public static final int NOT_UNIQUE = 0;
+    /** Result of {@link #get(long, long, long)} for a puzzle with one solution.*/
+    public static final int UNIQUE = 1;
+
+    /** Number of slots in each bucket.*/
+    public static final int WAYS = 4;
+
+    /** Default number of slots, about 24 MB.*/
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+
+    private static final int STRIPE_BITS = 6;
+    private static final int NUM_STRIPES = 1 << STRIPE_BITS;
+
+    /** Flags kept in the otherwise unused top bits of the high clue word.*/
+    private static final long OCCUPIED = 1L << 63;
+    private static final long UNIQUE_FLAG = 1L << 62;
+    private static final long FLAGS = OCCUPIED | UNIQUE_FLAG;
+
+    private static class Stripe {
+        /** Per slot: config id, low clue word, high clue word with flags.*/
+        final long[] entries;
+        /** Next slot to overwrite in each full bucket.*/
+        final byte[] victims;
+        int size;
+
+        Stripe(int numSlots) {
+            entries = new long[numSlots * 3];
+            victims = new byte[numSlots / WAYS];
+        }
+    }
+
+    private final Stripe[] stripes;
+    private final int bucketsPerStripe;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /** Creates a cache with {@link #DEFAULT_CAPACITY} slots.*/
+    public UniquenessCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a cache with at least the given number of slots, rounded up to
+     * a power of two.
+     * @param capacity - the number of entries the cache can hold.
+     */
+    public UniquenessCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive, was " + capacity);
+        }
+        int slots = Math.max(Integer.highestOneBit(capacity - 1) << 1, NUM_STRIPES * WAYS);
+        int slotsPerStripe = slots / NUM_STRIPES;
+        this.bucketsPerStripe = slotsPerStripe / WAYS;
+        this.stripes = new Stripe[NUM_STRIPES];
+        for (int s = 0; s < NUM_STRIPES; s++) {
+            stripes[s] = new Stripe(slotsPerStripe);
+        }
+    }
+
+    private static long hash(long configId, long low, long high) {
+        long h = configId * 0x9e3779b97f4a7c15L;
+        h = (h ^ low) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ high) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+
+    /**
+     * Looks up the given puzzle.
+     * @param configId - identifies the config the puzzle was carved from.
+     * @param low - the clue mask of cells 0 to 63.
+     * @param high - the clue mask of cells 64 to 80.
+     * @return {@link #UNIQUE}, {@link #NOT_UNIQUE}, or {@link #UNKNOWN} if the
+     * puzzle is not cached.
+     */
+    public int get(long configId, long low, long high) {
+        long h = hash(configId, low, high);
+        Stripe stripe = stripes[(int) (h >>> (64 - STRIPE_BITS))];
+        int bucket = (int) h & (bucketsPerStripe - 1);
+        long key = high | OCCUPIED;
+        synchronized (stripe) {
+            long[] entries = stripe.entries;
+            for (int e = bucket * WAYS * 3, end = e + WAYS * 3; e < end; e += 3) {
+                if ((entries[e + 2] & ~UNIQUE_FLAG) == key && entries[e + 1] == low && entries[e] == configId) {
+                    hits.increment();
+                    return ((entries[e + 2] & UNIQUE_FLAG) != 0L) ? UNIQUE : NOT_UNIQUE;
+                }
+            }
+        }
+        misses.increment();
+        return UNKNOWN;
+    }
+
+    /**
+     * Records whether the given puzzle solves uniquely, replacing the oldest
+     * entry of its bucket if the bucket is full.
+     * @param configId - identifies the config the puzzle was carved from.
+     * @param low - the clue mask of cells 0 to 63.
+     * @param high - the clue mask of cells 64 to 80.
+     * @param unique - whether the puzzle has exactly one solution.
+     */
+    public void put(long configId, long low, long high, boolean unique) {
+        if ((high & FLAGS) != 0L) {
+            throw new IllegalArgumentException("Clue mask has bits past cell 80.");
+        }
+        long h = hash(configId, low, high);
+        Stripe stripe = stripes[(int) (h >>> (64 - STRIPE_BITS))];
+        int bucket = (int) h & (bucketsPerStripe - 1);
+        long key = high | OCCUPIED;
+        long value = key | (unique ? UNIQUE_FLAG : 0L);
+        synchronized (stripe) {
+            long[] entries = stripe.entries;
+            int start = bucket * WAYS * 3;
+            int free = -1;
+            for (int e = start, end = start + WAYS * 3; e < end; e += 3) {
+                long flagged = entries[e + 2];
+                if (flagged == 0L) {
+                    if (free < 0) {
+                        free = e;
+                    }
+                } else if ((flagged & ~UNIQUE_FLAG) == key && entries[e + 1] == low && entries[e] == configId) {
+                    entries[e + 2] = value;
+                    return;
+                }
+            }
+            if (free < 0) {
+                int victim = stripe.victims[bucket];
+                stripe.victims[bucket] = (byte) ((victim + 1) % WAYS);
+                free = start + victim * 3;
+            } else {
+                stripe.size++;
+            }
+            entries[free] = configId;
+            entries[free + 1] = low;
+            entries[free + 2] = value;
+        }
+    }
+
+    /** Returns the number of slots in the cache.*/
+    public int getCapacity() {
+        return stripes.length * bucketsPerStripe * WAYS;
+    }
+
+    /** Returns the number of entries in the cache.*/
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size;
+            }
+        }
+        return size;
+    }
+
+    /** Returns the number of bytes held by the cache's tables.*/
+    public long getMemoryBytes() {
+        long slots = getCapacity();
+        return slots * 3L * Long.BYTES + slots / WAYS;
+    }
+
+    /** Returns the number of lookups that found an entry.*/
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /** Returns the number of lookups that found no entry.*/
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /** Returns the fraction of lookups that found an entry, or 0 if there were none.*/
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return (total > 0L) ? (double) h / total : 0.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+            "UniquenessCache[%d/%d entries, %.1f MB, %d hits, %d misses, %.1f%% hit rate]",
+            size(), getCapacity(), getMemoryBytes() / (1024.0 * 1024.0),
+            getHits(), getMisses(), 100.0 * getHitRate()
+        );
+    }
+}
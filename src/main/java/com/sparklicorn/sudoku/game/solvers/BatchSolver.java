@@ -0,0 +1,134 @@
+package com.sparklicorn.sudoku.game.solvers;
+
+import static com.sparklicorn.sudoku.game.Board.*;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import com.sparklicorn.sudoku.game.Board;
+import com.sparklicorn.sudoku.game.BoardBatch;
+
+/**
+ * Solves batches of boards on a work-stealing pool.
+ * <br/><br/>
+ * A single slow puzzle submitted late stretches the wall time of the whole
+ * batch while the other threads sit idle. To avoid this, boards can be
+ * scheduled longest-processing-time first: each board's cost is estimated
+ * with a cheap propagation-only pass, and the most expensive boards are
+ * submitted first. The pool's work stealing then balances the cheap
+ * remainder across threads.
+ */
+public class BatchSolver {
+
+	/**
+	 * Estimates how expensive the given board is to solve.
+	 * <br/>The board's clues are propagated without guessing, then the
+	 * estimate is the base-2 logarithm of the remaining search space, i.e.
+	 * roughly the number of binary guesses the search may need to make.
+	 * Boards that are solved or contradicted by propagation alone cost 0.
+	 * @param board - the Sudoku board to estimate.
+	 * @return A non-negative cost estimate, larger for harder boards.
+	 */
+	public static double estimateCost(Board board) {
+		Board b = new Board(board);
+		Solver.reduce(b);
+
+		double cost = 0.0;
+		for (int i = 0; i < NUM_CELLS; i++) {
+			int numOpts = Integer.bitCount(b.getMaskAt(i));
+			if (numOpts == 0) {
+				return 0.0;
+			}
+			if (numOpts > 1) {
+				cost += LOG2[numOpts];
+			}
+		}
+		return cost;
+	}
+
+	private static final double[] LOG2 = new double[NUM_DIGITS + 1];
+	static {
+		for (int i = 1; i <= NUM_DIGITS; i++) {
+			LOG2[i] = Math.log(i) / Math.log(2);
+		}
+	}
+
+	/**
+	 * Returns the indices of the given boards ordered from most to least
+	 * expensive according to {@link #estimateCost(Board)}.
+	 */
+	public static Integer[] orderByCost(List<Board> boards) {
+		double[] costs = new double[boards.size()];
+		Integer[] order = new Integer[boards.size()];
+		for (int i = 0; i < costs.length; i++) {
+			costs[i] = estimateCost(boards.get(i));
+			order[i] = i;
+		}
+		Arrays.sort(order, Comparator.comparingDouble((Integer i) -> costs[i]).reversed());
+		return order;
+	}
+
+	/**
+	 * Solves all of the given boards on the given pool.
+	 * @param boards - the Sudoku boards to solve.
+	 * @param pool - the pool to solve the boards on.
+	 * @param longestFirst - whether to submit the boards in order of
+	 * decreasing estimated cost, rather than in the given order.
+	 * @return The solutions, in the same order as the given boards. Boards
+	 * without a solution have a null entry.
+	 */
+	public static Board[] solveAll(List<Board> boards, ForkJoinPool pool, boolean longestFirst) {
+		Integer[] order;
+		if (longestFirst) {
+			order = orderByCost(boards);
+		} else {
+			order = new Integer[boards.size()];
+			for (int i = 0; i < order.length; i++) {
+				order[i] = i;
+			}
+		}
+
+		Board[] solutions = new Board[boards.size()];
+		ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[order.length];
+		for (int n = 0; n < order.length; n++) {
+			int index = order[n];
+			tasks[n] = pool.submit(() -> {
+				solutions[index] = Solver.solve(boards.get(index));
+			});
+		}
+
+		for (ForkJoinTask<?> task : tasks) {
+			task.join();
+		}
+		return solutions;
+	}
+
+	/**
+	 * Solves every board of the given batch in place, in order, with one
+	 * {@link BitboardSolver} and one scratch board for the whole batch.
+	 * Boards without a solution are left unchanged.
+	 * @param batch - the boards to solve.
+	 * @param unsolved - if not null, the indices of the boards without a
+	 * solution are set in it.
+	 * @return The number of boards solved.
+	 */
+	public static int solveAll(BoardBatch batch, BitSet unsolved) {
+		BitboardSolver solver = new BitboardSolver();
+		Board scratch = new Board();
+		int solved = 0;
+		for (int index = 0, n = batch.size(); index < n; index++) {
+			batch.copyTo(index, scratch);
+			if (solver.countSolutions(scratch, 1) == 1) {
+				batch.set(index, solver.getLastSolution());
+				solved++;
+			} else if (unsolved != null) {
+				unsolved.set(index);
+			}
+		}
+		return solved;
+	}
+}
@@ -0,0 +1,591 @@
+package com.sparklicorn.sudoku.game.solvers;
+
+import static com.sparklicorn.sudoku.game.Board.*;
+
+import java.util.Random;
+
+import com.sparklicorn.sudoku.game.Board;
+
+/**
+ * Solves Sudoku boards using one 81-bit candidate set per digit.
+ * <br/><br/>
+ * Where {@link Board} stores a 9-bit candidate mask per cell, this engine
+ * stores, for each digit, the set of cells that may still hold it. Each set
+ * is split into three 27-bit band words, one per horizontal band of three
+ * rows, with cell <code>i</code> at bit <code>i % 27</code> of band
+ * <code>i / 27</code>. Rows and regions then lie within a single word and
+ * columns within one word per band, so the usual deductions reduce to a few
+ * ANDs and bit counts:
+ * <ul>
+ * <li>Naked singles: cells with exactly one candidate are found for a whole
+ * band at once by counting candidates bit-wise across the nine digits.</li>
+ * <li>Hidden singles: a digit with one possible cell in a row, column, or
+ * region.</li>
+ * <li>Locked candidates: a digit confined to one line within a region is
+ * removed from the rest of that line, and a digit confined to one region
+ * within a line is removed from the rest of that region.</li>
+ * </ul>
+ * When propagation stalls, the search guesses on the cell with the fewest
+ * candidates, saving and restoring the 30-word state on a preallocated
+ * stack.
+ * <br/><br/>
+ * {@link #randomSolution(Board, Random, boolean)} runs the same search with
+ * the guesses made in random order, stopping at the first solution, which
+ * makes it a cheap way to sample solved grids.
+ * <br/><br/>
+ * Instances are reusable but not thread-safe; the static methods create a
+ * new instance per call.
+ */
+public class BitboardSolver {
+
+	private static final int NUM_BANDS = 3;
+	private static final int CELLS_PER_BAND = NUM_CELLS / NUM_BANDS;
+	private static final int BAND_FULL = (1 << CELLS_PER_BAND) - 1;
+
+	/** Words of state: 9 digits x 3 bands of candidates, then 3 bands of solved cells.*/
+	private static final int STATE_SIZE = NUM_DIGITS * NUM_BANDS + NUM_BANDS;
+	private static final int SOLVED = NUM_DIGITS * NUM_BANDS;
+
+	/** Peers of each cell, 3 band words per cell.*/
+	private static final int[] PEERS = new int[NUM_CELLS * NUM_BANDS];
+
+	/** Rows, then columns, then regions, 3 band words per unit.*/
+	private static final int[] UNITS = new int[3 * NUM_DIGITS * NUM_BANDS];
+
+	/** Row r of a band, by r % 3.*/
+	private static final int[] BAND_ROWS = new int[NUM_ROWS_IN_REGION];
+	/** Column c within a single band word.*/
+	private static final int[] BAND_COLS = new int[NUM_DIGITS];
+	/** The region in stack s within a single band word.*/
+	private static final int[] BAND_BOXES = new int[NUM_COLS_IN_REGION];
+
+	static {
+		for (int r = 0; r < NUM_ROWS_IN_REGION; r++) {
+			BAND_ROWS[r] = ALL << (r * NUM_DIGITS);
+		}
+		for (int c = 0; c < NUM_DIGITS; c++) {
+			for (int r = 0; r < NUM_ROWS_IN_REGION; r++) {
+				BAND_COLS[c] |= 1 << (r * NUM_DIGITS + c);
+			}
+		}
+		for (int s = 0; s < NUM_COLS_IN_REGION; s++) {
+			for (int r = 0; r < NUM_ROWS_IN_REGION; r++) {
+				BAND_BOXES[s] |= 0b111 << (r * NUM_DIGITS + s * NUM_COLS_IN_REGION);
+			}
+		}
+
+		for (int n = 0; n < NUM_DIGITS; n++) {
+			setCells(UNITS, n, ROW_INDICES[n]);
+			setCells(UNITS, NUM_DIGITS + n, COL_INDICES[n]);
+			setCells(UNITS, 2 * NUM_DIGITS + n, REGION_INDICES[n]);
+		}
+		for (int i = 0; i < NUM_CELLS; i++) {
+			setCells(PEERS, i, PEER_INDICES[i]);
+		}
+	}
+
+	/** Natural log of each candidate count, for estimating subtree sizes.*/
+	private static final double[] LOG_COUNT = new double[NUM_DIGITS + 1];
+	static {
+		for (int n = 1; n <= NUM_DIGITS; n++) {
+			LOG_COUNT[n] = Math.log(n);
+		}
+	}
+
+	private static void setCells(int[] table, int entry, int[] cells) {
+		for (int i : cells) {
+			table[entry * NUM_BANDS + i / CELLS_PER_BAND] |= 1 << (i % CELLS_PER_BAND);
+		}
+	}
+
+	private final int[] state = new int[STATE_SIZE];
+	private final int[] saved = new int[(NUM_CELLS + 1) * STATE_SIZE];
+	private final int[] masks = new int[NUM_CELLS];
+	private int numSolutions;
+	private int limit;
+	private Board lastSolution;
+
+	private Random random;
+	private boolean weighted;
+	private final double[] weights = new double[NUM_DIGITS];
+
+	/**
+	 * Attempts to solve the given Sudoku board.
+	 * @param board - the Sudoku board to work on.
+	 * @return A new Board representing the first solution found, or null if
+	 * the board has no solution.
+	 */
+	public static Board solve(Board board) {
+		BitboardSolver solver = new BitboardSolver();
+		return (solver.countSolutions(board, 1) == 1) ? solver.lastSolution : null;
+	}
+
+	/**
+	 * Determines whether the given board has exactly one solution.
+	 * @param board - the Sudoku board to check.
+	 * @return True if the board has one unique solution; otherwise false.
+	 */
+	public static boolean solvesUniquely(Board board) {
+		return new BitboardSolver().countSolutions(board, 2) == 1;
+	}
+
+	/**
+	 * Counts the solutions of the given board, stopping early at the limit.
+	 * @param board - the Sudoku board to check.
+	 * @param limit - the maximum number of solutions to count.
+	 * @return The number of solutions found, at most <code>limit</code>.
+	 */
+	public int countSolutions(Board board, int limit) {
+		this.numSolutions = 0;
+		this.limit = limit;
+		this.lastSolution = null;
+		if (load(board)) {
+			search(0);
+		}
+		return numSolutions;
+	}
+
+	/**
+	 * Finds one solution of the given board, trying the candidates of each
+	 * guessed cell in random order and stopping at the first solution.
+	 * <br/><br/>
+	 * In plain mode each untried candidate is equally likely. Solutions that
+	 * sit under smaller subtrees then come up more often than others, so the
+	 * weighted mode instead estimates the size of the subtree under each
+	 * candidate, as the product of the candidate counts left after placing it
+	 * and propagating, and picks candidates in proportion to it. This costs a
+	 * propagation per candidate at each guess and samples solutions closer to
+	 * uniformly, though not exactly.
+	 * @param board - the Sudoku board to complete.
+	 * @param random - the source of randomness.
+	 * @param weighted - whether to weight guesses by estimated subtree size.
+	 * @return A new Board holding the solution found, or null if the board
+	 * has no solution.
+	 */
+	public Board randomSolution(Board board, Random random, boolean weighted) {
+		this.numSolutions = 0;
+		this.limit = 1;
+		this.lastSolution = null;
+		this.random = random;
+		this.weighted = weighted;
+		if (load(board)) {
+			randomSearch(0);
+		}
+		this.random = null;
+		return lastSolution;
+	}
+
+	/**
+	 * Returns the most recent solution found by this solver, or null if none
+	 * has been found.
+	 */
+	public Board getLastSolution() {
+		return lastSolution;
+	}
+
+	/**
+	 * Replaces this engine's state with the given board's candidates.
+	 * Cells holding a single digit are placed, removing that digit from
+	 * their peers; other cells keep only the candidates in their masks.
+	 * @param board - the board to import.
+	 * @return False if the board contradicts itself, e.g. a digit is placed
+	 * twice in a row, or a cell has no candidates.
+	 */
+	public boolean load(Board board) {
+		board.getMasks(masks);
+		for (int w = 0; w < SOLVED; w++) {
+			state[w] = BAND_FULL;
+		}
+		for (int b = 0; b < NUM_BANDS; b++) {
+			state[SOLVED + b] = 0;
+		}
+
+		boolean consistent = true;
+		for (int i = 0; i < NUM_CELLS; i++) {
+			int mask = masks[i];
+			if (mask == ALL) {
+				continue;
+			}
+			if (mask == 0) {
+				consistent = false;
+				continue;
+			}
+			int band = i / CELLS_PER_BAND;
+			int bit = 1 << (i % CELLS_PER_BAND);
+			for (int excluded = ALL & ~mask; excluded != 0; excluded &= excluded - 1) {
+				state[Integer.numberOfTrailingZeros(excluded) * NUM_BANDS + band] &= ~bit;
+			}
+		}
+		for (int i = 0; i < NUM_CELLS; i++) {
+			int mask = masks[i];
+			if (mask != 0 && (mask & (mask - 1)) == 0) {
+				int d = Integer.numberOfTrailingZeros(mask);
+				if ((state[d * NUM_BANDS + i / CELLS_PER_BAND] & (1 << (i % CELLS_PER_BAND))) == 0) {
+					consistent = false;
+				} else {
+					place(i, d);
+				}
+			}
+		}
+		return consistent;
+	}
+
+	/**
+	 * Writes this engine's candidates to the given board as cell masks.
+	 * @param board - the board to overwrite.
+	 * @return The given board, for convenience.
+	 */
+	public Board exportTo(Board board) {
+		for (int i = 0; i < NUM_CELLS; i++) {
+			masks[i] = getMaskAt(i);
+		}
+		board.setMasks(masks);
+		return board;
+	}
+
+	/** Returns a new Board with this engine's candidates.*/
+	public Board toBoard() {
+		return exportTo(new Board());
+	}
+
+	/**
+	 * Returns the candidates of the given cell as a {@link Board}-style mask.
+	 * @param index - the position on the board [0, 80].
+	 */
+	public int getMaskAt(int index) {
+		int band = index / CELLS_PER_BAND;
+		int shift = index % CELLS_PER_BAND;
+		int mask = 0;
+		for (int d = 0; d < NUM_DIGITS; d++) {
+			mask |= ((state[d * NUM_BANDS + band] >>> shift) & 1) << d;
+		}
+		return mask;
+	}
+
+	/**
+	 * Returns whether the given cell can still hold the given digit.
+	 * @param index - the position on the board [0, 80].
+	 * @param digit - the digit [1, 9].
+	 */
+	public boolean isCandidate(int index, int digit) {
+		return (state[(digit - 1) * NUM_BANDS + index / CELLS_PER_BAND] & (1 << (index % CELLS_PER_BAND))) != 0;
+	}
+
+	/**
+	 * Returns the number of cells in the given unit that can still hold the
+	 * given digit.
+	 * @param unit - rows are units [0, 8], columns [9, 17], regions [18, 26].
+	 * @param digit - the digit [1, 9].
+	 */
+	public int countPlacesInUnit(int unit, int digit) {
+		int d = (digit - 1) * NUM_BANDS;
+		int u = unit * NUM_BANDS;
+		return Integer.bitCount(state[d] & UNITS[u])
+			+ Integer.bitCount(state[d + 1] & UNITS[u + 1])
+			+ Integer.bitCount(state[d + 2] & UNITS[u + 2]);
+	}
+
+	/**
+	 * Applies naked singles, hidden singles, and locked candidates until
+	 * none of them makes progress.
+	 * @return False if a contradiction was found.
+	 */
+	public boolean propagate() {
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+
+			// Naked singles, a whole band at a time.
+			for (int b = 0; b < NUM_BANDS; b++) {
+				int open = BAND_FULL & ~state[SOLVED + b];
+				int once = 0;
+				int twice = 0;
+				for (int w = b; w < SOLVED; w += NUM_BANDS) {
+					twice |= once & state[w];
+					once |= state[w];
+				}
+				if ((open & ~once) != 0) {
+					return false;
+				}
+				for (int singles = open & once & ~twice; singles != 0; singles &= singles - 1) {
+					int bit = singles & -singles;
+					int d = 0;
+					while ((state[d * NUM_BANDS + b] & bit) == 0) {
+						if (++d == NUM_DIGITS) {
+							// Emptied by a single placed earlier in this pass.
+							return false;
+						}
+					}
+					place(b * CELLS_PER_BAND + Integer.numberOfTrailingZeros(bit), d);
+					changed = true;
+				}
+			}
+			if (changed) {
+				continue;
+			}
+
+			// Hidden singles.
+			for (int d = 0; d < NUM_DIGITS; d++) {
+				int w = d * NUM_BANDS;
+				for (int u = 0; u < UNITS.length; u += NUM_BANDS) {
+					int c0 = state[w] & UNITS[u];
+					int c1 = state[w + 1] & UNITS[u + 1];
+					int c2 = state[w + 2] & UNITS[u + 2];
+					int count = Integer.bitCount(c0) + Integer.bitCount(c1) + Integer.bitCount(c2);
+					if (count == 0) {
+						return false;
+					}
+					if (count == 1
+						&& ((c0 & state[SOLVED]) | (c1 & state[SOLVED + 1]) | (c2 & state[SOLVED + 2])) == 0) {
+						int b = (c0 != 0) ? 0 : (c1 != 0) ? 1 : 2;
+						int c = (c0 != 0) ? c0 : (c1 != 0) ? c1 : c2;
+						place(b * CELLS_PER_BAND + Integer.numberOfTrailingZeros(c), d);
+						changed = true;
+					}
+				}
+			}
+			if (changed) {
+				continue;
+			}
+
+			// Locked candidates.
+			for (int d = 0; d < NUM_DIGITS; d++) {
+				if (eliminateLocked(d * NUM_BANDS)) {
+					changed = true;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Applies pointing and claiming eliminations for the digit whose band
+	 * words start at <code>w</code>.
+	 * @return True if any candidate was removed.
+	 */
+	private boolean eliminateLocked(int w) {
+		boolean changed = false;
+		for (int b = 0; b < NUM_BANDS; b++) {
+			for (int s = 0; s < NUM_COLS_IN_REGION; s++) {
+				int box = BAND_BOXES[s];
+
+				// Region/row intersections lie within this band word.
+				for (int r = 0; r < NUM_ROWS_IN_REGION; r++) {
+					int row = BAND_ROWS[r];
+					int cands = state[w + b];
+					int inBox = cands & box;
+					int inRow = cands & row;
+					int strip = cands & row & box;
+					if (strip == 0) {
+						continue;
+					}
+					if (inBox == strip && (inRow & ~box) != 0) {
+						state[w + b] = cands & ~(row & ~box);
+						changed = true;
+					} else if (inRow == strip && (inBox & ~row) != 0) {
+						state[w + b] = cands & ~(box & ~row);
+						changed = true;
+					}
+				}
+
+				// Region/column intersections; columns span all three bands.
+				for (int c = s * NUM_COLS_IN_REGION; c < (s + 1) * NUM_COLS_IN_REGION; c++) {
+					int col = BAND_COLS[c];
+					int cands = state[w + b];
+					int strip = cands & col & box;
+					if (strip == 0) {
+						continue;
+					}
+					int b1 = (b + 1) % NUM_BANDS;
+					int b2 = (b + 2) % NUM_BANDS;
+					int elsewhere = (state[w + b1] | state[w + b2]) & col;
+					if ((cands & box) == strip && elsewhere != 0) {
+						state[w + b1] &= ~col;
+						state[w + b2] &= ~col;
+						changed = true;
+					} else if (elsewhere == 0 && (cands & box & ~col) != 0) {
+						state[w + b] = cands & ~(box & ~col);
+						changed = true;
+					}
+				}
+			}
+		}
+		return changed;
+	}
+
+	/** Places digit index <code>d</code> [0, 8] in the given cell.*/
+	private void place(int index, int d) {
+		int band = index / CELLS_PER_BAND;
+		int bit = 1 << (index % CELLS_PER_BAND);
+		for (int w = band; w < SOLVED; w += NUM_BANDS) {
+			state[w] &= ~bit;
+		}
+		int w = d * NUM_BANDS;
+		int p = index * NUM_BANDS;
+		state[w] &= ~PEERS[p];
+		state[w + 1] &= ~PEERS[p + 1];
+		state[w + 2] &= ~PEERS[p + 2];
+		state[w + band] |= bit;
+		state[SOLVED + band] |= bit;
+	}
+
+	/**
+	 * Returns the unsolved cell with the fewest candidates, or -1 if every
+	 * cell is solved.
+	 */
+	private int findBranchCell() {
+		int best = -1;
+		int bestCount = NUM_DIGITS + 1;
+		for (int b = 0; b < NUM_BANDS && bestCount > 2; b++) {
+			for (int open = BAND_FULL & ~state[SOLVED + b]; open != 0; open &= open - 1) {
+				int bit = open & -open;
+				int count = 0;
+				for (int w = b; w < SOLVED; w += NUM_BANDS) {
+					if ((state[w] & bit) != 0) {
+						count++;
+					}
+				}
+				if (count < bestCount) {
+					bestCount = count;
+					best = b * CELLS_PER_BAND + Integer.numberOfTrailingZeros(bit);
+					if (count == 2) {
+						break;
+					}
+				}
+			}
+		}
+		return best;
+	}
+
+	/** @return False if the search should stop.*/
+	private boolean search(int depth) {
+		if (!propagate()) {
+			return true;
+		}
+
+		int best = findBranchCell();
+		if (best < 0) {
+			numSolutions++;
+			lastSolution = toBoard();
+			return numSolutions < limit;
+		}
+
+		int offset = depth * STATE_SIZE;
+		System.arraycopy(state, 0, saved, offset, STATE_SIZE);
+		for (int options = getMaskAt(best); options != 0; options &= options - 1) {
+			place(best, Integer.numberOfTrailingZeros(options));
+			if (!search(depth + 1)) {
+				return false;
+			}
+			System.arraycopy(saved, offset, state, 0, STATE_SIZE);
+		}
+		return true;
+	}
+
+	/**
+	 * Like {@link #search(int)}, but tries candidates in random order and
+	 * stops at the first solution.
+	 * @return False if a solution was found.
+	 */
+	private boolean randomSearch(int depth) {
+		if (!propagate()) {
+			return true;
+		}
+
+		int best = findBranchCell();
+		if (best < 0) {
+			numSolutions++;
+			lastSolution = toBoard();
+			return false;
+		}
+
+		int offset = depth * STATE_SIZE;
+		System.arraycopy(state, 0, saved, offset, STATE_SIZE);
+		int options = getMaskAt(best);
+		while (options != 0) {
+			int d = weighted ? pickWeighted(best, options, offset) : pickUniform(options);
+			if (d < 0) {
+				break;
+			}
+			options &= ~(1 << d);
+			place(best, d);
+			if (!randomSearch(depth + 1)) {
+				return false;
+			}
+			System.arraycopy(saved, offset, state, 0, STATE_SIZE);
+		}
+		return true;
+	}
+
+	/** Returns the digit index of a random candidate in the given mask.*/
+	private int pickUniform(int options) {
+		for (int n = random.nextInt(Integer.bitCount(options)); n > 0; n--) {
+			options &= options - 1;
+		}
+		return Integer.numberOfTrailingZeros(options);
+	}
+
+	/**
+	 * Returns the digit index of a candidate of the given cell, picked in
+	 * proportion to the estimated size of the subtree under it. Each
+	 * candidate is placed and propagated, then the state is restored from
+	 * the saved copy at <code>offset</code>.
+	 * @return The digit index, or -1 if every candidate leads to a
+	 * contradiction.
+	 */
+	private int pickWeighted(int index, int options, int offset) {
+		double maxLog = Double.NEGATIVE_INFINITY;
+		for (int bits = options; bits != 0; bits &= bits - 1) {
+			int d = Integer.numberOfTrailingZeros(bits);
+			place(index, d);
+			weights[d] = propagate() ? estimateLogSize() : Double.NEGATIVE_INFINITY;
+			maxLog = Math.max(maxLog, weights[d]);
+			System.arraycopy(saved, offset, state, 0, STATE_SIZE);
+		}
+		if (maxLog == Double.NEGATIVE_INFINITY) {
+			return -1;
+		}
+
+		// Scale by the largest estimate so that the weights stay finite.
+		double total = 0.0;
+		for (int bits = options; bits != 0; bits &= bits - 1) {
+			int d = Integer.numberOfTrailingZeros(bits);
+			weights[d] = Math.exp(weights[d] - maxLog);
+			total += weights[d];
+		}
+		double target = random.nextDouble() * total;
+		int last = -1;
+		for (int bits = options; bits != 0; bits &= bits - 1) {
+			int d = Integer.numberOfTrailingZeros(bits);
+			if (weights[d] > 0.0) {
+				last = d;
+				target -= weights[d];
+				if (target < 0.0) {
+					return d;
+				}
+			}
+		}
+		return last;
+	}
+
+	/**
+	 * Returns the log of the product of the candidate counts of the unsolved
+	 * cells, an upper bound on the number of completions.
+	 */
+	private double estimateLogSize() {
+		double log = 0.0;
+		for (int b = 0; b < NUM_BANDS; b++) {
+			for (int open = BAND_FULL & ~state[SOLVED + b]; open != 0; open &= open - 1) {
+				int bit = open & -open;
+				int count = 0;
+				for (int w = b; w < SOLVED; w += NUM_BANDS) {
+					if ((state[w] & bit) != 0) {
+						count++;
+					}
+				}
+				log += LOG_COUNT[count];
+			}
+		}
+		return log;
+	}
+}
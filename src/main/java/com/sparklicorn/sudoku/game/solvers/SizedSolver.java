@@ -0,0 +1,376 @@
+package com.sparklicorn.sudoku.game.solvers;
+
+import com.sparklicorn.sudoku.game.BoardShape;
+import com.sparklicorn.sudoku.game.SizedBoard;
+
+/**
+ * Solves {@link SizedBoard}s of any supported size, such as 16x16 and 25x25.
+ * <br/><br/>
+ * The solver propagates naked singles through the shape's flat peer table,
+ * and hidden singles by scanning each unit once per round with two running
+ * masks: the digits seen at least once, and the digits seen at least twice.
+ * When neither finds anything, it looks for digits locked into the crossing
+ * of a region and a line, and removes them from the rest of the other.
+ * When propagation stalls it branches on the cell with the fewest
+ * candidates, or on a digit with two places left in a unit when no cell has
+ * only two candidates, saving the masks on a trail so that backtracking is a single
+ * array copy.
+ * <br/><br/>
+ * For 9x9 boards, {@link BitboardSolver} is faster; this solver trades
+ * that speed for working at every size.
+ * <br/><br/>
+ * Instances hold reusable scratch space for one shape and are not
+ * thread-safe; the static methods create a new instance per call.
+ */
+public class SizedSolver {
+
+	private final BoardShape shape;
+	private final int numCells;
+	private final int size;
+	private final int numPeers;
+	private final int all;
+	private final int[] peers;
+	private final int[] units;
+	private final int base;
+	private final int[] intersections;
+	private final int blockSize;
+
+	/** Current candidate masks.*/
+	private final int[] masks;
+
+	/** Saved candidate masks, numCells per search depth.*/
+	private int[] trail;
+
+	/** Worklist of cells whose value just became fixed.*/
+	private final int[] queue;
+
+	private int numSolutions;
+	private int limit;
+	private SizedBoard lastSolution;
+
+	/**
+	 * Creates a solver for boards of the given shape.
+	 * @param shape - the size of the boards to solve.
+	 */
+	public SizedSolver(BoardShape shape) {
+		this.shape = shape;
+		this.numCells = shape.getNumCells();
+		this.size = shape.getSize();
+		this.numPeers = shape.getNumPeers();
+		this.all = shape.getAll();
+		this.peers = shape.getPeers();
+		this.units = shape.getUnits();
+		this.base = shape.getBase();
+		this.intersections = shape.getIntersections();
+		this.blockSize = shape.getIntersectionBlockSize();
+		this.masks = new int[numCells];
+		this.trail = new int[numCells * 16];
+		this.queue = new int[numCells];
+	}
+
+	/**
+	 * Attempts to solve the given Sudoku board.
+	 * @param board - the Sudoku board to work on.
+	 * @return A new board representing the first solution found, or null if
+	 * the board has no solution.
+	 */
+	public static SizedBoard solve(SizedBoard board) {
+		SizedSolver solver = new SizedSolver(board.getShape());
+		return (solver.countSolutions(board, 1) == 1) ? solver.lastSolution : null;
+	}
+
+	/**
+	 * Determines whether the given board has exactly one solution.
+	 * @param board - the Sudoku board to check.
+	 * @return True if the board has one unique solution; otherwise false.
+	 */
+	public static boolean solvesUniquely(SizedBoard board) {
+		return new SizedSolver(board.getShape()).countSolutions(board, 2) == 1;
+	}
+
+	/**
+	 * Counts the solutions of the given board, stopping early at the limit.
+	 * @param board - the Sudoku board to check. Must have this solver's shape.
+	 * @param limit - the maximum number of solutions to count.
+	 * @return The number of solutions found, at most <code>limit</code>.
+	 */
+	public int countSolutions(SizedBoard board, int limit) {
+		if (board.getShape() != shape) {
+			throw new IllegalArgumentException("Expected a board of " + shape + ", got " + board.getShape());
+		}
+		this.numSolutions = 0;
+		this.limit = limit;
+		this.lastSolution = null;
+
+		board.getMasks(masks);
+		int tail = 0;
+		for (int i = 0; i < numCells; i++) {
+			int mask = masks[i];
+			if (mask == 0) {
+				return 0;
+			}
+			if ((mask & (mask - 1)) == 0) {
+				queue[tail++] = i;
+			}
+		}
+		if (propagate(tail)) {
+			search(0);
+		}
+		return numSolutions;
+	}
+
+	/**
+	 * Returns the most recent solution found by this solver, or null if none
+	 * has been found.
+	 */
+	public SizedBoard getLastSolution() {
+		return lastSolution;
+	}
+
+	/**
+	 * Removes the digits of the queued cells from their peers, then fixes
+	 * hidden singles, until neither makes progress.
+	 * @param tail - the number of cells in the queue.
+	 * @return False if a contradiction was found.
+	 */
+	private boolean propagate(int tail) {
+		int head = 0;
+		while (true) {
+			while (head < tail) {
+				int cell = queue[head++];
+				int mask = masks[cell];
+				for (int p = cell * numPeers, end = p + numPeers; p < end; p++) {
+					int peer = peers[p];
+					int peerMask = masks[peer];
+					if ((peerMask & mask) != 0) {
+						peerMask &= ~mask;
+						if (peerMask == 0) {
+							return false;
+						}
+						masks[peer] = peerMask;
+						if ((peerMask & (peerMask - 1)) == 0) {
+							queue[tail++] = peer;
+						}
+					}
+				}
+			}
+
+			int found = tail;
+			for (int u = 0, n = shape.getNumUnits(); u < n; u++) {
+				int start = u * size;
+				int end = start + size;
+				int once = 0;
+				int twice = 0;
+				for (int j = start; j < end; j++) {
+					int mask = masks[units[j]];
+					twice |= once & mask;
+					once |= mask;
+				}
+				if (once != all) {
+					return false;
+				}
+				for (int hidden = once & ~twice; hidden != 0; hidden &= hidden - 1) {
+					int bit = hidden & -hidden;
+					for (int j = start; j < end; j++) {
+						int cell = units[j];
+						int mask = masks[cell];
+						if ((mask & bit) != 0) {
+							if (mask != bit) {
+								masks[cell] = bit;
+								queue[tail++] = cell;
+							}
+							break;
+						}
+					}
+				}
+			}
+			if (tail > found) {
+				continue;
+			}
+
+			int eliminated = eliminateLocked(tail);
+			if (eliminated < 0) {
+				return false;
+			}
+			if (eliminated == 0) {
+				return true;
+			}
+			tail = eliminated;
+		}
+	}
+
+	/**
+	 * Finds digits that are confined to the crossing of a region and a line
+	 * within one of the two, and removes them from the rest of the other.
+	 * Cells left with a single candidate are added to the queue.
+	 * @param tail - the number of cells in the queue.
+	 * @return The new number of cells in the queue, 0 if nothing was
+	 * removed, or -1 if a contradiction was found.
+	 */
+	private int eliminateLocked(int tail) {
+		boolean changed = false;
+		for (int b = 0, n = intersections.length; b < n; b += blockSize) {
+			int sharedEnd = b + base;
+			int regionEnd = sharedEnd + size - base;
+			int lineEnd = regionEnd + size - base;
+
+			int shared = 0;
+			for (int j = b; j < sharedEnd; j++) {
+				shared |= masks[intersections[j]];
+			}
+			int regionRest = 0;
+			for (int j = sharedEnd; j < regionEnd; j++) {
+				regionRest |= masks[intersections[j]];
+			}
+			int lineRest = 0;
+			for (int j = regionEnd; j < lineEnd; j++) {
+				lineRest |= masks[intersections[j]];
+			}
+
+			// Digits the region can only place in the crossing are taken
+			// from the rest of the line, and vice versa.
+			int pointing = shared & ~regionRest & lineRest;
+			int claiming = shared & ~lineRest & regionRest;
+			if (pointing != 0) {
+				tail = remove(pointing, regionEnd, lineEnd, tail);
+				changed = true;
+			}
+			if (claiming != 0 && tail >= 0) {
+				tail = remove(claiming, sharedEnd, regionEnd, tail);
+				changed = true;
+			}
+			if (tail < 0) {
+				return -1;
+			}
+		}
+		return changed ? tail : 0;
+	}
+
+	/**
+	 * Removes the given digits from the cells of the intersection table in
+	 * the given range.
+	 * @return The new number of cells in the queue, or -1 if a cell was left
+	 * without candidates.
+	 */
+	private int remove(int digits, int from, int to, int tail) {
+		for (int j = from; j < to; j++) {
+			int cell = intersections[j];
+			int mask = masks[cell];
+			if ((mask & digits) != 0) {
+				mask &= ~digits;
+				if (mask == 0) {
+					return -1;
+				}
+				masks[cell] = mask;
+				if ((mask & (mask - 1)) == 0) {
+					queue[tail++] = cell;
+				}
+			}
+		}
+		return tail;
+	}
+
+	/**
+	 * Branches on the cell with the fewest candidates, or if every open cell
+	 * has more than two, on a digit with only two places left in some unit.
+	 * Recurses until the board is full.
+	 * @param depth - the number of branches taken so far.
+	 * @return False if the search should stop.
+	 */
+	private boolean search(int depth) {
+		int best = -1;
+		int bestCount = Integer.MAX_VALUE;
+		for (int i = 0; i < numCells; i++) {
+			int count = Integer.bitCount(masks[i]);
+			if (count > 1 && count < bestCount) {
+				best = i;
+				bestCount = count;
+				if (count == 2) {
+					break;
+				}
+			}
+		}
+
+		if (best < 0) {
+			numSolutions++;
+			lastSolution = new SizedBoard(shape);
+			lastSolution.setMasks(masks);
+			return numSolutions < limit;
+		}
+
+		int unitStart = -1;
+		int digit = 0;
+		if (bestCount > 2) {
+			unitStart = findPair();
+			if (unitStart >= 0) {
+				digit = pairDigit;
+			}
+		}
+
+		int offset = depth * numCells;
+		if (offset + numCells > trail.length) {
+			int[] newTrail = new int[trail.length * 2];
+			System.arraycopy(trail, 0, newTrail, 0, trail.length);
+			trail = newTrail;
+		}
+		System.arraycopy(masks, 0, trail, offset, numCells);
+
+		if (unitStart >= 0) {
+			for (int j = unitStart, end = unitStart + size; j < end; j++) {
+				int cell = units[j];
+				if ((masks[cell] & digit) == 0) {
+					continue;
+				}
+				masks[cell] = digit;
+				queue[0] = cell;
+				if (propagate(1) && !search(depth + 1)) {
+					return false;
+				}
+				System.arraycopy(trail, offset, masks, 0, numCells);
+			}
+			return true;
+		}
+
+		for (int bits = masks[best]; bits != 0; bits &= bits - 1) {
+			masks[best] = bits & -bits;
+			queue[0] = best;
+			if (propagate(1) && !search(depth + 1)) {
+				return false;
+			}
+			System.arraycopy(trail, offset, masks, 0, numCells);
+		}
+		return true;
+	}
+
+	/** The digit bit found by the last successful {@link #findPair()}.*/
+	private int pairDigit;
+
+	/**
+	 * Looks for a digit with exactly two open places in some unit, counting
+	 * places with three running masks per unit.
+	 * @return The start of the unit in the unit table, with the digit's bit
+	 * in {@link #pairDigit}, or -1 if there is none.
+	 */
+	private int findPair() {
+		for (int u = 0, n = shape.getNumUnits(); u < n; u++) {
+			int start = u * size;
+			int once = 0;
+			int twice = 0;
+			int thrice = 0;
+			for (int j = start, end = start + size; j < end; j++) {
+				int mask = masks[units[j]];
+				if ((mask & (mask - 1)) != 0) {
+					thrice |= twice & mask;
+					twice |= once & mask;
+					once |= mask;
+				}
+			}
+			int pairs = twice & ~thrice;
+			if (pairs != 0) {
+				pairDigit = pairs & -pairs;
+				return start;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,244 @@
+package com.sparklicorn.sudoku.game.solvers;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import com.sparklicorn.sudoku.game.Board;
+import com.sparklicorn.sudoku.util.Callback;
+
+/**
+ * Records the steps a solver takes into a preallocated ring buffer.
+ * <br/><br/>
+ * Each event is packed into a single <code>int</code>:
+ * <ul>
+ * <li>bits 0-2: the event type, e.g. {@link #ASSIGN}.</li>
+ * <li>bits 3-9: the cell index [0, 80].</li>
+ * <li>bits 10-13: the digit [1, 9], or 0 if not applicable.</li>
+ * <li>bits 14-21: the search depth at which the event happened.</li>
+ * </ul>
+ * Recording never allocates. Once the buffer is full, the oldest events are
+ * overwritten, so the most recent steps are always available. A recorder can
+ * be written to a file at any time with {@link #dump(File)} and read back
+ * with {@link #read(File)}, and {@link #replay(Board, Callback)} steps
+ * through the recorded events on a board, e.g. for playback in the GUI.
+ * <br/><br/>
+ * Recording is opt-in: solvers hold a null recorder by default, and the
+ * untaken null check costs nothing once compiled.
+ */
+public final class SolveRecorder {
+
+	/** A cell was left with a single candidate by propagation.*/
+	public static final int ASSIGN = 1;
+	/** A candidate digit was removed from a cell.*/
+	public static final int ELIMINATE = 2;
+	/** The search guessed a digit for a cell.*/
+	public static final int GUESS = 3;
+	/** The search undid its most recent guess to try another.*/
+	public static final int BACKTRACK = 4;
+	/** The search found a solution.*/
+	public static final int SOLUTION = 5;
+	/**
+	 * The search moved on to a board that was waiting in its queue; the cell
+	 * was set to the digit, or emptied if the digit is 0. Breadth-first
+	 * searches record these ahead of the guess that made the board.
+	 */
+	public static final int RESTORE = 6;
+
+	private static final int FILE_MAGIC = 0x53524543; // "SREC"
+	private static final int FILE_VERSION = 1;
+
+	private final int[] events;
+	private final int indexMask;
+	private long numRecorded;
+
+	/**
+	 * Creates a recorder that keeps the given number of most recent events.
+	 * @param capacity - the number of events to keep; rounded up to the next
+	 * power of two.
+	 */
+	public SolveRecorder(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive.");
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size <<= 1;
+		}
+		events = new int[size];
+		indexMask = size - 1;
+		numRecorded = 0L;
+	}
+
+	public static int encode(int type, int index, int digit, int depth) {
+		return type | (index << 3) | (digit << 10) | (Math.min(depth, 0xff) << 14);
+	}
+
+	public static int typeOf(int event) {
+		return event & 0x7;
+	}
+
+	public static int indexOf(int event) {
+		return (event >>> 3) & 0x7f;
+	}
+
+	public static int digitOf(int event) {
+		return (event >>> 10) & 0xf;
+	}
+
+	public static int depthOf(int event) {
+		return (event >>> 14) & 0xff;
+	}
+
+	/**
+	 * Records an event.
+	 * @param type - the event type, e.g. {@link #GUESS}.
+	 * @param index - the cell the event applies to.
+	 * @param digit - the digit the event applies to, or 0.
+	 * @param depth - the current search depth.
+	 */
+	public void record(int type, int index, int digit, int depth) {
+		events[(int) numRecorded & indexMask] = encode(type, index, digit, depth);
+		numRecorded++;
+	}
+
+	/** Returns the maximum number of events kept.*/
+	public int getCapacity() {
+		return events.length;
+	}
+
+	/** Returns the number of events currently held, at most the capacity.*/
+	public int size() {
+		return (int) Math.min(numRecorded, events.length);
+	}
+
+	/** Returns the total number of events recorded, including overwritten ones.*/
+	public long getNumRecorded() {
+		return numRecorded;
+	}
+
+	/** Returns whether older events have been overwritten.*/
+	public boolean hasOverflowed() {
+		return numRecorded > events.length;
+	}
+
+	/**
+	 * Returns a held event, where 0 is the oldest held event.
+	 * @param n - the event position in [0, size()).
+	 */
+	public int getEvent(int n) {
+		if (n < 0 || n >= size()) {
+			throw new IndexOutOfBoundsException("Event " + n + " is not held.");
+		}
+		return events[(int) (numRecorded - size() + n) & indexMask];
+	}
+
+	/** Discards all recorded events.*/
+	public void clear() {
+		numRecorded = 0L;
+	}
+
+	/**
+	 * Writes the held events, oldest first, to the given stream.
+	 * The stream is not closed.
+	 */
+	public void dump(OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(out);
+		int size = size();
+		data.writeInt(FILE_MAGIC);
+		data.writeInt(FILE_VERSION);
+		data.writeLong(numRecorded);
+		data.writeInt(size);
+		for (int n = 0; n < size; n++) {
+			data.writeInt(getEvent(n));
+		}
+		data.flush();
+	}
+
+	/** Writes the held events, oldest first, to the given file.*/
+	public void dump(File file) throws IOException {
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+			dump(out);
+		}
+	}
+
+	/**
+	 * Reads events previously written by {@link #dump(OutputStream)}.
+	 * @return A new recorder holding exactly the events read.
+	 */
+	public static SolveRecorder read(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+		if (data.readInt() != FILE_MAGIC || data.readInt() != FILE_VERSION) {
+			throw new IOException("Not a solve recording.");
+		}
+		data.readLong(); // total recorded by the original recorder
+		int size = data.readInt();
+		SolveRecorder result = new SolveRecorder(Math.max(size, 1));
+		for (int n = 0; n < size; n++) {
+			result.events[n] = data.readInt();
+		}
+		result.numRecorded = size;
+		return result;
+	}
+
+	/** Reads events previously written by {@link #dump(File)}.*/
+	public static SolveRecorder read(File file) throws IOException {
+		try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+			return read(in);
+		}
+	}
+
+	/**
+	 * Applies the held events in order to the given board, calling back after
+	 * each one with the board in its updated state.
+	 * <br/>The board should be the one the recording started from. If older
+	 * events were overwritten, the replay will not match the original solve.
+	 * @param board - the board to apply events to; modified in place.
+	 * @param callback - called after each event.
+	 */
+	public void replay(Board board, Callback<Board> callback) {
+		Deque<int[]> guesses = new ArrayDeque<>();
+		int size = size();
+		for (int n = 0; n < size; n++) {
+			int event = getEvent(n);
+			int index = indexOf(event);
+			int digit = digitOf(event);
+			switch (typeOf(event)) {
+				case GUESS:
+					guesses.push(board.getMasks(new int[Board.NUM_CELLS]));
+					board.setValueAt(index, digit);
+					break;
+				case ASSIGN:
+					board.setValueAt(index, digit);
+					break;
+				case ELIMINATE:
+					board.setMaskAt(index, board.getMaskAt(index) & ~(1 << (digit - 1)));
+					break;
+				case RESTORE:
+					if (digit > 0) {
+						board.setValueAt(index, digit);
+					} else {
+						board.setMaskAt(index, Board.ALL);
+					}
+					break;
+				case BACKTRACK:
+					if (!guesses.isEmpty()) {
+						board.setMasks(guesses.pop());
+					}
+					break;
+				default:
+					break;
+			}
+			callback.call(board);
+		}
+	}
+}
@@ -1,14 +1,13 @@
 package com.sparklicorn.sudoku.game.solvers;
 
 import java.util.ArrayDeque;
-import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Queue;
 import java.util.Set;
-import java.util.Stack;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
 
 import static com.sparklicorn.sudoku.game.Board.*;
 
@@ -36,14 +35,62 @@ public class Solver {
 	 * @return A new ISudokuBoard representing the puzzle solution.
 	 */
 	public static Board solve(Board board) {
+		return solve(board, () -> false);
+	}
+
+	private static Board solve(Board board, BooleanSupplier cancelled) {
 		Board[] result = new Board[1];
 		searchForSolution(board, (b) -> {
 			result[0] = b;
 			return false;
-		});
+		}, cancelled);
 		return result[0];
 	}
 
+	/**
+	 * Attempts to solve the given Sudoku board, recording every step taken
+	 * into the given recorder. The search is the same as {@link #solve(Board)}.
+	 * @param board - the Sudoku board to work on.
+	 * @param recorder - receives the steps taken; see {@link SolveRecorder}.
+	 * @return A new Board representing the puzzle solution, or null if no
+	 * solution was found.
+	 */
+	public static Board solve(Board board, SolveRecorder recorder) {
+		Board[] result = new Board[1];
+		searchForSolution(board, (b) -> {
+			result[0] = b;
+			return false;
+		}, () -> false, recorder);
+		return result[0];
+	}
+
+	/**
+	 * Attempts to solve the given board under the given rules, which may
+	 * include variants such as diagonal or anti-knight constraints.
+	 * @param board - the Sudoku board to work on.
+	 * @param model - the rules the solution must satisfy.
+	 * @return A new Board representing the puzzle solution, or null if no
+	 * solution was found.
+	 */
+	public static Board solve(Board board, ConstraintModel model) {
+		SolverSession session = new SolverSession(model);
+		session.reset(board);
+		return session.solve();
+	}
+
+	/**
+	 * Attempts to solve the given Sudoku board on the given executor.
+	 * <br/>Cancelling the returned future stops the search at its next step.
+	 * The board should not be modified until the future completes.
+	 * @param board - the Sudoku board to work on.
+	 * @param executor - the executor to run the search on.
+	 * @return A future completed with the first solution found, or null if
+	 * no solution was found.
+	 */
+	public static CompletableFuture<Board> solveAsync(Board board, Executor executor) {
+		return AsyncUtil.supplyCancellable((cancelled) -> solve(board, cancelled), executor);
+	}
+
 	/**
 	 * Attempts to solve the given Sudoku board.
 	 * <br/>This may take a long time, and possibly never return, depending on
@@ -55,7 +102,6 @@ public class Solver {
 	public static Set<Board> getAllSolutions(Board board) {
 		HashSet<Board> result = new HashSet<>();
 		searchForSolution(board, (b) -> {
-			//System.out.println("found solution: " + b.getSimplifiedString());
 			result.add(b);
 			return true;
 		});
@@ -71,7 +117,7 @@ public class Solver {
 	 * @return A set containing all the solutions for the given Sudoku board.
 	 */
 	public static void findAllSolutions(Board board, Callback<Board> callback) {
-		searchForSolution3(board, (b) -> {
+		searchForSolution(board, (b) -> {
 			if (callback != null) {
 				callback.call(b);
 			}
@@ -96,7 +142,6 @@ public class Solver {
 		//Search returns true when the search is exhausted.
 		AtomicBoolean result = new AtomicBoolean(false);
 		searchForSolution(board, (b) -> {
-			//System.out.println(b.getSimplifiedString());
 			result.set(b.equals(solution));
 			return result.get();
 		});
@@ -104,219 +149,109 @@ public class Solver {
 	}
 
 	private static boolean searchForSolution(Board board, SolutionFoundCallback p) {
-		//This will be reused and repopulated by board.getCandidates(list) to reduce overhead.
-		List<Integer> candidates = new ArrayList<>(9);
-		Queue<Board> q = new ArrayDeque<>();
-		q.offer(new Board(board));
-
-		while (!q.isEmpty()) {
-			Board b = q.poll();
-
-			if (!b.isFull()) {
-				reduce(b);
-			}
-
-			if (b.isFull()) {
-				if (!p.call(b)) {
-					return false;
-				}
-			} else {
-				int index = pickEmptyCell(b);
-				if (index >= 0) {
-					for (Board c : getCandidateBoards(b, index, candidates)) {
-						q.offer(c);
-					}
-					//putCellCandidatesInQueue(b, index, q, candidates);
-				}
-			}
-		}
-
-		return true;
+		return searchForSolution(board, p, () -> false);
 	}
 
-	private static class Node<T> {
-		T data;
-		List<Node<T>> nextsUnivisited;
-		boolean visited;
-		boolean gen;
-		Node(T data) {
-			this.data = data;
-			this.visited = false;
-			this.nextsUnivisited = new ArrayList<>();
-			gen = false;
-		}
-		T getData() {
-			return data;
-		}
-		int getSize() {
-			return nextsUnivisited.size();
-		}
-		Node<T> getNextUnvisited() {
-			if (nextsUnivisited.isEmpty()) {
-				return null;
-			}
-			return nextsUnivisited.remove(nextsUnivisited.size() - 1);
-		}
-		void visit() {
-			this.visited = true;
-		}
-		boolean addUnvisited(Node<T> neighbor) {
-			gen = true;
-			return nextsUnivisited.add(neighbor);
-		}
-		void kill() {
-			nextsUnivisited = null;
-			data = null;
-		}
+	private static boolean searchForSolution(Board board, SolutionFoundCallback p, BooleanSupplier cancelled) {
+		return searchForSolution(board, p, cancelled, null);
 	}
 
-	private static boolean searchForSolution2(Board board, SolutionFoundCallback p) {
-
-		List<Integer> candidates = new ArrayList<>(9);
-		Stack<Node<Board>> stack = new Stack<>();
-
-		HashSet<Board> solutions = new HashSet<>();
-
-		Board _board = board.copy();
-		reduce(_board);
-		Node<Board> startNode = new Node<>(_board);
-		startNode.visit();
-
-		stack.push(startNode);
-
-		int[] masks = new int[Board.NUM_CELLS];
-
-		search: while (!stack.empty()) {
-			Node<Board> node = stack.peek();
-			Board b = node.getData();
-
-			System.out.println("Checking " + b.getSimplifiedString());
+	/**
+	 * @param recorder - receives the steps taken, or null to record nothing.
+	 */
+	private static boolean searchForSolution(
+		Board board,
+		SolutionFoundCallback p,
+		BooleanSupplier cancelled,
+		SolveRecorder recorder
+	) {
+		//The frontier holds packed boards. Propagation recomputes every
+		//unresolved cell's candidates from the resolved ones, so nothing is
+		//lost by dropping candidate masks while a board waits in the queue.
+		Queue<PackedBoard> q = new ArrayDeque<>();
+		Board b = new Board(board);
+		boolean first = true;
+
+		//When recording, each queued board's encoded guess waits in a ring
+		//that runs in step with the queue, and shown tracks the board that
+		//replaying the events so far produces.
+		int[] guesses = null;
+		int guessHead = 0;
+		int guessCount = 0;
+		int[] shown = null;
+		int[] beforeGuess = null;
+		int guess = 0;
+		int depth = 0;
+		if (recorder != null) {
+			guesses = new int[64];
+			shown = board.getMasks(new int[NUM_CELLS]);
+			beforeGuess = new int[NUM_CELLS];
+			recordRestores(recorder, board, -1, shown, 0);
+		}
 
-			if (b.isFull()) {
-				if (!solutions.contains(b)) {
-					if (!p.call(b)) {
-						return false;
-					}
-				}
-				solutions.add(b);
+		while (first || !q.isEmpty()) {
+			if (cancelled.getAsBoolean()) {
+				return false;
+			}
 
-				stack.pop();
-				node.kill();
-				b.kill();
+			//The given board is searched as-is, before anything is packed.
+			if (first) {
+				first = false;
 			} else {
-
-				if (node.gen) {
-					if (node.getSize() > 0) {
-						Node<Board> next = node.getNextUnvisited();
-						next.visit();
-						stack.push(next);
-					} else {
-						stack.pop();
-						node.kill();
-						b.kill();
-					}
-
-				} else {
-					//int count = 0;
-					for (int i = 0; i < Board.NUM_CELLS; i++) {
-						if (b.getValueAt(i) == 0) {
-							candidates.clear();
-							for (Board c : getCandidateBoards(b, i, candidates)) {
-								reduce(c);
-								boolean hasZero = false;
-								for (int rawValue : c.getMasks(masks)) {
-									if (rawValue == 0) {
-										hasZero = true;
-										//System.out.println("Board has zero.");
-										break;
-									}
-								}
-								if (!hasZero && c.isValid()) {
-									node.addUnvisited(new Node<>(c));
-									//count++;
-								} else {
-									stack.pop();
-									node.kill();
-									b.kill();
-									continue search;
-								}
-							}
-						}
-					}
-					node.gen = true;
-					//System.out.println("Generated " + count + " neighbors.");
-
-					if (node.getSize() > 0) {
-						Node<Board> next = node.getNextUnvisited();
-						next.visit();
-						stack.push(next);
-					} else {
-						stack.pop();
-						node.kill();
-						b.kill();
-					}
+				q.poll().unpackInto(b);
+				if (recorder != null) {
+					guess = guesses[guessHead];
+					guessHead = (guessHead + 1) & (guesses.length - 1);
+					guessCount--;
+					depth = SolveRecorder.depthOf(guess);
+					int index = SolveRecorder.indexOf(guess);
+					recordRestores(recorder, b, index, shown, depth);
+					System.arraycopy(shown, 0, beforeGuess, 0, NUM_CELLS);
+					recorder.record(SolveRecorder.GUESS, index, SolveRecorder.digitOf(guess), depth);
 				}
 			}
-		}
 
-		return true;
-	}
-
-	private static <T> boolean isheap(List<T> list, Comparator<T> comparator) {
-		for (int i = 1; i < list.size(); i++) {
-			if (comparator.compare(list.get(i), list.get((i - 1) / 2)) < 0) {
-				return false;
-			}
-		}
-		return true;
-	}
-
-	//use priorityQueue, where less empty spaces = higher priority
-	private static boolean searchForSolution3(Board board, SolutionFoundCallback p) {
-		//This will be reused and repopulated by board.getCandidates(list)
-		//	to reduce overhead.
-		List<Integer> candidates = new ArrayList<>(9);
-		Comparator<Board> comparator = (Board b1, Board b2) -> {
-			return b2.getNumClues() - b1.getNumClues();
-		};
-		PriorityQueue<Board> q = new PriorityQueue<>(comparator);
-		HashSet<Board> solutions = new HashSet<>();
-		//int[] masks = new int[Board.NUM_CELLS];
-		q.offer(board.copy());
-
-		while (!q.isEmpty()) {
-			Board b = q.poll();
-
-			//System.out.print(q.size() + " Checking " + b.getSimplifiedString());
-
-			//ArrayList<Board> heap = new ArrayList<>(q);
-			//if (!isheap(heap, comparator)) {
-			//	System.out.println();
-			//	System.out.println("HEAP BROKEN");
-			//	return false;
-			//}
-
-			if (!b.isValid()) {
-				//System.out.println(" [INVALID]");
+			if (!b.isFull() && (propagate(b, recorder, depth) & CONTRADICTION) != 0) {
+				if (recorder != null && depth > 0) {
+					recorder.record(
+						SolveRecorder.BACKTRACK,
+						SolveRecorder.indexOf(guess),
+						SolveRecorder.digitOf(guess),
+						depth
+					);
+					System.arraycopy(beforeGuess, 0, shown, 0, NUM_CELLS);
+				}
 				continue;
 			}
+			if (recorder != null) {
+				b.getMasks(shown);
+			}
 
 			if (b.isFull()) {
-				if (solutions.add(b)) {
-					//System.out.println(" [SOLUTION FOUND]");
-					if (!p.call(b)) {
-						return false;
-					}
+				if (recorder != null) {
+					recorder.record(SolveRecorder.SOLUTION, 0, 0, depth);
+				}
+				if (!p.call(new Board(b))) {
+					return false;
 				}
-
 			} else {
-				for (int i = 0; i < Board.NUM_CELLS; i++) {
-					if (b.getValueAt(i) == 0) {
-						for (Board c : getCandidateBoards(b, i, candidates)) {
-							reduce(c);
-							q.offer(c);
+				int index = pickEmptyCell(b);
+				if (index >= 0) {
+					int mask = b.getMaskAt(index);
+					for (int bits = mask; bits != 0; bits &= bits - 1) {
+						b.setMaskAt(index, bits & -bits);
+						q.offer(new PackedBoard(b));
+						if (recorder != null) {
+							if (guessCount == guesses.length) {
+								guesses = growRing(guesses, guessHead);
+								guessHead = 0;
+							}
+							guesses[(guessHead + guessCount++) & (guesses.length - 1)] = SolveRecorder.encode(
+								SolveRecorder.GUESS, index, decode(bits & -bits), depth + 1
+							);
 						}
 					}
+					b.setMaskAt(index, mask);
 				}
 			}
 		}
@@ -324,65 +259,41 @@ public class Solver {
 		return true;
 	}
 
-	//Use arraylist for queue, sort after inserting
-	private static boolean searchForSolution4(Board board, SolutionFoundCallback p) {
-		//This will be reused and repopulated by board.getCandidates(list)
-		//	to reduce overhead.
-		//List<Integer> candidates = new ArrayList<>(9);
-		Comparator<Board> comparator = (Board b1, Board b2) -> {
-			return b2.getNumClues() - b1.getNumClues();
-		};
-		ArrayList<Board> q = new ArrayList<>();
-		//HashSet<Board> solutions = new HashSet<>();
-		//int[] masks = new int[Board.NUM_CELLS];
-		q.add(board.copy());
-
-		while (!q.isEmpty()) {
-			Board b = q.remove(0);
-
-			System.out.print(q.size() + " Checking " + b.getSimplifiedString());
-
-			//ArrayList<Board> heap = new ArrayList<>(q);
-			//if (!isheap(heap, comparator)) {
-			//	System.out.println();
-			//	System.out.println("HEAP BROKEN");
-			//	return false;
-			//}
-
-			if (!b.isValid()) {
-				System.out.println(" [INVALID]");
-				continue;
-			}
-
-			if (b.isFull()) {
-				//if (!solutions.contains(b)) {
-					System.out.println(" [SOLUTION FOUND]");
-					if (!p.call(b)) {
-						return false;
-					}
-					//solutions.add(b);
-				//}
+	/**
+	 * Returns a ring twice the size of the given full one, holding the same
+	 * elements in order from index 0.
+	 * @param ring - a full ring whose length is a power of two.
+	 * @param head - the index of the oldest element.
+	 */
+	private static int[] growRing(int[] ring, int head) {
+		int[] result = new int[ring.length << 1];
+		System.arraycopy(ring, head, result, 0, ring.length - head);
+		System.arraycopy(ring, 0, result, ring.length - head, head);
+		return result;
+	}
 
-			} else {
-				int count = 0;
-				for (int i = 0; i < Board.NUM_CELLS; i++) {
-					if (b.getValueAt(i) == 0) {
-						for (int x = 1; x < 10; x++) {
-							Board c = b.copy();
-							c.setValueAt(i, x);
-							q.add(c);
-							count++;
-						}
-					}
-				}
-				if (count > 0) {
-					q.sort(comparator);
-				}
-				System.out.println(" [" + count + "]");
+	/**
+	 * Records a {@link SolveRecorder#RESTORE} for each cell where the shown
+	 * board differs from the given one, as it will be before propagation:
+	 * resolved cells keep their digit and all others have every candidate.
+	 * @param recorder - receives the events.
+	 * @param b - the board the search is about to work on.
+	 * @param guessIndex - a cell to show as empty, since a guess follows for
+	 * it; or -1 for none.
+	 * @param shown - the board a replay shows; updated to match.
+	 * @param depth - the current search depth.
+	 */
+	private static void recordRestores(SolveRecorder recorder, Board b, int guessIndex, int[] shown, int depth) {
+		for (int i = 0; i < NUM_CELLS; i++) {
+			int mask = b.getMaskAt(i);
+			if (i == guessIndex || !isSingleDigit(mask)) {
+				mask = ALL;
+			}
+			if (shown[i] != mask) {
+				recorder.record(SolveRecorder.RESTORE, i, (mask == ALL) ? 0 : decode(mask), depth);
+				shown[i] = mask;
 			}
 		}
-
-		return true;
 	}
 
 	/**
@@ -404,50 +315,6 @@ public class Solver {
 		return index;
 	}
 
-	/**
-	 * Picks the cell from board with the fewest number of candidates,
-	 * then fills in the candidates for that cell in copies of board.  Places
-	 * the copies into the queue.
-	 * <br/>Since this method is called frequently while searching for Sudoku
-	 * solutions, and Board.getCandidates() takes and returns a List, the caller may
-	 * pass in a list object to be used instead of this method allocating a new one
-	 * (and creating more garbage).
-	 * @param board - the Sudoku board trying to be solved.
-	 * @param queue - the queue of boards used to search for the solution(s).
-	 * @param candidates - a list of Integers used internally.
-	 * The list will be cleared and repopulated with the candidates for the
-	 * cell described above.
-	 */
-	private static void putCellCandidatesInQueue(Board board, int cellIndex,
-	Queue<Board> queue, List<Integer> candidates)
-	{
-		if (candidates == null)
-			candidates = new ArrayList<Integer>(9);
-
-		candidates.clear();
-		board.getCandidates(cellIndex, candidates);
-		for (int option : candidates) {
-			Board bCopy = new Board(board);
-			bCopy.setValueAt(cellIndex, option);
-			queue.offer(bCopy);
-		}
-	}
-
-	private static List<Board> getCandidateBoards(Board board, int cellIndex, List<Integer> candidates) {
-		if (candidates == null)
-			candidates = new ArrayList<Integer>(9);
-
-		candidates.clear();
-		board.getCandidates(cellIndex, candidates);
-		List<Board> result = new ArrayList<>();
-		for (int option : candidates) {
-			Board bCopy = new Board(board);
-			bCopy.setValueAt(cellIndex, option);
-			result.add(bCopy);
-		}
-		return result;
-	}
-
 	/**
 	 * Attempts to fill in the most obvious cells on the board.
 	 * <br/>It is possible that this method solves the puzzle.
@@ -456,102 +323,105 @@ public class Solver {
 	 * otherwise false.
 	 */
 	protected static boolean reduce(Board board) {
-		if (board.isFull()) {
-			return false;
-		}
-
-		//reduce until we can't reduce no more
-	    boolean overallChange = false;
-		boolean changed = false;
-
-	    int[] masks = board.getMasks(new int[NUM_CELLS]);
-
-	    //Track positions that are not already reduced.
-	    ArrayList<Integer> indices = new ArrayList<>();
-	    for (int i = 0; i < NUM_CELLS; i++) {
-	    	if (board.getValueAt(i) == 0) {
-	    		indices.add(i);
-	    		masks[i] = ALL;
-	    	}
-	    }
-
-		do {
-			changed = false;
-	        for (int i = indices.size() - 1; i >= 0; i--) {
-	        	int j = indices.get(i);
-	        	if (reduce(masks, j)) {
-	                changed = true;
-	                overallChange = true;
-	                board.setMaskAt(j, masks[j]);
-	            }
-	        	if (decode(masks[j]) > 0) {
-		    		indices.remove(i);
-		    	}
-	        }
-		} while (changed);
-
-	    return overallChange;
+		return (propagate(board) & CHANGED) != 0;
 	}
 
-	private static boolean reduce(int[] masks, int index) {
-	    int initial = masks[index];
+	/** Flag returned by {@link #propagate(Board)} when the board was changed.*/
+	private static final int CHANGED = 1;
 
-	    //check if this cell already contains a single digit
-	    if (decode(initial) > 0)
-	        return false;
+	/**
+	 * Flag returned by {@link #propagate(Board)} when some cell was left with
+	 * no candidates, meaning the board has no solution.
+	 */
+	private static final int CONTRADICTION = 2;
 
-	    int candidates = ALL;
-	    candidates = reduceRow(masks, index, candidates);
-	    candidates = reduceCol(masks, index, candidates);
-	    candidates = reduceRegion(masks, index, candidates);
-	    masks[index] = candidates;
-	    return (initial - candidates) > 0;
+	/**
+	 * Narrows the candidates of every unresolved cell to the digits not
+	 * already placed among its peers, repeating as cells become resolved.
+	 * <br/>Propagation is driven by a worklist of cells whose value just
+	 * became fixed: each such cell's digit is eliminated only from its
+	 * peers, so the work done scales with the number of changes rather than
+	 * with the number of unresolved cells. Cells that were already resolved
+	 * when this was called are never modified.
+	 * @param board - the Sudoku board to work on.
+	 * @return A combination of the {@link #CHANGED} and
+	 * {@link #CONTRADICTION} flags.
+	 */
+	private static int propagate(Board board) {
+		return propagate(board, null, 0);
 	}
 
-	private static int reduceRegion(int[] masks, int index, int candidates) {
-	    for (int i : REGION_INDICES[Board.getRegionForIndex(index)]) {
-	        if (i == index)
-				continue;
+	/**
+	 * @param recorder - receives each elimination and assignment, or null to
+	 * record nothing.
+	 * @param depth - the search depth, for the recorder.
+	 */
+	private static int propagate(Board board, SolveRecorder recorder, int depth) {
+		if (board.isFull()) {
+			return 0;
+		}
 
-	    	int v = masks[i];
-	        if (decode(v) > 0) {
-	            if ((candidates ^ v) < candidates) {
-	                candidates ^= v;
-	            }
-	        }
-	    }
-		return candidates;
-	}
+		int[] masks = board.getMasks(new int[NUM_CELLS]);
+		int[] queue = new int[NUM_CELLS];
+		int head = 0;
+		int tail = 0;
 
-	private static int reduceCol(int[] masks, int index, int candidates) {
-		int c = index % 9;
-	    for (int i : COL_INDICES[c]) {
-	        if (i == index)
+		//Resolved cells are the starting worklist; everything else starts
+		//with all candidates.
+		boolean[] given = new boolean[NUM_CELLS];
+		for (int i = 0; i < NUM_CELLS; i++) {
+			if (isSingleDigit(masks[i])) {
+				given[i] = true;
+				queue[tail++] = i;
+			} else {
+				masks[i] = ALL;
+			}
+		}
+
+		int[] peers = ConstraintModel.CLASSIC.getPeers();
+		int[] peerStart = ConstraintModel.CLASSIC.getPeerStart();
+		int status = 0;
+		while (head < tail) {
+			int index = queue[head++];
+			int bit = masks[index];
+			if (bit == 0) {
 				continue;
+			}
 
-	        int v = masks[i];
-	        if (decode(v) > 0) {
-	            if ((candidates ^ v) < candidates) {
-	                candidates ^= v;
-	            }
-	        }
-	    }
-		return candidates;
-	}
+			for (int p = peerStart[index], end = peerStart[index + 1]; p < end; p++) {
+				int peer = peers[p];
+				int mask = masks[peer];
+				if ((mask & bit) != 0) {
+					if (given[peer]) {
+						//Two resolved peers share a digit.
+						status |= CONTRADICTION;
+						continue;
+					}
+					mask ^= bit;
+					masks[peer] = mask;
+					if (recorder != null) {
+						recorder.record(SolveRecorder.ELIMINATE, peer, decode(bit), depth);
+					}
+					if (mask == 0) {
+						status |= CONTRADICTION;
+					} else if ((mask & (mask - 1)) == 0) {
+						queue[tail++] = peer;
+						if (recorder != null) {
+							recorder.record(SolveRecorder.ASSIGN, peer, decode(mask), depth);
+						}
+					}
+				}
+			}
+		}
+
+		for (int i = 0; i < NUM_CELLS; i++) {
+			if (board.candidateMask(i) != masks[i]) {
+				status |= CHANGED;
+				board.setMasks(masks);
+				break;
+			}
+		}
 
-	private static int reduceRow(int[] masks, int index, int candidates) {
-		int r = index / 9;
-		for (int i : ROW_INDICES[r]) {
-	        if (i == index)
-	            continue;
-
-	        int v = masks[i];
-	        if (decode(v) > 0) {
-	        	if ((candidates ^ v) < candidates) {
-	                candidates ^= v;
-	            }
-	        }
-	    }
-		return candidates;
+		return status;
 	}
 }
@@ -0,0 +1,540 @@
+package com.sparklicorn.sudoku.game.solvers;
+
+import static com.sparklicorn.sudoku.game.Board.*;
+
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+import com.sparklicorn.sudoku.game.Board;
+import com.sparklicorn.sudoku.game.ConstraintModel;
+import com.sparklicorn.sudoku.game.solvers.Solver.SolutionFoundCallback;
+
+/**
+ * Keeps the propagated candidate state of a base board so that many nearly
+ * identical questions can be asked of it without starting from scratch.
+ * <br/><br/>
+ * Assumptions are layered on top of the base with {@link #push(int, int)}
+ * and removed again with {@link #pop()}. Each assumption only propagates its
+ * own consequences, and popping restores the saved state without any
+ * recomputation.
+ * <br/><br/>
+ * Alternate solutions discovered while answering uniqueness queries are
+ * remembered across {@link #reset(Board)} calls. Any later state that is
+ * compatible with one of them is answered without searching, which is what
+ * makes carving many puzzles out of the same configuration cheap.
+ * <br/><br/>
+ * Sessions follow the classic rules unless given a {@link ConstraintModel}
+ * with variant rules.
+ * <br/><br/>
+ * A session is not thread-safe; use one per thread.
+ */
+public class SolverSession {
+
+	/** Number of alternate solutions remembered before the oldest is replaced.*/
+	public static final int MAX_LEARNED = 64;
+
+	/** The rules being solved for, and its flattened tables.*/
+	private final ConstraintModel model;
+	private final int[] peers;
+	private final int[] peerStart;
+	private final int[] units;
+
+	/** Current candidate masks.*/
+	private final int[] masks = new int[NUM_CELLS];
+
+	/** Saved candidate masks, NUM_CELLS per assumption level.*/
+	private int[] trail = new int[NUM_CELLS * 8];
+
+	/** Saved consistency flag per assumption level.*/
+	private boolean[] trailConsistent = new boolean[8];
+
+	/** Number of assumptions currently pushed.*/
+	private int depth;
+
+	/** Whether the current state is free of contradictions.*/
+	private boolean consistent;
+
+	/** Worklist of cells whose value just became fixed.*/
+	private final int[] queue = new int[NUM_CELLS];
+
+	/** Previously found solutions, stored as single-bit masks per cell.*/
+	private final int[][] learned = new int[MAX_LEARNED][];
+	private int numLearned;
+	private int nextLearned;
+
+	/** Receives the steps taken by this session, if set.*/
+	private SolveRecorder recorder;
+
+	/** Checked before each search step, if set; searches stop once it returns true.*/
+	private BooleanSupplier cancelled;
+
+	/** Whether the most recent search stopped because it was cancelled.*/
+	private boolean interrupted;
+
+	/** Creates a session for an empty board.*/
+	public SolverSession() {
+		this(ConstraintModel.CLASSIC);
+	}
+
+	/**
+	 * Creates a session for an empty board under the given rules.
+	 * @param model - the rules to solve for.
+	 */
+	public SolverSession(ConstraintModel model) {
+		this.model = model;
+		this.peers = model.getPeers();
+		this.peerStart = model.getPeerStart();
+		this.units = model.getUnits();
+		reset(null);
+	}
+
+	/**
+	 * Creates a session whose base state is the given board with all of its
+	 * clues propagated.
+	 * @param base - the Sudoku board to work on.
+	 */
+	public SolverSession(Board base) {
+		this(ConstraintModel.CLASSIC);
+		reset(base);
+	}
+
+	/** Returns the rules this session solves for.*/
+	public ConstraintModel getModel() {
+		return model;
+	}
+
+	/**
+	 * Discards all assumptions and replaces the base state with the given
+	 * board. Learned solutions are kept.
+	 * @param base - the Sudoku board to work on, or null for an empty board.
+	 * @return True if the board is free of contradictions after propagation;
+	 * otherwise false.
+	 */
+	public boolean reset(Board base) {
+		depth = 0;
+		int tail = 0;
+		for (int i = 0; i < NUM_CELLS; i++) {
+			int mask = (base != null) ? base.getMaskAt(i) : ALL;
+			if (isSingleDigit(mask)) {
+				masks[i] = mask;
+				queue[tail++] = i;
+			} else {
+				masks[i] = ALL;
+			}
+		}
+		consistent = propagate(0, tail);
+		return consistent;
+	}
+
+	/** Forgets all previously learned solutions.*/
+	public void forget() {
+		Arrays.fill(learned, null);
+		numLearned = 0;
+		nextLearned = 0;
+	}
+
+	/**
+	 * Sets the recorder that receives the steps taken by this session.
+	 * @param recorder - the recorder, or null to stop recording.
+	 */
+	public void setRecorder(SolveRecorder recorder) {
+		this.recorder = recorder;
+	}
+
+	/**
+	 * Sets a check that searches make before each step. Once it returns
+	 * true, the search in progress stops early and its answer is not to be
+	 * trusted; see {@link #wasCancelled()}.
+	 * @param cancelled - the check, or null to always search to the end.
+	 */
+	public void setCancelled(BooleanSupplier cancelled) {
+		this.cancelled = cancelled;
+	}
+
+	/**
+	 * Returns whether the most recent call to {@link #solve()},
+	 * {@link #countSolutions(int)}, {@link #solvesUniquely(Board)} or
+	 * {@link #isDetermined(int, Board)} stopped because it was cancelled.
+	 */
+	public boolean wasCancelled() {
+		return interrupted;
+	}
+
+	/** Returns the number of assumptions currently pushed.*/
+	public int getDepth() {
+		return depth;
+	}
+
+	/** Returns whether the current state is free of contradictions.*/
+	public boolean isConsistent() {
+		return consistent;
+	}
+
+	/**
+	 * Returns the candidate mask of the given cell in the current state.
+	 * <br/>See {@link Board} for information about how the bitmask is used.
+	 */
+	public int getMaskAt(int index) {
+		return masks[index];
+	}
+
+	/** Returns a new Board holding the current candidate state.*/
+	public Board toBoard() {
+		Board result = new Board();
+		result.setMasks(masks);
+		return result;
+	}
+
+	/**
+	 * Assumes the given digit at the given cell and propagates the
+	 * consequences. The assumption stays in effect until the matching
+	 * {@link #pop()}.
+	 * @param index - the position on the board.
+	 * @param digit - a digit from 1 to 9.
+	 * @return True if the state is still free of contradictions; otherwise
+	 * false.
+	 */
+	public boolean push(int index, int digit) {
+		if (digit < 1 || digit > NUM_DIGITS) {
+			throw new IllegalArgumentException("Digit is out of bounds.");
+		}
+		return pushMask(index, 1 << (digit - 1));
+	}
+
+	/**
+	 * Removes the most recent assumption, restoring the state that was in
+	 * effect before it was pushed.
+	 */
+	public void pop() {
+		if (depth == 0) {
+			throw new IllegalStateException("No assumption to pop.");
+		}
+		depth--;
+		System.arraycopy(trail, depth * NUM_CELLS, masks, 0, NUM_CELLS);
+		consistent = trailConsistent[depth];
+	}
+
+	/**
+	 * Searches for a solution of the current state.
+	 * @return A new Board holding the first solution found, or null if
+	 * there is none.
+	 */
+	public Board solve() {
+		interrupted = false;
+		Board[] result = new Board[1];
+		search((b) -> {
+			result[0] = b;
+			return false;
+		});
+		return result[0];
+	}
+
+	/**
+	 * Counts the solutions of the current state, stopping early once the
+	 * given limit is reached.
+	 * @param limit - the maximum number of solutions to count.
+	 * @return The number of solutions found, no more than limit.
+	 */
+	public int countSolutions(int limit) {
+		interrupted = false;
+		int[] count = new int[1];
+		search((b) -> {
+			return ++count[0] < limit;
+		});
+		return count[0];
+	}
+
+	/**
+	 * Determines whether the current state solves uniquely to the provided
+	 * solution.
+	 * @param solution - the solution that the board should solve to.
+	 * @return True if the current state has one unique solution equivalent to
+	 * the one provided; otherwise false.
+	 */
+	public boolean solvesUniquely(Board solution) {
+		interrupted = false;
+		if (!consistent || !isCompatible(solution) || hasLearnedAlternate(solution, -1)) {
+			return false;
+		}
+
+		boolean[] unique = new boolean[] { true };
+		search((b) -> {
+			if (!b.equals(solution)) {
+				learn(b);
+				unique[0] = false;
+			}
+			return unique[0];
+		});
+		return unique[0];
+	}
+
+	/**
+	 * Determines whether every solution of the current state places the
+	 * given digit at the given cell.
+	 * <br/>When a board is known to solve uniquely, the board with one of
+	 * its clues removed solves uniquely exactly when the removed cell is
+	 * still determined. Only the branches where that cell differs need to
+	 * be searched, which is much less work than a full uniqueness check.
+	 * @param index - the position on the board.
+	 * @param solution - a solution of the current state.
+	 * @return True if no solution places a different digit at index;
+	 * otherwise false.
+	 */
+	public boolean isDetermined(int index, Board solution) {
+		interrupted = false;
+		if (!consistent) {
+			return true;
+		}
+
+		int bit = solution.getMaskAt(index);
+		int others = masks[index] & ~bit;
+		if (others == 0) {
+			return true;
+		}
+
+		if (hasLearnedAlternate(solution, index)) {
+			return false;
+		}
+
+		boolean[] determined = new boolean[] { true };
+		while (others != 0 && determined[0]) {
+			int other = others & -others;
+			others ^= other;
+			pushMask(index, other);
+			search((b) -> {
+				learn(b);
+				determined[0] = false;
+				return false;
+			});
+			pop();
+		}
+		return determined[0];
+	}
+
+	/**
+	 * Performs a depth-first search from the current state, trying the cell
+	 * with the fewest candidates first.
+	 * @return Whether the search ran to completion without the callback
+	 * asking it to stop or being cancelled.
+	 */
+	boolean search(SolutionFoundCallback callback) {
+		if (!consistent) {
+			return true;
+		}
+		if (cancelled != null && cancelled.getAsBoolean()) {
+			interrupted = true;
+			return false;
+		}
+
+		int index = pickEmptyCell();
+		if (index < 0) {
+			if (recorder != null) {
+				recorder.record(SolveRecorder.SOLUTION, 0, 0, depth);
+			}
+			return callback.call(toBoard());
+		}
+
+		int candidates = masks[index];
+		while (candidates != 0) {
+			int bit = candidates & -candidates;
+			candidates ^= bit;
+			if (recorder != null) {
+				recorder.record(SolveRecorder.GUESS, index, decode(bit), depth);
+			}
+			pushMask(index, bit);
+			boolean keepGoing = search(callback);
+			pop();
+			if (!keepGoing) {
+				return false;
+			}
+			if (recorder != null) {
+				recorder.record(SolveRecorder.BACKTRACK, index, decode(bit), depth);
+			}
+		}
+		return true;
+	}
+
+	private boolean pushMask(int index, int bit) {
+		ensureTrailCapacity(depth + 1);
+		System.arraycopy(masks, 0, trail, depth * NUM_CELLS, NUM_CELLS);
+		trailConsistent[depth] = consistent;
+		depth++;
+
+		if (consistent) {
+			if ((masks[index] & bit) == 0) {
+				consistent = false;
+			} else if (masks[index] != bit) {
+				masks[index] = bit;
+				queue[0] = index;
+				consistent = propagate(0, 1);
+			}
+		}
+		return consistent;
+	}
+
+	private void ensureTrailCapacity(int levels) {
+		if (levels > trailConsistent.length) {
+			int newLevels = Math.max(levels, trailConsistent.length * 2);
+			trail = Arrays.copyOf(trail, newLevels * NUM_CELLS);
+			trailConsistent = Arrays.copyOf(trailConsistent, newLevels);
+		}
+	}
+
+	/**
+	 * Eliminates the value of each queued cell from its peers, queueing any
+	 * peer that is left with a single candidate. Once the queue is empty,
+	 * each unit is checked for digits that fit in only one of its cells,
+	 * which are then fixed and propagated in turn.
+	 * @return False if a contradiction was found; otherwise true.
+	 */
+	private boolean propagate(int head, int tail) {
+		while (true) {
+			while (head < tail) {
+				int index = queue[head++];
+				int bit = masks[index];
+				for (int p = peerStart[index], end = peerStart[index + 1]; p < end; p++) {
+					int peer = peers[p];
+					int mask = masks[peer];
+					if ((mask & bit) != 0) {
+						if (mask == bit) {
+							return false;
+						}
+						mask ^= bit;
+						masks[peer] = mask;
+						if (recorder != null) {
+							recorder.record(SolveRecorder.ELIMINATE, peer, decode(bit), depth);
+						}
+						if ((mask & (mask - 1)) == 0) {
+							queue[tail++] = peer;
+							if (recorder != null) {
+								recorder.record(SolveRecorder.ASSIGN, peer, decode(mask), depth);
+							}
+						}
+					}
+				}
+			}
+
+			int found = findHiddenSingles(tail);
+			if (found < 0) {
+				return false;
+			}
+			if (found == tail) {
+				return true;
+			}
+			tail = found;
+		}
+	}
+
+	/**
+	 * Fixes every cell that holds the only remaining place for some digit in
+	 * one of its units, appending those cells to the queue.
+	 * @return The new queue length, or -1 if some unit has no place left
+	 * for a digit.
+	 */
+	private int findHiddenSingles(int tail) {
+		for (int u = 0; u < units.length; u += NUM_DIGITS) {
+			int once = 0;
+			int twice = 0;
+			for (int k = u, end = u + NUM_DIGITS; k < end; k++) {
+				int mask = masks[units[k]];
+				twice |= once & mask;
+				once |= mask;
+			}
+			if (once != ALL) {
+				return -1;
+			}
+
+			int hidden = once & ~twice;
+			while (hidden != 0) {
+				int bit = hidden & -hidden;
+				hidden ^= bit;
+				for (int k = u, end = u + NUM_DIGITS; k < end; k++) {
+					int index = units[k];
+					if ((masks[index] & bit) != 0) {
+						if (masks[index] != bit) {
+							masks[index] = bit;
+							queue[tail++] = index;
+							if (recorder != null) {
+								recorder.record(SolveRecorder.ASSIGN, index, decode(bit), depth);
+							}
+						}
+						break;
+					}
+				}
+			}
+		}
+		return tail;
+	}
+
+	/** Returns the unfixed cell with the fewest candidates, or -1 if none.*/
+	private int pickEmptyCell() {
+		int index = -1;
+		int numDigits = NUM_DIGITS + 1;
+		for (int i = 0; i < NUM_CELLS; i++) {
+			int numOpts = Integer.bitCount(masks[i]);
+			if (numOpts > 1 && numOpts < numDigits) {
+				index = i;
+				numDigits = numOpts;
+				if (numDigits == 2) {
+					break;
+				}
+			}
+		}
+		return index;
+	}
+
+	private boolean isCompatible(Board board) {
+		for (int i = 0; i < NUM_CELLS; i++) {
+			if ((masks[i] & board.getMaskAt(i)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Determines whether a learned solution other than the one given also
+	 * solves the current state. If index is not negative, the learned
+	 * solution must also differ from the given one at that cell.
+	 */
+	private boolean hasLearnedAlternate(Board solution, int index) {
+		for (int n = 0; n < numLearned; n++) {
+			int[] alt = learned[n];
+			if (index >= 0 && alt[index] == solution.getMaskAt(index)) {
+				continue;
+			}
+
+			boolean compatible = true;
+			for (int i = 0; i < NUM_CELLS; i++) {
+				if ((masks[i] & alt[i]) == 0) {
+					compatible = false;
+					break;
+				}
+			}
+			if (compatible && (index >= 0 || !isSame(alt, solution))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isSame(int[] alt, Board board) {
+		for (int i = 0; i < NUM_CELLS; i++) {
+			if (alt[i] != board.getMaskAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void learn(Board solution) {
+		int[] alt = learned[nextLearned];
+		if (alt == null) {
+			alt = new int[NUM_CELLS];
+			learned[nextLearned] = alt;
+		}
+		solution.getMasks(alt);
+		nextLearned = (nextLearned + 1) % MAX_LEARNED;
+		numLearned = Math.min(numLearned + 1, MAX_LEARNED);
+	}
+}
@@ -0,0 +1,356 @@
+package com.sparklicorn.sudoku.game.solvers;
+
+import static com.sparklicorn.sudoku.game.Board.*;
+
+import com.sparklicorn.sudoku.game.Board;
+
+/**
+ * Solves Sudoku boards by pattern overlay rather than cell-by-cell search.
+ * <br/><br/>
+ * A template is one valid placement of a single digit on the grid: one cell
+ * in every row, column, and region. There are exactly 46,656 of them, and a
+ * solved board is 9 pairwise disjoint templates, one per digit. Each
+ * template is stored as an 81-bit cell mask split across two longs, with
+ * cell <code>i</code> at bit <code>i</code> of the low word for
+ * <code>i &lt; 64</code>, and at bit <code>i - 64</code> of the high word
+ * otherwise.
+ * <br/><br/>
+ * Solving first filters the template table once per board, keeping for each
+ * digit only the templates that cover all of that digit's clues and none of
+ * the other clues. The search then picks templates digit by digit, always
+ * branching on the digit with the fewest templates left, and discards every
+ * remaining template that overlaps the cells already taken. All filtering is
+ * done with bitwise ANDs over flat long arrays.
+ * <br/><br/>
+ * Instances hold reusable scratch space and are not thread-safe; the static
+ * methods create a new instance per call.
+ */
+public class TemplateSolver {
+
+	/** The number of valid placements of one digit on the grid.*/
+	public static final int NUM_TEMPLATES = 46656;
+
+	private static final long[] TEMPLATES_LO = new long[NUM_TEMPLATES];
+	private static final long[] TEMPLATES_HI = new long[NUM_TEMPLATES];
+	static {
+		int n = buildTemplates(0, 0, 0L, 0L, 0);
+		if (n != NUM_TEMPLATES) {
+			throw new IllegalStateException("Expected " + NUM_TEMPLATES + " templates, built " + n);
+		}
+	}
+
+	/**
+	 * Enumerates templates row by row, choosing a column for each row such
+	 * that no column repeats and each band uses each stack once.
+	 * @return The number of templates written so far.
+	 */
+	private static int buildTemplates(int row, int usedCols, long lo, long hi, int n) {
+		if (row == NUM_DIGITS) {
+			TEMPLATES_LO[n] = lo;
+			TEMPLATES_HI[n] = hi;
+			return n + 1;
+		}
+
+		// Stacks already used by earlier rows in this band.
+		int usedStacks = 0;
+		for (int r = row - row % NUM_ROWS_IN_REGION; r < row; r++) {
+			int col = Long.numberOfTrailingZeros(rowBits(r, lo, hi));
+			usedStacks |= 1 << (col / NUM_COLS_IN_REGION);
+		}
+
+		for (int col = 0; col < NUM_DIGITS; col++) {
+			if ((usedCols & (1 << col)) != 0 || (usedStacks & (1 << (col / NUM_COLS_IN_REGION))) != 0) {
+				continue;
+			}
+			int index = row * NUM_DIGITS + col;
+			if (index < 64) {
+				n = buildTemplates(row + 1, usedCols | (1 << col), lo | (1L << index), hi, n);
+			} else {
+				n = buildTemplates(row + 1, usedCols | (1 << col), lo, hi | (1L << (index - 64)), n);
+			}
+		}
+		return n;
+	}
+
+	/** Returns the 9 bits of the given row of a template, column 0 lowest.*/
+	private static long rowBits(int row, long lo, long hi) {
+		int start = row * NUM_DIGITS;
+		if (start + NUM_DIGITS <= 64) {
+			return (lo >>> start) & ALL;
+		}
+		if (start >= 64) {
+			return (hi >>> (start - 64)) & ALL;
+		}
+		return ((lo >>> start) | (hi << (64 - start))) & ALL;
+	}
+
+	// Surviving templates for each digit, compacted so that the survivors at
+	// search depth k occupy [0, count[k][d]) of lo[d] and hi[d].
+	private final long[][] lo = new long[NUM_DIGITS][];
+	private final long[][] hi = new long[NUM_DIGITS][];
+	private final int[][] count = new int[NUM_DIGITS + 1][NUM_DIGITS];
+	private final int[] chosen = new int[NUM_DIGITS];
+	private final long[] chosenLo = new long[NUM_DIGITS];
+	private final long[] chosenHi = new long[NUM_DIGITS];
+	private final int[] cellDigit = new int[NUM_CELLS];
+	private int numSolutions;
+	private int limit;
+	private Board lastSolution;
+
+	public TemplateSolver() {
+		for (int d = 0; d < NUM_DIGITS; d++) {
+			lo[d] = new long[64];
+			hi[d] = new long[64];
+		}
+	}
+
+	/**
+	 * Attempts to solve the given Sudoku board.
+	 * @param board - the Sudoku board to work on.
+	 * @return A new Board representing the first solution found, or null if
+	 * the board has no solution.
+	 */
+	public static Board solve(Board board) {
+		TemplateSolver solver = new TemplateSolver();
+		return (solver.search(board, 1) == 1) ? solver.lastSolution : null;
+	}
+
+	/**
+	 * Determines whether the given board has exactly one solution.
+	 * @param board - the Sudoku board to check.
+	 * @return True if the board has one unique solution; otherwise false.
+	 */
+	public static boolean solvesUniquely(Board board) {
+		return new TemplateSolver().countSolutions(board, 2) == 1;
+	}
+
+	/**
+	 * Counts the solutions of the given board, stopping early at the limit.
+	 * @param board - the Sudoku board to check.
+	 * @param limit - the maximum number of solutions to count.
+	 * @return The number of solutions found, at most <code>limit</code>.
+	 */
+	public int countSolutions(Board board, int limit) {
+		return search(board, limit);
+	}
+
+	/**
+	 * Returns the most recent solution found by this solver, or null if none
+	 * has been found.
+	 */
+	public Board getLastSolution() {
+		return lastSolution;
+	}
+
+	private int search(Board board, int limit) {
+		this.numSolutions = 0;
+		this.limit = limit;
+		this.lastSolution = null;
+
+		if (!filter(board)) {
+			return 0;
+		}
+		search(0, 0L, 0L);
+		return numSolutions;
+	}
+
+	/**
+	 * Fills the per-digit template lists with the templates consistent with
+	 * the board's clues.
+	 * <br/>A template is consistent with digit <code>d</code> when the clues
+	 * it covers are exactly the clues of <code>d</code>.
+	 * @return False if some digit has no consistent template.
+	 */
+	private boolean filter(Board board) {
+		long cluesLo = 0L;
+		long cluesHi = 0L;
+		long[] digitLo = new long[NUM_DIGITS];
+		long[] digitHi = new long[NUM_DIGITS];
+		for (int i = 0; i < NUM_CELLS; i++) {
+			int d = board.getValueAt(i) - 1;
+			cellDigit[i] = d;
+			if (d < 0) {
+				continue;
+			}
+			if (i < 64) {
+				cluesLo |= 1L << i;
+				digitLo[d] |= 1L << i;
+			} else {
+				cluesHi |= 1L << (i - 64);
+				digitHi[d] |= 1L << (i - 64);
+			}
+		}
+
+		int[] counts = count[0];
+		for (int d = 0; d < NUM_DIGITS; d++) {
+			counts[d] = 0;
+		}
+
+		// Digits without clues accept every template that avoids all clues.
+		int unclued = 0;
+		for (int d = 0; d < NUM_DIGITS; d++) {
+			if (digitLo[d] == 0L && digitHi[d] == 0L) {
+				unclued |= 1 << d;
+			}
+		}
+
+		for (int t = 0; t < NUM_TEMPLATES; t++) {
+			long tLo = TEMPLATES_LO[t];
+			long tHi = TEMPLATES_HI[t];
+			long hitLo = tLo & cluesLo;
+			long hitHi = tHi & cluesHi;
+			if ((hitLo | hitHi) == 0L) {
+				for (int bits = unclued; bits != 0; bits &= bits - 1) {
+					add(Integer.numberOfTrailingZeros(bits), tLo, tHi);
+				}
+				continue;
+			}
+			int first = (hitLo != 0L)
+				? Long.numberOfTrailingZeros(hitLo)
+				: 64 + Long.numberOfTrailingZeros(hitHi);
+			int d = cellDigit[first];
+			if (hitLo == digitLo[d] && hitHi == digitHi[d]) {
+				add(d, tLo, tHi);
+			}
+		}
+
+		for (int d = 0; d < NUM_DIGITS; d++) {
+			if (counts[d] == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void add(int d, long tLo, long tHi) {
+		int n = count[0][d];
+		if (n == lo[d].length) {
+			int size = Math.min(n * 2, NUM_TEMPLATES);
+			long[] newLo = new long[size];
+			long[] newHi = new long[size];
+			System.arraycopy(lo[d], 0, newLo, 0, n);
+			System.arraycopy(hi[d], 0, newHi, 0, n);
+			lo[d] = newLo;
+			hi[d] = newHi;
+		}
+		lo[d][n] = tLo;
+		hi[d][n] = tHi;
+		count[0][d] = n + 1;
+	}
+
+	/**
+	 * Chooses a template for one more digit, recursing until all digits
+	 * have one.
+	 * @param depth - the number of digits chosen so far.
+	 * @param usedLo - low word of the cells covered by the chosen templates.
+	 * @param usedHi - high word of the cells covered by the chosen templates.
+	 * @return False if the search should stop.
+	 */
+	private boolean search(int depth, long usedLo, long usedHi) {
+		if (depth == NUM_DIGITS) {
+			numSolutions++;
+			lastSolution = toBoard();
+			return numSolutions < limit;
+		}
+
+		// Branch on the remaining digit with the fewest templates.
+		int[] counts = count[depth];
+		int best = -1;
+		for (int d = 0; d < NUM_DIGITS; d++) {
+			if (!isChosen(d, depth) && (best < 0 || counts[d] < counts[best])) {
+				best = d;
+			}
+		}
+
+		int[] next = count[depth + 1];
+		long[] bestLo = lo[best];
+		long[] bestHi = hi[best];
+		for (int t = 0, n = counts[best]; t < n; t++) {
+			long tLo = bestLo[t];
+			long tHi = bestHi[t];
+			long nextLo = usedLo | tLo;
+			long nextHi = usedHi | tHi;
+			chosen[depth] = best;
+			chosenLo[depth] = tLo;
+			chosenHi[depth] = tHi;
+
+			// Keep only templates that avoid every taken cell. Together they
+			// must still be able to cover the cells left open.
+			boolean dead = false;
+			long coverLo = nextLo;
+			long coverHi = nextHi;
+			for (int d = 0; d < NUM_DIGITS && !dead; d++) {
+				if (d == best || isChosen(d, depth)) {
+					continue;
+				}
+				int kept = compact(d, counts[d], nextLo, nextHi);
+				next[d] = kept;
+				if (kept == 0) {
+					dead = true;
+				}
+				long[] dLo = lo[d];
+				long[] dHi = hi[d];
+				for (int k = 0; k < kept; k++) {
+					coverLo |= dLo[k];
+					coverHi |= dHi[k];
+				}
+			}
+			if (dead || coverLo != -1L || coverHi != HI_FULL) {
+				continue;
+			}
+
+			if (!search(depth + 1, nextLo, nextHi)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static final long HI_FULL = (1L << (NUM_CELLS - 64)) - 1L;
+
+	/**
+	 * Moves the templates of digit <code>d</code> that avoid the given cells
+	 * to the front of its list.
+	 * @return The number of templates kept.
+	 */
+	private int compact(int d, int n, long usedLo, long usedHi) {
+		long[] dLo = lo[d];
+		long[] dHi = hi[d];
+		int kept = 0;
+		for (int t = 0; t < n; t++) {
+			long tLo = dLo[t];
+			long tHi = dHi[t];
+			if ((tLo & usedLo) == 0L && (tHi & usedHi) == 0L) {
+				dLo[t] = dLo[kept];
+				dHi[t] = dHi[kept];
+				dLo[kept] = tLo;
+				dHi[kept] = tHi;
+				kept++;
+			}
+		}
+		return kept;
+	}
+
+	private boolean isChosen(int d, int depth) {
+		for (int k = 0; k < depth; k++) {
+			if (chosen[k] == d) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private Board toBoard() {
+		int[] values = new int[NUM_CELLS];
+		for (int k = 0; k < NUM_DIGITS; k++) {
+			int digit = chosen[k] + 1;
+			for (long bits = chosenLo[k]; bits != 0L; bits &= bits - 1) {
+				values[Long.numberOfTrailingZeros(bits)] = digit;
+			}
+			for (long bits = chosenHi[k]; bits != 0L; bits &= bits - 1) {
+				values[64 + Long.numberOfTrailingZeros(bits)] = digit;
+			}
+		}
+		return new Board(values);
+	}
+}
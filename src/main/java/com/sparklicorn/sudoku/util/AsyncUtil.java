@@ -0,0 +1,49 @@
+package com.sparklicorn.sudoku.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * Provides utility methods for running long computations asynchronously.
+ */
+public class AsyncUtil {
+
+	/**
+	 * Runs the given task on the executor, returning a future for its result.
+	 * <br/>The task is handed a cancellation check that becomes true as soon
+	 * as the returned future completes by any other means, such as
+	 * {@link CompletableFuture#cancel(boolean)} or a timeout. Long-running
+	 * tasks should poll it and return early, as the executor thread is not
+	 * interrupted.
+	 * @param task - the computation to run; its argument is the cancellation
+	 * check.
+	 * @param executor - the executor to run the task on.
+	 * @return A future completed with the task's result, or exceptionally if
+	 * the task throws or cannot be scheduled.
+	 */
+	public static <T> CompletableFuture<T> supplyCancellable(
+		Function<BooleanSupplier, T> task,
+		Executor executor
+	) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		Runnable runnable = () -> {
+			if (future.isDone()) {
+				return;
+			}
+			try {
+				future.complete(task.apply(future::isDone));
+			} catch (Throwable t) {
+				future.completeExceptionally(t);
+			}
+		};
+
+		try {
+			executor.execute(runnable);
+		} catch (Throwable t) {
+			future.completeExceptionally(t);
+		}
+		return future;
+	}
+}
@@ -2,6 +2,14 @@ package com.sparklicorn.sudoku.game;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
 
 import org.junit.Test;
@@ -25,6 +33,38 @@ public class TestBoard {
 		);
 	}
 
+	@Test
+	public void testFromCompressedString() {
+		String[] boards = new String[] {
+			"",
+			"59..1...218......5....6.4.97.......3.48.29.6...5.7..8......32..93.14.......2.7..8",
+			"........................................................................2........",
+			"2................................................................................",
+			"...............................................................................9.",
+			VALID_CONFIGS[0]
+		};
+		byte[] bytes = new byte[Board.NUM_CELLS + 1];
+		StringBuilder strb = new StringBuilder("prefix");
+		for (String s : boards) {
+			Board b = new Board(s);
+			String compressed = b.getCompressedString();
+			assertEquals(b, Board.fromCompressedString(compressed));
+
+			int length = b.writeCompressed(bytes, 0);
+			assertEquals(compressed, new String(bytes, 0, length));
+			bytes[length] = '\n';
+			Board decoded = new Board(VALID_CONFIGS[1]);
+			assertEquals(length, Board.parseCompressedInto(decoded, bytes, 0));
+			assertEquals(b, decoded);
+			assertEquals(b.getNumClues(), decoded.getNumClues());
+
+			strb.setLength(6);
+			assertEquals("prefix" + compressed, b.appendCompressedString(strb).toString());
+		}
+
+		assertEquals(new Board(), Board.fromCompressedString("-"));
+	}
+
 
 	private static final String[] VALID_CONFIGS = new String[] {
 		"793458261218963754456271893634712589185649327927385146541836972872194635369527418",
@@ -704,4 +744,199 @@ public class TestBoard {
 			assertEquals(false, (new Board(c)).isSolved());
 		}
 	}
+
+	@Test
+	public void testFingerprint() throws Exception {
+		ThreadLocalRandom rand = ThreadLocalRandom.current();
+		Board b = new Board(VALID_CONFIGS[0]);
+		Board other = new Board();
+
+		//Fingerprints follow the masks no matter how they were set.
+		for (int n = 0; n < 1000; n++) {
+			int index = rand.nextInt(Board.NUM_CELLS);
+			if (rand.nextBoolean()) {
+				b.setMaskAt(index, rand.nextInt(Board.ALL + 1));
+			} else {
+				b.setValueAt(index, rand.nextInt(10));
+			}
+		}
+		for (int i = 0; i < Board.NUM_CELLS; i++) {
+			other.setMaskAt(i, b.getMaskAt(i));
+		}
+		assertEquals(b, other);
+		assertEquals(b.getFingerprintLow(), other.getFingerprintLow());
+		assertEquals(b.getFingerprintHigh(), other.getFingerprintHigh());
+		assertEquals(b.hashCode(), other.hashCode());
+
+		//Deserialized boards recompute their fingerprint.
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(b);
+		}
+		try (ObjectInputStream in = new ObjectInputStream(
+				new ByteArrayInputStream(bytes.toByteArray()))) {
+			Board read = (Board) in.readObject();
+			assertEquals(b.getFingerprintLow(), read.getFingerprintLow());
+			assertEquals(b.getFingerprintHigh(), read.getFingerprintHigh());
+		}
+
+		//Changing a cell changes the fingerprint, and changing it back restores it.
+		long low = b.getFingerprintLow();
+		int mask = b.getMaskAt(40);
+		b.setMaskAt(40, mask ^ 1);
+		assertNotEquals(low, b.getFingerprintLow());
+		assertNotEquals(b, other);
+		b.setMaskAt(40, mask);
+		assertEquals(low, b.getFingerprintLow());
+
+		assertEquals(new Board().getFingerprintLow(), new Board(new Board()).getFingerprintLow());
+		assertEquals(new Board("").getFingerprintHigh(), new Board().getFingerprintHigh());
+	}
+
+	@Test
+	public void testPrimitiveAccess() {
+		Board b = new Board("59..1...218......5....6.4.97.......3.48.29.6...5.7..8......32..93.14.......2.7..8");
+		b.setMaskAt(2, 0b100100);
+
+		int[] values = b.getValues(new int[Board.NUM_CELLS]);
+		assertArrayEquals(values, b.cells().toArray());
+		assertEquals(b.getNumClues(), b.cells().filter((v) -> v > 0).count());
+
+		assertEquals(b.getMaskAt(0), b.candidateMask(0));
+		assertEquals(0b100100, b.candidateMask(2));
+		List<Integer> candidates = new ArrayList<>();
+		b.forEachCandidate(2, candidates::add);
+		assertEquals(b.getCandidates(2, new ArrayList<>()), candidates);
+
+		Board other = new Board();
+		other.setMasks(b.getMasks(new int[Board.NUM_CELLS]));
+		assertEquals(b, other);
+		assertEquals(b.getNumClues(), other.getNumClues());
+		assertEquals(b.getFingerprintLow(), other.getFingerprintLow());
+
+		int[] masks = new int[Board.NUM_CELLS];
+		masks[0] = Board.ALL + 1;
+		try {
+			other.setMasks(masks);
+			fail("Expected out of bounds mask to be rejected.");
+		} catch (IllegalArgumentException e) {
+			assertEquals(b, other);
+		}
+	}
+
+	@Test
+	public void testParse() {
+		String[] inputs = new String[] {
+			"59..1...218......5....6.4.97.......3.48.29.6...5.7..8......32..93.14.......2.7..8",
+			"59..1...2-18......5....6.4.97.......3.48.29.6...5.7..8......32..93.14.......2.7",
+			"-------8",
+			"----------",
+			"12x4 6789",
+			"",
+			"98765432198765432198765432198765432198765432198765432198765432198765432198765432199999"
+		};
+
+		for (String input : inputs) {
+			Board expected = new Board(input);
+			assertEquals(expected.countClues(), expected.getNumClues());
+
+			Board b = new Board(VALID_CONFIGS[0]);
+			assertEquals(input.length(), Board.parseInto(b, input, 0));
+			assertEquals(expected, b);
+			assertEquals(expected.getNumClues(), b.getNumClues());
+			assertEquals(expected.hashCode(), b.hashCode());
+
+			assertEquals(expected, new Board(input.getBytes(), 0));
+			assertEquals(expected, new Board((CharSequence) input, 0));
+
+			b.clear();
+			Board.parseInto(b, ByteBuffer.wrap(input.getBytes()), 0);
+			assertEquals(expected, b);
+		}
+
+		//Multiple boards, one per line, in one buffer.
+		String lines = "xx" + inputs[0] + "\r\n" + inputs[2] + "\n" + inputs[4];
+		byte[] bytes = lines.getBytes();
+		Board b = new Board();
+		int pos = Board.parseInto(b, bytes, 2);
+		assertEquals(new Board(inputs[0]), b);
+		assertEquals('\r', bytes[pos]);
+		pos = Board.parseInto(b, bytes, pos + 2);
+		assertEquals(new Board(inputs[2]), b);
+		pos = Board.parseInto(b, lines, pos + 1);
+		assertEquals(new Board(inputs[4]), b);
+		assertEquals(lines.length(), pos);
+	}
+
+	/** Returns the cells sharing a unit with another cell holding the same digit.*/
+	private static BitSet bruteForceConflicts(Board b) {
+		BitSet cells = new BitSet();
+		for (int i = 0; i < Board.NUM_CELLS; i++) {
+			int v = b.getValueAt(i);
+			for (int peer : Board.PEER_INDICES[i]) {
+				if (v > 0 && b.getValueAt(peer) == v) {
+					cells.set(i);
+				}
+			}
+		}
+		return cells;
+	}
+
+	@Test
+	public void testConflictTracking() {
+		ThreadLocalRandom rand = ThreadLocalRandom.current();
+		Board tracked = new Board(VALID_CONFIGS[0]);
+		tracked.setConflictTracking(true);
+		assertTrue(tracked.isTrackingConflicts());
+		assertTrue(tracked.isSolved());
+		assertEquals(0, tracked.getNumConflicts());
+
+		Board plain = new Board(VALID_CONFIGS[0]);
+		BitSet cells = new BitSet();
+		for (int n = 0; n < 2000; n++) {
+			int index = rand.nextInt(Board.NUM_CELLS);
+			if (rand.nextInt(4) == 0) {
+				int mask = rand.nextInt(Board.ALL + 1);
+				tracked.setMaskAt(index, mask);
+				plain.setMaskAt(index, mask);
+			} else {
+				int value = rand.nextInt(10);
+				tracked.setValueAt(index, value);
+				plain.setValueAt(index, value);
+			}
+			if (n % 500 == 0) {
+				// Bulk writes recount lazily.
+				tracked.setMasks(plain.getMasks(new int[Board.NUM_CELLS]));
+			}
+
+			assertEquals(plain.isValid(), tracked.isValid());
+			assertEquals(plain.isSolved(), tracked.isSolved());
+			assertEquals(plain.getNumConflicts(), tracked.getNumConflicts());
+			assertEquals(bruteForceConflicts(plain), tracked.getConflictingCells(cells));
+			assertEquals(bruteForceConflicts(plain), plain.getConflictingCells(new BitSet()));
+		}
+		assertFalse(plain.isTrackingConflicts());
+
+		Board copy = new Board(tracked);
+		assertTrue(copy.isTrackingConflicts());
+		copy.setValueAt(0, 0);
+		assertEquals(bruteForceConflicts(copy), copy.getConflictingCells(cells));
+		assertEquals(bruteForceConflicts(tracked), tracked.getConflictingCells(cells));
+
+		copy.clear();
+		assertTrue(copy.isValid());
+		assertEquals(0, copy.getNumConflicts());
+
+		// Two 5s in row 0 count once in the row, and once more if they also share a region.
+		copy.setValueAt(0, 5);
+		copy.setValueAt(1, 5);
+		assertEquals(2, copy.getNumConflicts());
+		copy.setValueAt(8, 5);
+		assertEquals(3, copy.getNumConflicts());
+		assertEquals(3, copy.getConflictingCells(cells).cardinality());
+		copy.setValueAt(1, 0);
+		assertEquals(1, copy.getNumConflicts());
+		copy.setConflictTracking(false);
+		assertFalse(copy.isValid());
+	}
 }
@@ -0,0 +1,129 @@
+package com.sparklicorn.sudoku.game;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.sparklicorn.sudoku.game.solvers.BatchSolver;
+import com.sparklicorn.sudoku.game.solvers.Solver;
+
+public class TestBoardBatch {
+
+	private static final String PUZZLE =
+		"59..1...218......5....6.4.97.......3.48.29.6...5.7..8......32..93.14.......2.7..8";
+
+	private static final String CONFIG =
+		"793458261218963754456271893634712589185649327927385146541836972872194635369527418";
+
+	@Test
+	public void testAddAndCopy() {
+		Board puzzle = new Board(PUZZLE);
+		puzzle.setMaskAt(2, 0b110);
+		List<Board> boards = Arrays.asList(puzzle, new Board(CONFIG), new Board());
+		BoardBatch batch = BoardBatch.of(boards);
+		assertEquals(3, batch.size());
+		assertEquals(3, batch.capacity());
+
+		for (int n = 0; n < boards.size(); n++) {
+			Board expected = boards.get(n);
+			Board copy = batch.toBoard(n);
+			assertEquals(expected.getNumClues(), batch.getNumClues(n));
+			assertEquals(expected.getNumClues(), copy.getNumClues());
+			for (int i = 0; i < Board.NUM_CELLS; i++) {
+				assertEquals(expected.getMaskAt(i), batch.getMaskAt(n, i));
+				assertEquals(expected.getMaskAt(i), copy.getMaskAt(i));
+			}
+			assertEquals(expected.hashCode(), copy.hashCode());
+		}
+
+		try {
+			batch.add(puzzle);
+			fail("Expected a full batch to reject more boards.");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		try {
+			batch.getMaskAt(3, 0);
+			fail("Expected an index past the size to be rejected.");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testView() {
+		BoardBatch batch = BoardBatch.of(Arrays.asList(new Board(PUZZLE), new Board(CONFIG)));
+		BoardBatch.View view = batch.view(0);
+		assertEquals(PUZZLE, view.toString());
+		assertEquals(new Board(PUZZLE).getCandidates(2, new ArrayList<>()), view.getCandidates(2, new ArrayList<>()));
+		assertArrayEquals(new Board(PUZZLE).getValues(new int[Board.NUM_CELLS]), view.getValues(null));
+		assertArrayEquals(new Board(PUZZLE).cells().toArray(), view.cells().toArray());
+
+		int clues = view.getNumClues();
+		view.setValueAt(2, 4);
+		assertEquals(clues + 1, view.getNumClues());
+		assertEquals(4, batch.getValueAt(0, 2));
+		view.setMaskAt(2, Board.ALL);
+		assertEquals(clues, view.getNumClues());
+
+		view.moveTo(1);
+		assertEquals(1, view.getIndex());
+		assertTrue(view.isSolved());
+		int[] masks = view.getMasks(null);
+		masks[0] = masks[1];
+		view.setMasks(masks);
+		assertFalse(view.isValid());
+		assertEquals(Board.NUM_CELLS, view.getNumClues());
+
+		List<String> strings = new ArrayList<>();
+		for (BoardBatch.View v : batch) {
+			strings.add(v.toString());
+		}
+		assertEquals(2, strings.size());
+		assertEquals(PUZZLE, strings.get(0));
+	}
+
+	@Test
+	public void testValidateAndSolve() {
+		Board invalid = new Board(PUZZLE);
+		invalid.setValueAt(2, 5); // 5 already in row 0
+		BoardBatch batch = BoardBatch.of(Arrays.asList(new Board(PUZZLE), invalid, new Board(CONFIG)));
+
+		BitSet bad = new BitSet();
+		assertEquals(2, batch.validateAll(bad));
+		assertEquals(1, bad.cardinality());
+		assertTrue(bad.get(1));
+
+		BitSet unsolved = new BitSet();
+		assertEquals(2, BatchSolver.solveAll(batch, unsolved));
+		assertTrue(unsolved.get(1));
+		assertEquals(Solver.solve(new Board(PUZZLE)), batch.toBoard(0));
+		assertEquals(invalid, batch.toBoard(1));
+		assertTrue(batch.isSolved(0));
+		assertTrue(batch.isSolved(2));
+	}
+
+	@Test
+	public void testLoad() throws IOException {
+		Path file = Files.createTempFile("batch", ".txt");
+		try {
+			Files.write(file, (PUZZLE + "\r\n\n  \n" + CONFIG + "\n" + "-------8").getBytes());
+			BoardBatch batch = BoardBatch.load(file);
+			assertEquals(3, batch.size());
+			assertEquals(new Board(PUZZLE), batch.toBoard(0));
+			assertEquals(new Board(CONFIG), batch.toBoard(1));
+			assertEquals(new Board("-------8"), batch.toBoard(2));
+			assertEquals(1, batch.getNumClues(2));
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
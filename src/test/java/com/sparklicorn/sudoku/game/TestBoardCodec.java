@@ -0,0 +1,153 @@
+package com.sparklicorn.sudoku.game;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TestBoardCodec {
+
+	private static final String PUZZLE =
+		"59..1...218......5....6.4.97.......3.48.29.6...5.7..8......32..93.14.......2.7..8";
+
+	private static final String FULL =
+		"218574639573896124469123578721459386354681792986237415147962853695318247832745961";
+
+	/** The FULL board as written by ObjectOutputStream before Board had a custom form.*/
+	private static final String FULL_DEFAULT_FORM =
+		"rO0ABXNyACFjb20uc3BhcmtsaWNvcm4uc3Vkb2t1LmdhbWUuQm9hcmSn7afJAHJNggIAAkkACG51bUNsdWVzWwAFYm9h"
+		+ "cmR0AAJbSXhwAAAAUXVyAAJbSU26YCZ26rKlAgAAeHAAAABRAAAAAgAAAAEAAACAAAAAEAAAAEAAAAAIAAAAIAAAAAQA"
+		+ "AAEAAAAAEAAAAEAAAAAEAAAAgAAAAQAAAAAgAAAAAQAAAAIAAAAIAAAACAAAACAAAAEAAAAAAQAAAAIAAAAEAAAAEAAA"
+		+ "AEAAAACAAAAAQAAAAAIAAAABAAAACAAAABAAAAEAAAAABAAAAIAAAAAgAAAABAAAABAAAAAIAAAAIAAAAIAAAAABAAAA"
+		+ "QAAAAQAAAAACAAABAAAAAIAAAAAgAAAAAgAAAAQAAABAAAAACAAAAAEAAAAQAAAAAQAAAAgAAABAAAABAAAAACAAAAAC"
+		+ "AAAAgAAAABAAAAAEAAAAIAAAAQAAAAAQAAAABAAAAAEAAACAAAAAAgAAAAgAAABAAAAAgAAAAAQAAAACAAAAQAAAAAgA"
+		+ "AAAQAAABAAAAACAAAAAB";
+
+	private static byte[] encode(Board board) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BoardCodec.write(new DataOutputStream(bytes), board);
+		return bytes.toByteArray();
+	}
+
+	private static Board decode(byte[] bytes) throws IOException {
+		return BoardCodec.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+	}
+
+	private static void assertSameMasks(Board expected, Board actual) {
+		for (int i = 0; i < Board.NUM_CELLS; i++) {
+			assertEquals(expected.getMaskAt(i), actual.getMaskAt(i));
+		}
+		assertEquals(expected.getNumClues(), actual.getNumClues());
+		assertEquals(expected.hashCode(), actual.hashCode());
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		Board puzzle = new Board(PUZZLE);
+		byte[] bytes = encode(puzzle);
+		assertEquals(1 + 11 + (puzzle.getNumClues() + 1) / 2, bytes.length);
+		assertSameMasks(puzzle, decode(bytes));
+
+		Board full = new Board(FULL);
+		bytes = encode(full);
+		assertEquals(42, bytes.length);
+		assertSameMasks(full, decode(bytes));
+
+		Board empty = new Board();
+		bytes = encode(empty);
+		assertEquals(12, bytes.length);
+		assertSameMasks(empty, decode(bytes));
+	}
+
+	@Test
+	public void testCandidatesKept() throws IOException {
+		Board board = new Board(PUZZLE);
+		board.setMaskAt(2, 0b110);
+		board.setMaskAt(3, 0);
+
+		byte[] bytes = encode(board);
+		assertEquals(1 + 2 * Board.NUM_CELLS, bytes.length);
+		assertSameMasks(board, decode(bytes));
+
+		Board into = new Board(FULL);
+		BoardCodec.readInto(new DataInputStream(new ByteArrayInputStream(bytes)), into);
+		assertSameMasks(board, into);
+	}
+
+	@Test(expected = IOException.class)
+	public void testBadDigit() throws IOException {
+		byte[] bytes = encode(new Board(FULL));
+		bytes[5] = (byte) 0xaa;
+		decode(bytes);
+	}
+
+	@Test
+	public void testSerializable() throws Exception {
+		Board puzzle = new Board(PUZZLE);
+		Board full = new Board(FULL);
+		Board narrowed = new Board(PUZZLE);
+		narrowed.setMaskAt(2, 0b110);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(puzzle);
+			out.writeObject(full);
+			out.writeObject(narrowed);
+		}
+		// Much smaller than the default form of a single board.
+		assertTrue(bytes.size() < 400);
+
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			assertSameMasks(puzzle, (Board) in.readObject());
+			assertSameMasks(full, (Board) in.readObject());
+			assertSameMasks(narrowed, (Board) in.readObject());
+		}
+	}
+
+	@Test
+	public void testReadsDefaultForm() throws Exception {
+		byte[] bytes = Base64.getDecoder().decode(FULL_DEFAULT_FORM);
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+			assertSameMasks(new Board(FULL), (Board) in.readObject());
+		}
+	}
+
+	@Test
+	public void testStream() throws IOException {
+		List<Board> boards = new ArrayList<>();
+		boards.add(new Board(PUZZLE));
+		boards.add(new Board());
+		boards.add(new Board(FULL));
+		Board narrowed = new Board(PUZZLE);
+		narrowed.setMaskAt(2, 0b110);
+		boards.add(narrowed);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BoardCodec.writeAll(bytes, boards);
+
+		List<Board> read = BoardCodec.readAll(new ByteArrayInputStream(bytes.toByteArray()));
+		assertEquals(boards.size(), read.size());
+		for (int n = 0; n < boards.size(); n++) {
+			assertSameMasks(boards.get(n), read.get(n));
+		}
+
+		byte[] truncated = new byte[bytes.size() - 1];
+		System.arraycopy(bytes.toByteArray(), 0, truncated, 0, truncated.length);
+		try {
+			BoardCodec.readAll(new ByteArrayInputStream(truncated));
+			fail("Expected a truncated stream to be rejected.");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package com.sparklicorn.sudoku.game;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestPackedBoard {
+
+	private static final String PUZZLE =
+		"59..1...218......5....6.4.97.......3.48.29.6...5.7..8......32..93.14.......2.7..8";
+
+	@Test
+	public void testRoundTrip() {
+		Board board = new Board(PUZZLE);
+		PackedBoard packed = new PackedBoard(board);
+		assertEquals(board.getNumClues(), packed.getNumClues());
+		assertEquals(board.getSimplifiedString(), packed.toString());
+		assertEquals(board, packed.toBoard());
+		assertTrue(packed.matches(board));
+		for (int i = 0; i < Board.NUM_CELLS; i++) {
+			assertEquals(board.getValueAt(i), packed.getValueAt(i));
+		}
+
+		Board full = new Board("793458261218963754456271893634712589185649327927385146541836972872194635369527418");
+		assertTrue(new PackedBoard(full).isFull());
+		assertEquals(full, new PackedBoard(full).unpackInto(new Board(PUZZLE)));
+	}
+
+	@Test
+	public void testCandidatesDropped() {
+		Board board = new Board(PUZZLE);
+		Board narrowed = new Board(board);
+		narrowed.setMaskAt(2, 0b110);
+		narrowed.setMaskAt(3, 0);
+
+		PackedBoard packed = new PackedBoard(narrowed);
+		assertEquals(new PackedBoard(board), packed);
+		assertEquals(new PackedBoard(board).hashCode(), packed.hashCode());
+		assertEquals(board, packed.toBoard());
+		assertTrue(packed.matches(narrowed));
+		assertFalse(packed.equals(new PackedBoard(new Board())));
+	}
+}
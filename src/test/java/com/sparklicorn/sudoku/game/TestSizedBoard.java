@@ -0,0 +1,126 @@
+package com.sparklicorn.sudoku.game;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+public class TestSizedBoard {
+
+	private static final String PUZZLE =
+		"59..1...218......5....6.4.97.......3.48.29.6...5.7..8......32..93.14.......2.7..8";
+
+	@Test
+	public void testShapes() {
+		for (int base = BoardShape.MIN_BASE; base <= BoardShape.MAX_BASE; base++) {
+			BoardShape shape = BoardShape.of(base);
+			int size = base * base;
+			assertEquals(size, shape.getSize());
+			assertEquals(size * size, shape.getNumCells());
+			assertEquals(size, Integer.bitCount(shape.getAll()));
+			assertSame(shape, BoardShape.ofSize(size));
+
+			// Every unit holds each cell at most once, and every cell is in 3 units.
+			int[] units = shape.getUnits();
+			int[] seen = new int[shape.getNumCells()];
+			for (int cell : units) {
+				seen[cell]++;
+			}
+			for (int count : seen) {
+				assertEquals(3, count);
+			}
+
+			// Peers are distinct and never include the cell itself.
+			int[] peers = shape.getPeers();
+			int numPeers = shape.getNumPeers();
+			for (int i = 0; i < shape.getNumCells(); i++) {
+				boolean[] isPeer = new boolean[shape.getNumCells()];
+				for (int p = i * numPeers; p < (i + 1) * numPeers; p++) {
+					assertNotEquals(i, peers[p]);
+					assertFalse(isPeer[peers[p]]);
+					isPeer[peers[p]] = true;
+				}
+			}
+
+			// Each crossing lists every cell of its region and line once.
+			int[] crossings = shape.getIntersections();
+			int blockSize = shape.getIntersectionBlockSize();
+			assertEquals(size * 2 * base * blockSize, crossings.length);
+			for (int b = 0; b < crossings.length; b += blockSize) {
+				int region = b / (2 * base * blockSize);
+				int[] regionCount = new int[shape.getNumCells()];
+				for (int j = b; j < b + size; j++) {
+					regionCount[crossings[j]]++;
+				}
+				for (int j = 0; j < size; j++) {
+					assertEquals(1, regionCount[units[(2 * size + region) * size + j]]);
+				}
+			}
+		}
+
+		// The 9x9 tables agree with Board's.
+		BoardShape classic = BoardShape.CLASSIC;
+		assertEquals(Board.NUM_PEERS, classic.getNumPeers());
+		assertEquals(Board.ALL, classic.getAll());
+		for (int i = 0; i < Board.NUM_CELLS; i++) {
+			int[] expected = Board.PEER_INDICES[i].clone();
+			int[] actual = new int[Board.NUM_PEERS];
+			System.arraycopy(classic.getPeers(), i * Board.NUM_PEERS, actual, 0, Board.NUM_PEERS);
+			java.util.Arrays.sort(expected);
+			java.util.Arrays.sort(actual);
+			assertArrayEquals(expected, actual);
+		}
+
+		try {
+			BoardShape.of(6);
+			fail("Expected base 6 to be rejected.");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testClassicConversion() {
+		Board board = new Board(PUZZLE);
+		board.setMaskAt(2, 0b110);
+		SizedBoard sized = new SizedBoard(board);
+		assertEquals(board.getNumClues(), sized.getNumClues());
+		assertEquals(board.getSimplifiedString(), sized.getSimplifiedString());
+		for (int i = 0; i < Board.NUM_CELLS; i++) {
+			assertEquals(board.getValueAt(i), sized.getValueAt(i));
+			assertEquals(board.getMaskAt(i), sized.getMaskAt(i));
+		}
+		assertEquals(board, sized.toBoard());
+		assertEquals(new SizedBoard(PUZZLE), new SizedBoard(new Board(PUZZLE)));
+		assertEquals(
+			board.getCandidates(2, new ArrayList<>()),
+			sized.getCandidates(2, new ArrayList<>())
+		);
+	}
+
+	@Test
+	public void testLargeDigits() {
+		BoardShape shape = BoardShape.of(4);
+		SizedBoard board = new SizedBoard(shape, "1.9ABg");
+		assertEquals(5, board.getNumClues());
+		assertEquals(10, board.getValueAt(3));
+		assertEquals(16, board.getValueAt(5));
+		assertEquals("1.9ABG", board.getSimplifiedString().substring(0, 6));
+
+		board.setValueAt(6, 16);
+		assertFalse(board.isValid());
+		board.setValueAt(6, 0);
+		assertEquals(0, board.getMaskAt(6));
+		assertEquals(5, board.getNumClues());
+		assertTrue(board.isValid());
+		assertFalse(board.isSolved());
+
+		try {
+			board.setValueAt(0, 17);
+			fail("Expected 17 to be rejected on a 16x16 board.");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
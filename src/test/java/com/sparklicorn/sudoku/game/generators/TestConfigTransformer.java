@@ -0,0 +1,70 @@
+package com.sparklicorn.sudoku.game.generators;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.sparklicorn.sudoku.game.Board;
+
+public class TestConfigTransformer {
+
+	private static final String CONFIG =
+		"793458261218963754456271893634712589185649327927385146541836972872194635369527418";
+
+	@Test
+	public void testConfigsAreSolved() {
+		ConfigTransformer transformer = new ConfigTransformer(Arrays.asList(new Board(CONFIG)), new Random(1L));
+		Set<Board> seen = new HashSet<>();
+		Board board = new Board();
+		for (int n = 0; n < 1000; n++) {
+			transformer.nextInto(board);
+			assertTrue(board.isSolved());
+			seen.add(new Board(board));
+		}
+		// Repeats among a billion-odd transforms of one grid are very unlikely.
+		assertTrue(seen.size() > 990);
+	}
+
+	@Test
+	public void testTransformsOnlyPermute() {
+		// Relabeling maps digits one to one, so each digit is still placed nine times.
+		ConfigTransformer transformer = new ConfigTransformer(Arrays.asList(new Board(CONFIG)), new Random(2L));
+		int[] masks = new int[Board.NUM_CELLS];
+		for (int n = 0; n < 100; n++) {
+			transformer.nextInto(masks);
+			int[] counts = new int[Board.NUM_DIGITS + 1];
+			for (int mask : masks) {
+				counts[Board.decode(mask)]++;
+			}
+			assertEquals(0, counts[0]);
+			for (int d = 1; d <= Board.NUM_DIGITS; d++) {
+				assertEquals(Board.NUM_DIGITS, counts[d]);
+			}
+		}
+	}
+
+	@Test
+	public void testRefresh() {
+		ConfigTransformer transformer = new ConfigTransformer(2, new Random(3L));
+		assertEquals(2, transformer.getNumSeeds());
+		transformer.setRefreshInterval(5L);
+		for (int n = 0; n < 20; n++) {
+			assertTrue(transformer.next().isSolved());
+		}
+		transformer.refreshSeeds(10);
+		assertEquals(2, transformer.getNumSeeds());
+		assertTrue(transformer.next().isSolved());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsUnsolvedSeed() {
+		Board partial = new Board(CONFIG);
+		partial.setValueAt(0, 0);
+		new ConfigTransformer(Arrays.asList(partial), new Random());
+	}
+}
@@ -0,0 +1,170 @@
+package com.sparklicorn.sudoku.game.generators;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.sparklicorn.sudoku.game.Board;
+import com.sparklicorn.sudoku.game.solvers.BitboardSolver;
+
+public class TestGenerator {
+
+	/** Checks that each board removes one clue of the one before it.*/
+	private static void assertCarved(List<Board> boards, int numClues) {
+		assertFalse(boards.isEmpty());
+		Board config = boards.get(0);
+		assertTrue(config.isSolved());
+		for (int n = 1; n < boards.size(); n++) {
+			Board prev = boards.get(n - 1);
+			Board board = boards.get(n);
+			assertEquals(prev.getNumClues() - 1, board.getNumClues());
+			for (int i = 0; i < Board.NUM_CELLS; i++) {
+				if (board.getValueAt(i) > 0) {
+					assertEquals(config.getValueAt(i), board.getValueAt(i));
+				}
+			}
+		}
+		Board puzzle = boards.get(boards.size() - 1);
+		assertEquals(numClues, puzzle.getNumClues());
+		assertTrue(BitboardSolver.solvesUniquely(puzzle));
+	}
+
+	@Test
+	public void testGeneratePuzzles() {
+		assertCarved(Generator.generatePuzzles(30), 30);
+	}
+
+	@Test
+	public void testRestartPolicies() {
+		Board config = Generator.generateConfig();
+		for (String spec : new String[] { "fixed:10", "luby:4", "geometric:5:2", "adaptive:0.5" }) {
+			List<Board> boards = Generator.generatePuzzles(config, 26, null, RestartPolicy.parse(spec, 26));
+			assertCarved(boards, 26);
+		}
+	}
+
+	@Test
+	public void testResetTried() {
+		// The DFS resets the root on every restart. Without it, the root runs
+		// out of removals after 81 restarts and the search ends empty.
+		Generator.Node root = new Generator.Node(Generator.generateConfig(), 0L, null);
+		for (int n = 0; n < Board.NUM_CELLS; n++) {
+			assertNotNull(root.getNextUnvisited());
+		}
+		assertNull(root.getNextUnvisited());
+
+		root.resetTried();
+		for (int n = 0; n < Board.NUM_CELLS; n++) {
+			assertNotNull(root.getNextUnvisited());
+		}
+		assertNull(root.getNextUnvisited());
+	}
+
+	@Test
+	public void testManyRestarts() {
+		// Restarts after every failed removal for a while, then carves normally.
+		int[] restarts = new int[1];
+		RestartPolicy policy = new RestartPolicy() {
+			@Override
+			public int nextLimit() {
+				return (++restarts[0] <= 200) ? 1 : 100;
+			}
+		};
+		assertCarved(Generator.generatePuzzles(null, 24, null, policy), 24);
+	}
+
+	@Test
+	public void testGivesUp() {
+		// Too few pops to carve 17 clues, and the partial path is not returned.
+		assertTrue(Generator.generatePuzzles(17, 50).isEmpty());
+	}
+
+	@Test
+	public void testBeam() {
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			Board config = Generator.generateConfig();
+			List<Board> boards = Generator.generatePuzzlesBeam(config, 28, 8, new UniquenessCache(1 << 12), pool);
+			assertEquals(config, boards.get(0));
+			assertCarved(boards, 28);
+			assertCarved(Generator.generatePuzzlesBeam(null, 30, 1, null, null), 30);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBeamRejectsEmptyBeam() {
+		Generator.generatePuzzlesBeam(null, 30, 0, null, null);
+	}
+
+	@Test
+	public void testGeneratePuzzleAsync() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Board config = Generator.generateConfig();
+			Board puzzle = Generator.generatePuzzleAsync(config, 28, executor, null).get(30L, TimeUnit.SECONDS);
+			assertEquals(28, puzzle.getNumClues());
+			assertTrue(BitboardSolver.solvesUniquely(puzzle));
+			assertEquals(config, BitboardSolver.solve(puzzle));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testCancelGeneratePuzzleAsync() throws Exception {
+		ExecutorService pool = Executors.newSingleThreadExecutor();
+		CountDownLatch started = new CountDownLatch(1);
+		Executor executor = (task) -> pool.execute(() -> {
+			started.countDown();
+			task.run();
+		});
+
+		// No 17 clue puzzle is likely to be found, so the search runs until cancelled.
+		CompletableFuture<Board> future = Generator.generatePuzzleAsync(17, executor);
+		assertTrue(started.await(10L, TimeUnit.SECONDS));
+		assertTrue(future.cancel(true));
+
+		pool.shutdown();
+		assertTrue(pool.awaitTermination(10L, TimeUnit.SECONDS));
+		assertTrue(future.isCancelled());
+	}
+
+	@Test
+	public void testSharedCache() {
+		UniquenessCache cache = new UniquenessCache(1 << 16);
+		Board config = Generator.generateConfig();
+		for (int n = 0; n < 3; n++) {
+			List<Board> boards = Generator.generatePuzzles(config, 28, cache);
+			assertEquals(config, boards.get(0));
+			assertCarved(boards, 28);
+		}
+		assertTrue(cache.size() > 0);
+		// The root is looked up once per search, and found after the first.
+		assertTrue(cache.getHits() >= 2);
+	}
+
+	@Test
+	public void testSpeculative() {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			Board config = Generator.generateConfig();
+			List<Board> boards = Generator.generatePuzzlesSpeculative(config, 26, null, pool, 4, null);
+			assertEquals(config, boards.get(0));
+			assertCarved(boards, 26);
+			assertCarved(Generator.generatePuzzlesSpeculative(null, 28, new UniquenessCache(1 << 12), pool, 1, null), 28);
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
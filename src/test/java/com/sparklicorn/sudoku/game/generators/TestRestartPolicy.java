@@ -0,0 +1,71 @@
+package com.sparklicorn.sudoku.game.generators;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.sparklicorn.sudoku.game.Board;
+
+public class TestRestartPolicy {
+
+	@Test
+	public void testLuby() {
+		long[] expected = { 1, 1, 2, 1, 1, 2, 4, 1, 1, 2, 1, 1, 2, 4, 8, 1 };
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], RestartPolicy.lubyTerm(i + 1));
+		}
+		RestartPolicy policy = RestartPolicy.luby(10);
+		for (long term : expected) {
+			assertEquals(10 * term, policy.nextLimit());
+		}
+	}
+
+	@Test
+	public void testFixedAndGeometric() {
+		RestartPolicy fixed = RestartPolicy.fixed(100);
+		RestartPolicy geometric = RestartPolicy.geometric(10, 2.0);
+		for (int n = 0; n < 5; n++) {
+			assertEquals(100, fixed.nextLimit());
+			assertEquals(10 << n, geometric.nextLimit());
+		}
+	}
+
+	@Test
+	public void testAdaptive() {
+		RestartPolicy policy = RestartPolicy.adaptive(25, 1.0);
+		int initial = policy.nextLimit();
+		// With no data, each clue count from 25 to 80 expects one failure.
+		assertEquals(Board.NUM_CELLS - 25, initial);
+		// Removals at the target mostly fail, so paths need more room.
+		for (int n = 0; n < 200; n++) {
+			policy.record(25, n % 20 == 0);
+		}
+		int hard = policy.nextLimit();
+		assertTrue(hard > initial);
+		// Removals far from the target all succeed, which lowers the estimate.
+		for (int c = 26; c < Board.NUM_CELLS; c++) {
+			for (int n = 0; n < 50; n++) {
+				policy.record(c, true);
+			}
+		}
+		assertTrue(policy.nextLimit() < hard);
+	}
+
+	@Test
+	public void testParse() {
+		assertEquals("fixed:40", RestartPolicy.parse("fixed:40", 24).toString());
+		assertEquals("luby:32", RestartPolicy.parse("luby:32", 24).toString());
+		assertEquals("geometric:50:1.5", RestartPolicy.parse("geometric:50:1.5", 24).toString());
+		assertEquals("adaptive:0.5", RestartPolicy.parse("adaptive:0.5", 24).toString());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseRejectsUnknown() {
+		RestartPolicy.parse("sometimes:3", 24);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseRejectsMissingArgument() {
+		RestartPolicy.parse("geometric:50", 24);
+	}
+}
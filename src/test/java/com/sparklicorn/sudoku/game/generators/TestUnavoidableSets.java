@@ -0,0 +1,78 @@
+package com.sparklicorn.sudoku.game.generators;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.sparklicorn.sudoku.game.Board;
+import com.sparklicorn.sudoku.game.solvers.BitboardSolver;
+
+public class TestUnavoidableSets {
+
+	private static final String CONFIG =
+		"793458261218963754456271893634712589185649327927385146541836972872194635369527418";
+
+	private static int size(long[] set) {
+		return Long.bitCount(set[0]) + Long.bitCount(set[1]);
+	}
+
+	private static boolean contains(long[] set, int cell) {
+		return (cell < 64) ? (set[0] & (1L << cell)) != 0L : (set[1] & (1L << (cell - 64))) != 0L;
+	}
+
+	@Test
+	public void testSetsAreUnavoidable() {
+		Board config = new Board(CONFIG);
+		UnavoidableSets sets = UnavoidableSets.find(config, 12, 3);
+		assertTrue(sets.size() > 0);
+		BitboardSolver solver = new BitboardSolver();
+		for (int s = 0; s < sets.size(); s++) {
+			long[] set = sets.getSet(s);
+			assertTrue(size(set) >= UnavoidableSets.MIN_SIZE && size(set) <= 12);
+
+			// Removing every cell of the set leaves more than one solution.
+			Board board = new Board(config);
+			for (int i = 0; i < Board.NUM_CELLS; i++) {
+				if (contains(set, i)) {
+					board.setMaskAt(i, Board.ALL);
+				}
+			}
+			assertEquals(2, solver.countSolutions(board, 2));
+
+			for (int t = 0; t < sets.size(); t++) {
+				long[] other = sets.getSet(t);
+				if (t != s) {
+					assertFalse((other[0] & ~set[0]) == 0L && (other[1] & ~set[1]) == 0L);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testBreaks() {
+		UnavoidableSets sets = UnavoidableSets.find(new Board(CONFIG));
+		long[] set = sets.getSet(0);
+		long all = -1L;
+		long allHigh = (1L << 17) - 1L;
+		assertTrue(sets.allHit(all, allHigh));
+
+		// Keep exactly one cell of the set; removing it breaks the set.
+		int kept = (set[0] != 0L) ? Long.numberOfTrailingZeros(set[0]) : 64 + Long.numberOfTrailingZeros(set[1]);
+		long low = all & ~set[0];
+		long high = allHigh & ~set[1];
+		if (kept < 64) {
+			low |= 1L << kept;
+		} else {
+			high |= 1L << (kept - 64);
+		}
+		assertTrue(sets.breaks(low, high, kept));
+		assertFalse(sets.breaks(all, allHigh, kept));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsPartialConfig() {
+		Board board = new Board(CONFIG);
+		board.setMaskAt(0, Board.ALL);
+		UnavoidableSets.find(board);
+	}
+}
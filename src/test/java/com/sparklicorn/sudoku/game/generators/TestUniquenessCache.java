@@ -0,0 +1,48 @@
+package com.sparklicorn.sudoku.game.generators;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestUniquenessCache {
+
+	@Test
+	public void testPutGet() {
+		UniquenessCache cache = new UniquenessCache(1000);
+		assertEquals(1024, cache.getCapacity());
+		assertEquals(UniquenessCache.UNKNOWN, cache.get(1L, 2L, 3L));
+
+		cache.put(1L, 2L, 3L, true);
+		cache.put(1L, 2L, 4L, false);
+		cache.put(5L, 2L, 3L, false);
+		assertEquals(UniquenessCache.UNIQUE, cache.get(1L, 2L, 3L));
+		assertEquals(UniquenessCache.NOT_UNIQUE, cache.get(1L, 2L, 4L));
+		assertEquals(UniquenessCache.NOT_UNIQUE, cache.get(5L, 2L, 3L));
+		assertEquals(UniquenessCache.UNKNOWN, cache.get(5L, 2L, 4L));
+		assertEquals(3, cache.size());
+
+		cache.put(1L, 2L, 3L, false);
+		assertEquals(UniquenessCache.NOT_UNIQUE, cache.get(1L, 2L, 3L));
+		assertEquals(3, cache.size());
+
+		assertEquals(4, cache.getHits());
+		assertEquals(2, cache.getMisses());
+		assertEquals(4.0 / 6.0, cache.getHitRate(), 1e-9);
+	}
+
+	@Test
+	public void testBounded() {
+		UniquenessCache cache = new UniquenessCache(256);
+		for (long n = 0L; n < 10000L; n++) {
+			cache.put(7L, n, n & 0x1ffffL, (n & 1L) == 0L);
+		}
+		assertTrue(cache.size() <= cache.getCapacity());
+		assertEquals(UniquenessCache.UNIQUE, cache.get(7L, 9998L, 9998L & 0x1ffffL));
+		assertEquals(UniquenessCache.NOT_UNIQUE, cache.get(7L, 9999L, 9999L & 0x1ffffL));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsFlagBits() {
+		new UniquenessCache().put(1L, 0L, 1L << 63, true);
+	}
+}
@@ -0,0 +1,69 @@
+package com.sparklicorn.sudoku.game.solvers;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import com.sparklicorn.sudoku.game.Board;
+import com.sparklicorn.sudoku.puzzles.GeneratedPuzzles;
+
+public class TestBatchSolver {
+
+	/** Cell 8 can only hold a 9, but column 8 already has one.*/
+	private static final String UNSOLVABLE =
+		"12345678....................................9....................................";
+
+	private static List<Board> boards() {
+		List<Board> boards = new ArrayList<>(GeneratedPuzzles.convertStringsToBoards(
+			Arrays.copyOf(GeneratedPuzzles.PUZZLES_24_1000, 40)
+		));
+		boards.add(7, new Board(UNSOLVABLE));
+		return boards;
+	}
+
+	@Test
+	public void testOrderByCost() {
+		List<Board> boards = boards();
+		Integer[] order = BatchSolver.orderByCost(boards);
+
+		boolean[] seen = new boolean[boards.size()];
+		for (int index : order) {
+			assertFalse(seen[index]);
+			seen[index] = true;
+		}
+		assertEquals(boards.size(), order.length);
+
+		for (int n = 1; n < order.length; n++) {
+			double prev = BatchSolver.estimateCost(boards.get(order[n - 1]));
+			assertTrue(prev >= BatchSolver.estimateCost(boards.get(order[n])));
+		}
+		assertEquals(0.0, BatchSolver.estimateCost(new Board(UNSOLVABLE)), 0.0);
+	}
+
+	@Test
+	public void testSolveAll() {
+		List<Board> boards = boards();
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			for (boolean longestFirst : new boolean[] { false, true }) {
+				Board[] solutions = BatchSolver.solveAll(boards, pool, longestFirst);
+				assertEquals(boards.size(), solutions.length);
+				for (int i = 0; i < solutions.length; i++) {
+					if (i == 7) {
+						assertNull(solutions[i]);
+					} else {
+						assertEquals(Solver.solve(boards.get(i)), solutions[i]);
+						assertTrue(solutions[i].isSolved());
+					}
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
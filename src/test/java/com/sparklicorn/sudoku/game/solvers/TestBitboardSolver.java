@@ -0,0 +1,100 @@
+package com.sparklicorn.sudoku.game.solvers;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.sparklicorn.sudoku.game.Board;
+
+public class TestBitboardSolver {
+
+	private static final String CONFIG =
+		"793458261218963754456271893634712589185649327927385146541836972872194635369527418";
+
+	private static final String PUZZLE =
+		".5....92..2.1.4.7..4.3....156.........8..72....4.9........46.....7.8.36....5.....";
+
+	@Test
+	public void testSolve() {
+		Board puzzle = new Board(PUZZLE);
+		Board solution = BitboardSolver.solve(puzzle);
+		assertNotNull(solution);
+		assertTrue(solution.isSolved());
+		assertEquals(Solver.solve(puzzle), solution);
+		assertTrue(BitboardSolver.solvesUniquely(puzzle));
+
+		BitboardSolver solver = new BitboardSolver();
+		assertEquals(2, solver.countSolutions(new Board(), 2));
+		assertEquals(new Board(CONFIG), BitboardSolver.solve(new Board(CONFIG)));
+	}
+
+	@Test
+	public void testNoSolution() {
+		Board board = new Board(PUZZLE);
+		board.setValueAt(0, 5); // 5 already in row 0
+		assertNull(BitboardSolver.solve(board));
+		assertFalse(new BitboardSolver().load(board));
+
+		Board empty = new Board(PUZZLE);
+		empty.setMaskAt(0, 0);
+		assertNull(BitboardSolver.solve(empty));
+	}
+
+	@Test
+	public void testImportExport() {
+		Board puzzle = new Board(PUZZLE);
+		BitboardSolver solver = new BitboardSolver();
+		assertTrue(solver.load(puzzle));
+
+		// Loading keeps the clues and removes each one from its peers, so every
+		// candidate left by Solver.reduce is still there.
+		Board reduced = new Board(puzzle);
+		Solver.reduce(reduced);
+		Board loaded = solver.toBoard();
+		for (int i = 0; i < Board.NUM_CELLS; i++) {
+			if (puzzle.getValueAt(i) > 0) {
+				assertEquals(puzzle.getMaskAt(i), loaded.getMaskAt(i));
+			}
+			assertEquals(0, reduced.getMaskAt(i) & ~loaded.getMaskAt(i));
+		}
+
+		assertTrue(solver.isCandidate(0, 3));
+		assertFalse(solver.isCandidate(0, 5));
+		assertEquals(1, solver.countPlacesInUnit(0, 5));
+
+		// Propagation never contradicts the unique solution.
+		assertTrue(solver.propagate());
+		Board solution = Solver.solve(puzzle);
+		for (int i = 0; i < Board.NUM_CELLS; i++) {
+			assertTrue(solver.isCandidate(i, solution.getValueAt(i)));
+		}
+	}
+
+	@Test
+	public void testRandomSolution() {
+		BitboardSolver solver = new BitboardSolver();
+		Random random = new Random(1L);
+		Board puzzle = new Board(PUZZLE);
+		assertEquals(BitboardSolver.solve(puzzle), solver.randomSolution(puzzle, random, false));
+		assertEquals(BitboardSolver.solve(puzzle), solver.randomSolution(puzzle, random, true));
+
+		Board broken = new Board(PUZZLE);
+		broken.setValueAt(0, 5);
+		assertNull(solver.randomSolution(broken, random, false));
+		assertNull(solver.randomSolution(broken, random, true));
+
+		for (boolean weighted : new boolean[] { false, true }) {
+			Set<Board> configs = new HashSet<>();
+			for (int n = 0; n < 50; n++) {
+				Board config = solver.randomSolution(new Board(), random, weighted);
+				assertTrue(config.isSolved());
+				configs.add(config);
+			}
+			assertEquals(50, configs.size());
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package com.sparklicorn.sudoku.game.solvers;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.sparklicorn.sudoku.game.Board;
+import com.sparklicorn.sudoku.game.BoardShape;
+import com.sparklicorn.sudoku.game.SizedBoard;
+
+public class TestSizedSolver {
+
+	private static final String PUZZLE =
+		".5....92..2.1.4.7..4.3....156.........8..72....4.9........46.....7.8.36....5.....";
+
+	/** A 25x25 puzzle with 261 clues and a unique solution.*/
+	private static final String PUZZLE_25 =
+		"3.....6I....M.P.....N.AE....N.4J.25.L....D..B.8K..5.4JH8....NA.FE..6LG....9"
+		+ "..O..FNC..........K...52H.....D7.B......CF...6...I.KC..H.7.D.....N.B.APMO.."
+		+ "D..2.....O..1....G..B9....LMP6...A...7.3.CE8KG.45JF.9..I.J5..O...7..D3E...1"
+		+ "......E..8BFN9A..PO..H.37M....73B.95.2J.E..C8...4.H......P......8.6.I.3..FB"
+		+ "C8...J....L.G64.7..F..MOP9F7..6L.4I.M....J..DAN.8..4..GNAE..3.B..P.K.O5...2"
+		+ "...C.5HD.2...LJ...B.M.P6.27.H..M........4L.....B..GJLI....1.9BF3N.K...H...."
+		+ "..3.FL...GM.O....H2...E18.....3.FN...D5....E1.L.J........AC..7..9.E...4G.H."
+		+ ".H.45.8..1....CL.O6.D.....M.8.2D.9...5..A....O.6..7.2.3POLI...K..5G4J....C."
+		+ "........HJ...PI.2D798E1.K";
+
+	/**
+	 * Returns a shuffled solved board of the given shape, built from the
+	 * standard pattern by relabeling digits and permuting rows and columns
+	 * within their bands and stacks.
+	 */
+	private static SizedBoard randomConfig(BoardShape shape, Random random) {
+		int base = shape.getBase();
+		int size = shape.getSize();
+		int[] digits = shuffled(size, random);
+		int[] rows = bandOrder(base, random);
+		int[] cols = bandOrder(base, random);
+
+		SizedBoard board = new SizedBoard(shape);
+		for (int r = 0; r < size; r++) {
+			for (int c = 0; c < size; c++) {
+				int pr = rows[r];
+				int pc = cols[c];
+				int pattern = (base * (pr % base) + pr / base + pc) % size;
+				board.setValueAt(r * size + c, digits[pattern] + 1);
+			}
+		}
+		return board;
+	}
+
+	private static int[] bandOrder(int base, Random random) {
+		int[] bands = shuffled(base, random);
+		int[] order = new int[base * base];
+		for (int b = 0; b < base; b++) {
+			int[] within = shuffled(base, random);
+			for (int k = 0; k < base; k++) {
+				order[b * base + k] = bands[b] * base + within[k];
+			}
+		}
+		return order;
+	}
+
+	private static int[] shuffled(int n, Random random) {
+		int[] a = new int[n];
+		for (int i = 0; i < n; i++) {
+			a[i] = i;
+		}
+		for (int i = n - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int t = a[i];
+			a[i] = a[j];
+			a[j] = t;
+		}
+		return a;
+	}
+
+	private static SizedBoard removeCells(SizedBoard config, double fraction, Random random) {
+		SizedBoard puzzle = new SizedBoard(config);
+		int all = config.getShape().getAll();
+		for (int i = 0; i < puzzle.getNumCells(); i++) {
+			if (random.nextDouble() < fraction) {
+				puzzle.setMaskAt(i, all);
+			}
+		}
+		return puzzle;
+	}
+
+	private static void assertSolves(SizedBoard puzzle) {
+		SizedBoard solution = SizedSolver.solve(puzzle);
+		assertNotNull(solution);
+		assertTrue(solution.isSolved());
+		for (int i = 0; i < puzzle.getNumCells(); i++) {
+			int v = puzzle.getValueAt(i);
+			if (v > 0) {
+				assertEquals(v, solution.getValueAt(i));
+			}
+		}
+	}
+
+	@Test
+	public void testClassic() {
+		Board puzzle = new Board(PUZZLE);
+		SizedBoard solution = SizedSolver.solve(new SizedBoard(puzzle));
+		assertNotNull(solution);
+		assertEquals(Solver.solve(puzzle), solution.toBoard());
+		assertTrue(SizedSolver.solvesUniquely(new SizedBoard(puzzle)));
+		assertEquals(2, new SizedSolver(BoardShape.CLASSIC).countSolutions(new SizedBoard(BoardShape.CLASSIC), 2));
+	}
+
+	@Test
+	public void testNoSolution() {
+		SizedBoard board = new SizedBoard(new Board(PUZZLE));
+		board.setValueAt(0, 5); // 5 already in row 0
+		assertNull(SizedSolver.solve(board));
+
+		board = new SizedBoard(new Board(PUZZLE));
+		board.setMaskAt(0, 0);
+		assertNull(SizedSolver.solve(board));
+	}
+
+	@Test
+	public void testLargerShapes() {
+		Random random = new Random(40L);
+		for (int base = BoardShape.MIN_BASE; base <= 4; base++) {
+			BoardShape shape = BoardShape.of(base);
+			SizedBoard config = randomConfig(shape, random);
+			assertTrue(config.isSolved());
+			assertEquals(config, SizedSolver.solve(config));
+			assertSolves(removeCells(config, 0.6, random));
+			assertSolves(new SizedBoard(shape));
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void test25x25() {
+		SizedBoard puzzle = new SizedBoard(PUZZLE_25);
+		assertEquals(BoardShape.of(5), puzzle.getShape());
+		assertEquals(261, puzzle.getNumClues());
+		assertSolves(puzzle);
+		assertTrue(SizedSolver.solvesUniquely(puzzle));
+
+		Random random = new Random(25L);
+		BoardShape shape = BoardShape.of(5);
+		SizedBoard config = randomConfig(shape, random);
+		assertTrue(config.isSolved());
+		assertSolves(removeCells(config, 0.4, random));
+		assertSolves(new SizedBoard(shape));
+	}
+}
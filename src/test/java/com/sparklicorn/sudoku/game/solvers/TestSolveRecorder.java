@@ -0,0 +1,153 @@
+package com.sparklicorn.sudoku.game.solvers;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+import com.sparklicorn.sudoku.game.Board;
+
+public class TestSolveRecorder {
+
+	private static final String PUZZLE =
+		".5....92..2.1.4.7..4.3....156.........8..72....4.9........46.....7.8.36....5.....";
+
+	/** Queues thousands of guesses before it is solved.*/
+	private static final String HARD =
+		"8..........36......7..9.2...5...7.......457.....1...3...1....68..85...1..9....4..";
+
+	private static final int[] TYPES = {
+		SolveRecorder.ASSIGN,
+		SolveRecorder.ELIMINATE,
+		SolveRecorder.GUESS,
+		SolveRecorder.BACKTRACK,
+		SolveRecorder.SOLUTION,
+		SolveRecorder.RESTORE
+	};
+
+	@Test
+	public void testEncode() {
+		for (int type : TYPES) {
+			for (int index : new int[] { 0, 40, Board.NUM_CELLS - 1 }) {
+				for (int digit = 0; digit <= 9; digit++) {
+					for (int depth : new int[] { 0, 1, 81, 255 }) {
+						int event = SolveRecorder.encode(type, index, digit, depth);
+						assertEquals(type, SolveRecorder.typeOf(event));
+						assertEquals(index, SolveRecorder.indexOf(event));
+						assertEquals(digit, SolveRecorder.digitOf(event));
+						assertEquals(depth, SolveRecorder.depthOf(event));
+					}
+				}
+			}
+		}
+
+		// Depths past the field width are clamped.
+		assertEquals(255, SolveRecorder.depthOf(SolveRecorder.encode(SolveRecorder.GUESS, 3, 4, 1000)));
+	}
+
+	@Test
+	public void testWraparound() {
+		SolveRecorder recorder = new SolveRecorder(5);
+		assertEquals(8, recorder.getCapacity());
+
+		for (int n = 0; n < 8; n++) {
+			recorder.record(SolveRecorder.ELIMINATE, n, 1, 0);
+		}
+		assertEquals(8, recorder.size());
+		assertFalse(recorder.hasOverflowed());
+
+		for (int n = 8; n < 20; n++) {
+			recorder.record(SolveRecorder.ELIMINATE, n, 1, 0);
+		}
+		assertEquals(8, recorder.size());
+		assertEquals(20L, recorder.getNumRecorded());
+		assertTrue(recorder.hasOverflowed());
+		for (int n = 0; n < 8; n++) {
+			assertEquals(12 + n, SolveRecorder.indexOf(recorder.getEvent(n)));
+		}
+
+		try {
+			recorder.getEvent(8);
+			fail();
+		} catch (IndexOutOfBoundsException e) {
+		}
+
+		recorder.clear();
+		assertEquals(0, recorder.size());
+		assertFalse(recorder.hasOverflowed());
+	}
+
+	@Test
+	public void testDumpAndRead() throws IOException {
+		SolveRecorder recorder = new SolveRecorder(4);
+		for (int n = 0; n < 6; n++) {
+			recorder.record(TYPES[n], n, n + 1, n);
+		}
+
+		File file = Files.createTempFile("solve", ".rec").toFile();
+		try {
+			recorder.dump(file);
+			SolveRecorder read = SolveRecorder.read(file);
+			assertEquals(recorder.size(), read.size());
+			assertFalse(read.hasOverflowed());
+			for (int n = 0; n < recorder.size(); n++) {
+				assertEquals(recorder.getEvent(n), read.getEvent(n));
+			}
+		} finally {
+			Files.delete(file.toPath());
+		}
+
+		try {
+			SolveRecorder.read(new ByteArrayInputStream(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 }));
+			fail();
+		} catch (IOException e) {
+		}
+	}
+
+	@Test
+	public void testReplay() {
+		Board puzzle = new Board(PUZZLE);
+		SolveRecorder recorder = new SolveRecorder(1 << 20);
+		Board solution = Solver.solve(puzzle, recorder);
+		assertEquals(Solver.solve(puzzle), solution);
+		assertFalse(recorder.hasOverflowed());
+
+		int[] counts = new int[8];
+		for (int n = 0; n < recorder.size(); n++) {
+			counts[SolveRecorder.typeOf(recorder.getEvent(n))]++;
+		}
+		assertTrue(counts[SolveRecorder.GUESS] > 0);
+		assertTrue(counts[SolveRecorder.ELIMINATE] > 0);
+		assertTrue(counts[SolveRecorder.RESTORE] > 0);
+		assertEquals(1, counts[SolveRecorder.SOLUTION]);
+
+		Board replayed = new Board(puzzle);
+		recorder.replay(replayed, (b) -> {});
+		assertEquals(solution, replayed);
+
+		// A board with candidates already removed replays from the same start
+		// the search uses.
+		Board reduced = new Board(puzzle);
+		Solver.reduce(reduced);
+		recorder.clear();
+		assertEquals(solution, Solver.solve(reduced, recorder));
+		recorder.replay(reduced, (b) -> {});
+		assertEquals(solution, reduced);
+	}
+
+	@Test
+	public void testReplayHard() {
+		Board puzzle = new Board(HARD);
+		SolveRecorder recorder = new SolveRecorder(1 << 20);
+		Board solution = Solver.solve(puzzle, recorder);
+		assertNotNull(solution);
+		assertFalse(recorder.hasOverflowed());
+
+		recorder.replay(puzzle, (b) -> {});
+		assertEquals(solution, puzzle);
+	}
+}
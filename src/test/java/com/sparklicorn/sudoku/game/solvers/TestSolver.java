@@ -0,0 +1,59 @@
+package com.sparklicorn.sudoku.game.solvers;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.sparklicorn.sudoku.game.Board;
+
+public class TestSolver {
+
+	private static final String PUZZLE =
+		".5....92..2.1.4.7..4.3....156.........8..72....4.9........46.....7.8.36....5.....";
+
+	/** Cell 8 can only hold a 9, but column 8 already has one.*/
+	private static final String UNSOLVABLE =
+		"12345678....................................9....................................";
+
+	@Test
+	public void testSolveAsync() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Board puzzle = new Board(PUZZLE);
+			Board solution = Solver.solveAsync(puzzle, executor).get(10L, TimeUnit.SECONDS);
+			assertEquals(Solver.solve(puzzle), solution);
+			assertTrue(solution.isSolved());
+
+			assertNull(Solver.solveAsync(new Board(UNSOLVABLE), executor).get(10L, TimeUnit.SECONDS));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testCancelSolveAsync() throws Exception {
+		ExecutorService pool = Executors.newSingleThreadExecutor();
+		CountDownLatch started = new CountDownLatch(1);
+		Executor executor = (task) -> pool.execute(() -> {
+			started.countDown();
+			task.run();
+		});
+
+		// The empty board has no end of solutions to search through.
+		CompletableFuture<Board> future = Solver.solveAsync(new Board(), executor);
+		assertTrue(started.await(10L, TimeUnit.SECONDS));
+		assertTrue(future.cancel(true));
+
+		// The worker only goes idle once the search has noticed and returned.
+		pool.shutdown();
+		assertTrue(pool.awaitTermination(10L, TimeUnit.SECONDS));
+		assertTrue(future.isCancelled());
+	}
+}
@@ -0,0 +1,122 @@
+package com.sparklicorn.sudoku.game.solvers;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.sparklicorn.sudoku.game.Board;
+import com.sparklicorn.sudoku.game.ConstraintModel;
+import com.sparklicorn.sudoku.game.ConstraintModel.Variant;
+
+public class TestSolverSession {
+
+	private static final String CONFIG =
+		"793458261218963754456271893634712589185649327927385146541836972872194635369527418";
+
+	private static final String PUZZLE =
+		".5....92..2.1.4.7..4.3....156.........8..72....4.9........46.....7.8.36....5.....";
+
+	@Test
+	public void testSolve() {
+		Board puzzle = new Board(PUZZLE);
+		SolverSession session = new SolverSession(puzzle);
+		Board solution = session.solve();
+		assertNotNull(solution);
+		assertTrue(solution.isSolved());
+		assertEquals(Solver.solve(puzzle), solution);
+		assertEquals(1, session.countSolutions(2));
+		assertTrue(session.solvesUniquely(solution));
+	}
+
+	@Test
+	public void testPushPop() {
+		Board puzzle = new Board(PUZZLE);
+		SolverSession session = new SolverSession(puzzle);
+		Board solution = session.solve();
+
+		int empty = PUZZLE.indexOf('.');
+		int wrongDigit = (solution.getValueAt(empty) % 9) + 1;
+
+		Board before = session.toBoard();
+		session.push(empty, wrongDigit);
+		assertEquals(1, session.getDepth());
+		assertNull(session.solve());
+		session.pop();
+		assertEquals(0, session.getDepth());
+		assertEquals(before, session.toBoard());
+		assertEquals(solution, session.solve());
+
+		assertTrue(session.push(empty, solution.getValueAt(empty)));
+		assertEquals(solution, session.solve());
+		session.pop();
+	}
+
+	@Test
+	public void testIsDetermined() {
+		Board config = new Board(CONFIG);
+		Board puzzle = new Board(config);
+		SolverSession session = new SolverSession();
+
+		// With a single clue removed, every cell of a full config is determined.
+		puzzle.setValueAt(40, 0);
+		session.reset(puzzle);
+		assertTrue(session.isDetermined(40, config));
+
+		// An empty board has many solutions.
+		session.reset(new Board());
+		assertFalse(session.isDetermined(0, config));
+		assertFalse(session.solvesUniquely(config));
+		assertEquals(2, session.countSolutions(2));
+	}
+
+	@Test
+	public void testIsDeterminedMatchesFullCheck() {
+		Board config = new Board(CONFIG);
+		SolverSession session = new SolverSession();
+		Board puzzle = new Board(config);
+
+		// Remove clues one at a time while the puzzle stays unique, comparing
+		// the incremental check with a full uniqueness check at each step.
+		for (int i = 0; i < Board.NUM_CELLS; i += 2) {
+			Board next = new Board(puzzle);
+			next.setValueAt(i, 0);
+			session.reset(next);
+			boolean unique = session.isDetermined(i, config);
+			assertEquals(Solver.solvesUniquely(next, config), unique);
+			if (unique) {
+				puzzle = next;
+			}
+		}
+	}
+
+	@Test
+	public void testCancel() {
+		SolverSession session = new SolverSession();
+		int[] steps = new int[1];
+		session.setCancelled(() -> ++steps[0] > 10);
+		// An empty board has far more solutions than ten steps can find.
+		assertTrue(session.countSolutions(1000) < 1000);
+		assertTrue(session.wasCancelled());
+
+		session.setCancelled(null);
+		assertEquals(1000, session.countSolutions(1000));
+		assertFalse(session.wasCancelled());
+	}
+
+	@Test
+	public void testVariants() {
+		for (Variant variant : Variant.values()) {
+			ConstraintModel model = ConstraintModel.of(variant);
+			Board solution = Solver.solve(new Board(), model);
+			assertNotNull(solution);
+			assertTrue(solution.isSolved());
+			assertTrue(model.isSolved(solution));
+		}
+
+		// A classic configuration that breaks the diagonal rule.
+		Board config = new Board(CONFIG);
+		assertTrue(ConstraintModel.CLASSIC.isSolved(config));
+		assertFalse(ConstraintModel.of(Variant.DIAGONAL).isValid(config));
+		assertNull(Solver.solve(config, ConstraintModel.of(Variant.DIAGONAL)));
+	}
+}
@@ -0,0 +1,52 @@
+package com.sparklicorn.sudoku.game.solvers;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.sparklicorn.sudoku.game.Board;
+
+public class TestTemplateSolver {
+
+	private static final String CONFIG =
+		"793458261218963754456271893634712589185649327927385146541836972872194635369527418";
+
+	private static final String PUZZLE =
+		".5....92..2.1.4.7..4.3....156.........8..72....4.9........46.....7.8.36....5.....";
+
+	@Test
+	public void testSolve() {
+		Board puzzle = new Board(PUZZLE);
+		Board solution = TemplateSolver.solve(puzzle);
+		assertNotNull(solution);
+		assertTrue(solution.isSolved());
+		assertEquals(Solver.solve(puzzle), solution);
+		assertTrue(TemplateSolver.solvesUniquely(puzzle));
+
+		Board config = new Board(CONFIG);
+		assertEquals(config, TemplateSolver.solve(config));
+	}
+
+	@Test
+	public void testCountSolutions() {
+		TemplateSolver solver = new TemplateSolver();
+		assertEquals(2, solver.countSolutions(new Board(), 2));
+		assertFalse(TemplateSolver.solvesUniquely(new Board()));
+
+		// A full configuration with a few clues removed is still unique.
+		Board puzzle = new Board(CONFIG);
+		for (int i : new int[] { 0, 1, 9, 10 }) {
+			puzzle.setValueAt(i, 0);
+		}
+		assertEquals(1, solver.countSolutions(puzzle, 10));
+		assertTrue(new Board(CONFIG).equals(solver.getLastSolution()));
+	}
+
+	@Test
+	public void testNoSolution() {
+		Board board = new Board(PUZZLE);
+		board.setValueAt(0, 5); // 5 already in row 0
+		assertNull(TemplateSolver.solve(board));
+		assertEquals(0, new TemplateSolver().countSolutions(board, 2));
+	}
+}
@@ -0,0 +1,89 @@
+package com.sparklicorn.sudoku.util;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TestAsyncUtil {
+
+    @Test
+    public void testCompletes() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CompletableFuture<Integer> future = AsyncUtil.supplyCancellable((cancelled) -> 42, executor);
+            assertEquals(42, (int) future.get(10L, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCancelStopsTask() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch exited = new CountDownLatch(1);
+        CompletableFuture<Integer> future = AsyncUtil.supplyCancellable((cancelled) -> {
+            started.countDown();
+            while (!cancelled.getAsBoolean()) {
+                Thread.onSpinWait();
+            }
+            exited.countDown();
+            return 0;
+        }, executor);
+
+        assertTrue(started.await(10L, TimeUnit.SECONDS));
+        assertTrue(future.cancel(true));
+        assertTrue(exited.await(10L, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10L, TimeUnit.SECONDS));
+        assertTrue(future.isCancelled());
+    }
+
+    @Test
+    public void testCancelBeforeStartSkipsTask() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch gate = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        boolean[] ran = new boolean[1];
+        CompletableFuture<Integer> future = AsyncUtil.supplyCancellable((cancelled) -> {
+            ran[0] = true;
+            return 0;
+        }, executor);
+        future.cancel(true);
+        gate.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10L, TimeUnit.SECONDS));
+        assertFalse(ran[0]);
+    }
+
+    @Test
+    public void testException() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CompletableFuture<Integer> future = AsyncUtil.supplyCancellable((cancelled) -> {
+                throw new IllegalStateException("boom");
+            }, executor);
+            try {
+                future.get(10L, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}